@@ -23,6 +23,7 @@ public final class R {
         public static final int editTextX=0x7f070004;
         public static final int editTextY=0x7f070006;
         public static final int menu_settings=0x7f07000b;
+        public static final int positioning_menu_heatmap=0x7f07000e;
         public static final int positioning_menu_start=0x7f07000c;
         public static final int positioning_menu_stop=0x7f07000d;
         public static final int progressBar1=0x7f07000a;
@@ -47,6 +48,7 @@ public final class R {
         public static final int buttonYes=0x7f04000a;
         public static final int errorNumberToast=0x7f040010;
         public static final int menu_settings=0x7f040001;
+        public static final int positioning_menu_heatmap=0x7f040015;
         public static final int positioning_menu_start=0x7f040002;
         public static final int positioning_menu_stop=0x7f040003;
         public static final int resetTable=0x7f040014;
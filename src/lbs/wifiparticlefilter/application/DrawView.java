@@ -1,13 +1,14 @@
 package lbs.wifiparticlefilter.application;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
-import lbs.wifiparticlefilter.data.Particle;
+import lbs.wifiparticlefilter.filter.ParticleSnapshot;
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.util.Log;
 import android.view.View;
 
@@ -19,18 +20,43 @@ public class DrawView extends View
 	public static final int BG = Color.BLACK;
 	/** particle colour */
 	public static final int FG = Color.BLUE;
-	/** list of all particles to be drawn */
-	private List<Particle> particles = new ArrayList<Particle>();
+	/** draw each particle as a dot */
+	public static final int MODE_POINTS = 0;
+	/** draw the weighted density of the particles */
+	public static final int MODE_HEATMAP = 1;
+	/** diameter of a particle dot in pixels */
+	public static final float POINT_SIZE = 10;
+	/** edge length of one heatmap cell in pixels */
+	public static final int CELL_PX = 8;
+	/** share of the old density, which is kept for each new filter step */
+	public static final float DECAY = 0.7f;
+	/** particles to be drawn, replaced as a whole by the filter thread */
+	private volatile ParticleSnapshot snapshot = ParticleSnapshot.EMPTY;
+	/** draw mode */
+	private int mode = MODE_POINTS;
 	/** Paints for bg and fg */
 	private Paint background = new Paint();
     private Paint paint = new Paint();
+    private Paint heatPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
     //canvas size
     private int height = 0;
     private int width = 0;
-    //coordinate scaling
+    //coordinate scaling, only updated if size or border change
     private int[] border = new int[4];
-    private double xScale = 1.0;
-    private double yScale = 1.0;
+    private boolean scaled = false;
+    private float xScale = 1.0f;
+    private float yScale = 1.0f;
+    //x/y pairs of all particles, reused for each frame
+    private float[] points = new float[0];
+    //heatmap; grid of cells with the decayed weights, colours of the cells
+    private Bitmap heatmap = null;
+    private float[] density = new float[0];
+    private int[] pixels = new int[0];
+    private int[] palette = createPalette();
+    private int gridWidth = 0;
+    private int gridHeight = 0;
+    private long heatStep = -1;
+    private Rect heatRect = new Rect();
 
     public DrawView(Context context) {
         super(context);
@@ -40,30 +66,168 @@ public class DrawView extends View
         background.setColor(BG);
         paint.setColor(FG);
         paint.setAntiAlias(true);
+        //round dots instead of one circle per particle
+        paint.setStrokeWidth(POINT_SIZE);
+        paint.setStrokeCap(Paint.Cap.ROUND);
     }
 
     @Override
     public void onDraw(Canvas canvas) {
-    	//update size
+    	//one consistent frame, even if a new snapshot arrives meanwhile
+    	ParticleSnapshot frame = snapshot;
+    	//update size and scaling
+    	if (canvas.getWidth() != width || canvas.getHeight() != height)
+    		scaled = false;
     	height = canvas.getHeight();
     	width = canvas.getWidth();
-    	//update scaling
-    	this.xScale = width / (double)(border[1]);
-    	this.yScale = height / (double)(border[3]);
+    	if (!scaled)
+    		updateScales();
     	//draws background plane
     	canvas.drawPaint(background);
     	//draws all particles
-        for (Particle p : particles)
-        	canvas.drawCircle((int)Math.round(p.getX() * this.xScale), (int)Math.round(p.getY() * this.yScale), 5, paint);
+    	if (mode == MODE_HEATMAP)
+    		drawHeatmap(canvas, frame);
+    	else
+    		drawPoints(canvas, frame);
+    }
+
+    /**
+     * draws all particles with one call
+     * @param canvas the canvas
+     * @param frame the particles
+     */
+    private void drawPoints(Canvas canvas, ParticleSnapshot frame)
+    {
+    	int n = frame.size();
+    	if (points.length < 2 * n)
+    		points = new float[2 * n];
+    	
+    	for (int i = 0; i < n; i++)
+    	{
+    		points[2 * i] = frame.getX(i) * xScale;
+    		points[2 * i + 1] = frame.getY(i) * yScale;
+    	}
+    	
+    	canvas.drawPoints(points, 0, 2 * n, paint);
+    }
+
+    /**
+     * draws the weighted density of the particles. the grid is only updated,
+     * when a new filter step arrives; older steps fade out.
+     * @param canvas the canvas
+     * @param frame the particles
+     */
+    private void drawHeatmap(Canvas canvas, ParticleSnapshot frame)
+    {
+    	//grid follows the canvas size
+    	int gw = Math.max(1, width / CELL_PX);
+    	int gh = Math.max(1, height / CELL_PX);
+    	if (heatmap == null || gw != gridWidth || gh != gridHeight)
+    	{
+    		if (heatmap != null)
+    			heatmap.recycle();
+    		gridWidth = gw;
+    		gridHeight = gh;
+    		heatmap = Bitmap.createBitmap(gw, gh, Bitmap.Config.ARGB_8888);
+    		density = new float[gw * gh];
+    		pixels = new int[gw * gh];
+    		heatStep = -1;
+    		Log.d(TAG, "drawHeatmap(): grid " + gw + " x " + gh);
+    	}
+    	
+    	if (frame.getStep() != heatStep)
+    	{
+    		heatStep = frame.getStep();
+    		updateHeatmap(frame);
+    	}
+    	
+    	//stretch the cells to the canvas
+    	heatRect.set(0, 0, gridWidth * CELL_PX, gridHeight * CELL_PX);
+    	canvas.drawBitmap(heatmap, null, heatRect, heatPaint);
+    }
+
+    /**
+     * fades the old density and adds the weights of the new particles
+     * @param frame the particles
+     */
+    private void updateHeatmap(ParticleSnapshot frame)
+    {
+    	float max = 0;
+    	for (int c = 0; c < density.length; c++)
+    		density[c] = density[c] * DECAY;
+    	
+    	for (int i = 0; i < frame.size(); i++)
+    	{
+    		int cx = Math.min(gridWidth - 1, Math.max(0, (int) (frame.getX(i) * xScale) / CELL_PX));
+    		int cy = Math.min(gridHeight - 1, Math.max(0, (int) (frame.getY(i) * yScale) / CELL_PX));
+    		density[cy * gridWidth + cx] += (float) frame.getWeight(i);
+    	}
+    	
+    	for (int c = 0; c < density.length; c++)
+    		if (density[c] > max)
+    			max = density[c];
+    	
+    	//colours relative to the densest cell
+    	float factor = (max > 0) ? (palette.length - 1) / max : 0;
+    	for (int c = 0; c < density.length; c++)
+    		pixels[c] = palette[(int) (density[c] * factor)];
+    	
+    	heatmap.setPixels(pixels, 0, gridWidth, 0, 0, gridWidth, gridHeight);
+    }
+
+    /**
+     * computes the scales from the canvas size and the bounding box
+     */
+    private void updateScales()
+    {
+    	this.xScale = width / (float)(border[1]);
+    	this.yScale = height / (float)(border[3]);
+    	scaled = true;
+    	//the heatmap cells don't fit any more
+    	heatStep = -1;
+    	Arrays.fill(density, 0);
+    }
+
+    /**
+     * colours from transparent over blue and red to yellow
+     * @return the colours for increasing density
+     */
+    private static int[] createPalette()
+    {
+    	int[] p = new int[256];
+    	for (int i = 0; i < p.length; i++)
+    		p[i] = Color.argb(i, Math.min(255, 2 * i), Math.max(0, 2 * i - 255), Math.max(0, 255 - 2 * i));
+    	return p;
+    }
+    
+    /**
+     * setter for new particles, may be called from any thread
+     * @param snapshot the particles of the last filter step
+     */
+    public void setSnapshot(ParticleSnapshot snapshot)
+    {
+    	this.snapshot = snapshot;
+    }
+    
+    /**
+     * selects how the particles are drawn
+     * @param mode MODE_POINTS or MODE_HEATMAP
+     */
+    public void setMode(int mode)
+    {
+    	this.mode = mode;
+    	//heatmap starts from the next step
+    	heatStep = -1;
+    	Arrays.fill(density, 0);
     }
     
     /**
-     * setter for new particles
-     * @param particles the particles
+     * returns the draw mode
+     * @return MODE_POINTS or MODE_HEATMAP
      */
-    public void setParticles(List<Particle> particles)
+    public int getMode()
     {
-    	this.particles = particles;
+    	return mode;
     }
     
     /**
@@ -73,6 +237,7 @@ public class DrawView extends View
     public void setBorder(int[] border)
     {
     	this.border = border;
+    	scaled = false;
     }
     
     /**
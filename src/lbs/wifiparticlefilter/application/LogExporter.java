@@ -0,0 +1,33 @@
+package lbs.wifiparticlefilter.application;
+
+import lbs.wifiparticlefilter.metrics.MetricsExporter;
+import lbs.wifiparticlefilter.metrics.MetricsRegistry;
+import lbs.wifiparticlefilter.metrics.TextExporter;
+import android.util.Log;
+
+/**
+ * writes the metrics to the android log, one line per metric
+ */
+public class LogExporter implements MetricsExporter
+{
+	/** tag of the log lines */
+	private final String tag;
+
+	/**
+	 * @param tag tag of the log lines
+	 */
+	public LogExporter(String tag)
+	{
+		this.tag = tag;
+	}
+
+	/**
+	 * logs all metrics with level info
+	 * @param registry the registry with the metrics
+	 */
+	public void export(MetricsRegistry registry)
+	{
+		for(String line : TextExporter.format(registry))
+			Log.i(tag, line);
+	}
+}
@@ -1,20 +1,21 @@
 package lbs.wifiparticlefilter.application;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import lbs.wifiparticlefilter.data.Measure;
-import lbs.wifiparticlefilter.data.Particle;
 import lbs.wifiparticlefilter.data.Point;
 import lbs.wifiparticlefilter.dbmanagement.DatabaseHandler;
+import lbs.wifiparticlefilter.engine.ScanListener;
+import lbs.wifiparticlefilter.engine.ScanPipeline;
 import lbs.wifiparticlefilter.filter.Filter;
+import lbs.wifiparticlefilter.filter.LiveRadioMap;
+import lbs.wifiparticlefilter.filter.ParticleSnapshot;
+import lbs.wifiparticlefilter.metrics.FilterMetrics;
+import lbs.wifiparticlefilter.metrics.MetricsRegistry;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
-import android.net.wifi.ScanResult;
 import android.net.wifi.WifiManager;
 import android.os.Bundle;
 import android.util.Log;
@@ -26,8 +27,14 @@ public class PositioningActivity extends Activity
 {
 	/** tag for debugging */
 	private final static String TAG = PositioningActivity.class.getSimpleName();
-	/** sleep duration, 1/scanfreq */
-	public final static int SLEEP_MS = 500;
+	/** maximal number of scans waiting for the filter */
+	public final static int QUEUE_SIZE = 4;
+	/** maximal time in ms a scan waits for the filter, older scans are dropped */
+	public final static int MAX_SCAN_AGE_MS = 2000;
+	/** maximal time in ms to wait for the running step, when positioning stops */
+	public final static int STOP_WAIT_MS = 1000;
+	/** name of the pipeline latency in the metrics */
+	public final static String PIPELINE_LATENCY = "pipeline.latency.ns";
 	/** number of particles */
 	public final static int PARTICLES = 30;
 	/** wifi manager for managing wifi connection */
@@ -42,6 +49,12 @@ public class PositioningActivity extends Activity
 	private DrawView drawView;
 	/** filter instance */
 	private Filter filter;
+	/** source of the wifi scans */
+	private WifiScanSource scanSource;
+	/** queue between the scans and the filter, null if not positioning and its consumer has ended */
+	private ScanPipeline pipeline;
+	/** metrics of the scans, the filter steps and the pipeline */
+	private MetricsRegistry metrics = new MetricsRegistry();
 
 	@Override
 	public void onCreate(Bundle savedInstanceState)
@@ -53,30 +66,35 @@ public class PositioningActivity extends Activity
 
 		wifiManager = (WifiManager) getSystemService(Context.WIFI_SERVICE);
 		checkWifi();
+		scanSource = new WifiScanSource(this, wifiManager);
+		scanSource.setMetrics(new FilterMetrics(metrics));
 
 		dbHandler = new DatabaseHandler(this);
 
-		//init filter
-		filter = new Filter(PARTICLES, dbHandler.getData());
+		//init filter; follows new points from scanning
+		LiveRadioMap radioMap = SharedRadioMap.get(dbHandler);
+		filter = new Filter(PARTICLES, radioMap.get());
+		filter.setLiveRadioMap(radioMap);
+		filter.setMetrics(new FilterMetrics(metrics));
 		filter.initFilter();
 		
 		drawView.setBorder(filter.getBorder());
 		
 		// TODO draw initialised particles
-		drawParticles(filter.getParticles());
+		drawParticles(filter.getSnapshot());
 	}
 
 	@Override
 	public void onPause()
 	{
-		scanning = false;
+		stopPositioning();
 		super.onPause();
 	}
 
 	@Override
 	public void onStop()
 	{
-		scanning = false;
+		stopPositioning();
 		super.onStop();
 	}
 
@@ -98,7 +116,15 @@ public class PositioningActivity extends Activity
 					positioning();
 				return true;
 			case R.id.positioning_menu_stop:
-				scanning = false;
+				stopPositioning();
+				return true;
+			case R.id.positioning_menu_heatmap:
+				// switch between dots and density
+				if(drawView.getMode() == DrawView.MODE_HEATMAP)
+					drawView.setMode(DrawView.MODE_POINTS);
+				else
+					drawView.setMode(DrawView.MODE_HEATMAP);
+				drawView.drawParticles();
 				return true;
 			default:
 				return super.onOptionsItemSelected(item);
@@ -106,101 +132,108 @@ public class PositioningActivity extends Activity
 	}
 
 	/**
-	 * starts one thread for signal acquisition, filtering and particle drawing
+	 * starts the wifi scans and the pipeline, which filters the scans and
+	 * draws the particles on its own thread
 	 */
 	private void positioning()
 	{
 		checkWifi();
 
+		// the filter isn't thread-safe; the consumer of the last run must have ended
+		if(pipeline != null)
+			stopPositioning();
+		if(pipeline != null)
+		{
+			Log.w(TAG, "positioning(): last step still running");
+			return;
+		}
+
 		if(wifiEnabled)
 		{
 			scanning = true;
 
-			Thread worker = new Thread(new Runnable() {
-				public void run()
+			pipeline = new ScanPipeline(new ScanListener() {
+				public void onScan(long timestamp, List<Measure> measure)
 				{
-					while(scanning)
-					{
-						Log.d(TAG, "working thread");
-						HashMap<String, Integer> signals = getSignals();
-						// make sure wifi already sees signals
-						if(signals != null)
-						{
-							//filter signals and draw new particles
-							drawParticles(filterSignals(signals));
-						}
-						try
-						{
-							Thread.sleep(SLEEP_MS);
-						}
-						catch(InterruptedException e)
-						{
-							Log.e(TAG, "error in scanning thread", e);
-						}
-					}
+					//filter signals and draw new particles
+					drawParticles(filterSignals(measure));
 				}
-			});
-			worker.start();
+			}, QUEUE_SIZE);
+			pipeline.setMaxAge(MAX_SCAN_AGE_MS);
+			pipeline.setCoalescing(true);
+			// each run is measured on its own
+			metrics.reset();
+			metrics.register(PIPELINE_LATENCY, pipeline.getLatency());
+			pipeline.start();
+
+			scanSource.start(pipeline);
 		}
 	}
 
 	/**
-	 * gets all currently visible signals with their strengths
-	 * 
-	 * @return list of all signals and thier strengths
+	 * stops the wifi scans and the pipeline and waits for the running step. if
+	 * the step doesn't end in time, the pipeline is kept, so the next start
+	 * waits for it again.
 	 */
-	private HashMap<String, Integer> getSignals()
+	private void stopPositioning()
 	{
-		HashMap<String, Integer> res = null;
+		scanning = false;
+		scanSource.stop();
 
-		if(wifiEnabled)
+		if(pipeline != null)
 		{
-			res = new HashMap<String, Integer>();
-			// if scan successful
-			if(wifiManager.startScan())
+			pipeline.stop();
+
+			// a new pipeline must not run the filter at the same time
+			try
+			{
+				if(!pipeline.join(STOP_WAIT_MS))
+				{
+					Log.w(TAG, "stopPositioning(): step still running");
+					return;
+				}
+			}
+			catch(InterruptedException e)
 			{
-				List<ScanResult> scanResult = wifiManager.getScanResults();
-				// filter out repeating bssid's
-				if(scanResult != null)
-					for(ScanResult scan : scanResult)
-						if(!res.containsKey(scan.BSSID))
-							res.put(scan.BSSID, scan.level);
+				Thread.currentThread().interrupt();
+				return;
 			}
-		}
 
-		return res;
+			Log.d(TAG, "stopPositioning(): received = " + pipeline.getReceived() + ", processed = " + pipeline.getProcessed()
+				+ ", coalesced = " + pipeline.getCoalesced() + ", stale = " + pipeline.getDroppedStale()
+				+ ", p99 = " + pipeline.getLatency().getPercentile(0.99) / 1000000 + " ms");
+			pipeline = null;
+
+			// metrics of this run
+			metrics.export(new LogExporter(TAG));
+		}
 	}
 
 	/**
 	 * moves the given signals to the filter and returns the new particles
-	 * @param signals the signals
-	 * @return the new particles
+	 * @param measure the signals
+	 * @return the snapshot of the new particles
 	 */
-	private List<Particle> filterSignals(HashMap<String, Integer> signals)
+	private ParticleSnapshot filterSignals(List<Measure> measure)
 	{
-		//convert to list of measure
-		List<Measure> measure = new ArrayList<Measure>();
-		for(Map.Entry<String, Integer> entry : signals.entrySet())
-			measure.add(new Measure(entry.getKey(), entry.getValue()));
-		
 		// move signals to filter
 		filter.setCurrentMeasure(measure);
 		//filter
 		filter.estimate();
 		filter.propagate();
-		//get new particles
-		return filter.getParticles();
+		//get new particles, published by the step
+		return filter.getSnapshot();
 	}
 
 	/**
 	 * draws the given particles on the DrawView
 	 * 
-	 * @param p the list of particles
+	 * @param p the snapshot of the particles
 	 */
-	private void drawParticles(List<Particle> p)
+	private void drawParticles(ParticleSnapshot p)
 	{
-		// move particles to draw view
-		drawView.setParticles(p);
+		// move particles to draw view, no copy needed
+		drawView.setSnapshot(p);
 
 		// draw, runs on ui thread
 		runOnUiThread(new Runnable() {
@@ -1,12 +1,14 @@
 package lbs.wifiparticlefilter.application;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import lbs.wifiparticlefilter.data.Measure;
 import lbs.wifiparticlefilter.data.Particle;
+import lbs.wifiparticlefilter.data.Point;
 import lbs.wifiparticlefilter.dbmanagement.DatabaseHandler;
 import android.app.Activity;
 import android.app.AlertDialog;
@@ -266,15 +268,25 @@ public class ScanningActivity extends Activity
 	}
 	
 	/**
-	 * writes data to database
+	 * writes data to database, all access points in one transaction
 	 * @param x the x coordinate
 	 * @param y the y coordinate
 	 * @param values the values for each seen access point
 	 */
 	private void putDatabase(int x, int y, HashMap<String, Integer> values)
 	{
+		List<Measure> measures = new ArrayList<Measure>();
 		for(Map.Entry<String, Integer> entry : values.entrySet())
-			dbHandler.insert(x, y, entry.getValue(), entry.getKey());
+			measures.add(new Measure(entry.getKey(), entry.getValue()));
+
+		Particle point = new Particle(new Point(x, y), measures);
+
+		// running filters get the new point without reloading; only, if the
+		// database has it, otherwise it would vanish with the next reload
+		if(dbHandler.insertAll(Collections.singletonList(point)) > 0)
+			SharedRadioMap.update(point);
+		else
+			Log.w(TAG, "putDatabase(): point not stored, not published");
 	}
 
 	//only for debugging remove later
@@ -0,0 +1,54 @@
+package lbs.wifiparticlefilter.application;
+
+import java.util.Collections;
+
+import lbs.wifiparticlefilter.data.Particle;
+import lbs.wifiparticlefilter.dbmanagement.DatabaseHandler;
+import lbs.wifiparticlefilter.filter.LiveRadioMap;
+import lbs.wifiparticlefilter.filter.RadioMap;
+import android.util.Log;
+
+/**
+ * radio map of the process, shared by scanning and positioning. points,
+ * which are recorded while a filter is running, are published as a new
+ * version of the map instead of reloading the database.
+ */
+public class SharedRadioMap
+{
+	/** tag for debugging */
+	private final static String TAG = SharedRadioMap.class.getSimpleName();
+	/** live map, null until first use */
+	private static LiveRadioMap live = null;
+
+	/**
+	 * gets the live map, reads it from the database on first use
+	 *
+	 * @param dbHandler handler of database connection
+	 * @return the live radio map
+	 */
+	public static synchronized LiveRadioMap get(DatabaseHandler dbHandler)
+	{
+		if(live == null)
+		{
+			Log.d(TAG, "loading radio map");
+			live = new LiveRadioMap(new RadioMap(dbHandler.getData()));
+		}
+		return live;
+	}
+
+	/**
+	 * publishes a recorded point. the measures are added to an earlier
+	 * point on the same position, like the database groups its rows. if the
+	 * map isn't loaded yet, the point is read with the database later.
+	 *
+	 * @param point the recorded point with the mean signal strength of each access point
+	 */
+	public static synchronized void update(Particle point)
+	{
+		if(live == null)
+			return;
+
+		RadioMap map = live.update(Collections.singletonList(point));
+		Log.d(TAG, "radio map version " + map.getVersion() + " with " + map.size() + " points");
+	}
+}
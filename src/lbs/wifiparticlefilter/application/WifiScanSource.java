@@ -0,0 +1,156 @@
+package lbs.wifiparticlefilter.application;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import lbs.wifiparticlefilter.data.Measure;
+import lbs.wifiparticlefilter.engine.ScanListener;
+import lbs.wifiparticlefilter.engine.ScanSource;
+import lbs.wifiparticlefilter.metrics.FilterMetrics;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.wifi.ScanResult;
+import android.net.wifi.WifiManager;
+import android.os.Handler;
+import android.util.Log;
+
+/**
+ * scans of the wifi of the device. the next scan is requested, when the
+ * results of the last one arrive, so the source runs at the rate of the wifi
+ * chip and no thread waits for it. the results are delivered on the ui
+ * thread. if a scan can't be started or its results don't arrive in time,
+ * the scan is requested again, so the source doesn't stall.
+ */
+public class WifiScanSource extends BroadcastReceiver implements ScanSource
+{
+	/** tag for debugging */
+	private final static String TAG = WifiScanSource.class.getSimpleName();
+	/** time in ms until a scan, which couldn't be started, is requested again */
+	public final static int RETRY_MS = 500;
+	/** maximal time in ms from a scan request to its results */
+	public final static int SCAN_TIMEOUT_MS = 10000;
+	/** context for the broadcasts */
+	private final Context context;
+	/** wifi manager for the scans */
+	private final WifiManager wifiManager;
+	/** receiver of the scans, null if stopped */
+	private volatile ScanListener listener = null;
+	/** records the scan times, null if not measured */
+	private volatile FilterMetrics metrics = null;
+	/** time of the last scan request in ns */
+	private volatile long requested = 0;
+	/** runs the retries on the ui thread */
+	private final Handler handler;
+	/** requests the scan again, if the last request got no results */
+	private final Runnable retry = new Runnable() {
+		public void run()
+		{
+			if(listener != null)
+			{
+				Log.d(TAG, "retry: no scan results, requesting again");
+				requestScan();
+			}
+		}
+	};
+
+	/**
+	 * @param context context for the broadcasts
+	 * @param wifiManager wifi manager for the scans
+	 */
+	public WifiScanSource(Context context, WifiManager wifiManager)
+	{
+		this.context = context;
+		this.wifiManager = wifiManager;
+		this.handler = new Handler(context.getMainLooper());
+	}
+
+	/**
+	 * registers for the scan results and requests the first scan
+	 * @param listener receiver of the scans
+	 */
+	public synchronized void start(ScanListener listener)
+	{
+		if(this.listener != null)
+			return;
+
+		this.listener = listener;
+		context.registerReceiver(this, new IntentFilter(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION));
+
+		requestScan();
+	}
+
+	/**
+	 * requests the next scan and schedules its retry; the retry is replaced by
+	 * the next request, so only one is pending
+	 */
+	private void requestScan()
+	{
+		handler.removeCallbacks(retry);
+		requested = System.nanoTime();
+
+		if(wifiManager.startScan())
+			handler.postDelayed(retry, SCAN_TIMEOUT_MS);
+		else
+		{
+			Log.d(TAG, "requestScan(): scan not started");
+			handler.postDelayed(retry, RETRY_MS);
+		}
+	}
+
+	/**
+	 * records the time from each scan request to its results
+	 * @param metrics the metrics, null to stop measuring
+	 */
+	public void setMetrics(FilterMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+
+	/**
+	 * unregisters from the scan results
+	 */
+	public synchronized void stop()
+	{
+		if(listener == null)
+			return;
+
+		listener = null;
+		handler.removeCallbacks(retry);
+		context.unregisterReceiver(this);
+	}
+
+	@Override
+	public void onReceive(Context c, Intent intent)
+	{
+		ScanListener l = listener;
+		if(l == null)
+			return;
+
+		FilterMetrics m = metrics;
+		if(m != null)
+			m.recordScan(System.nanoTime() - requested);
+
+		List<ScanResult> scanResult = wifiManager.getScanResults();
+		List<Measure> measure = new ArrayList<Measure>();
+
+		// filter out repeating bssid's
+		if(scanResult != null)
+		{
+			Set<String> seen = new HashSet<String>();
+			for(ScanResult scan : scanResult)
+				if(seen.add(scan.BSSID))
+					measure.add(new Measure(scan.BSSID, scan.level));
+		}
+
+		// make sure wifi already sees signals
+		if(!measure.isEmpty())
+			l.onScan(System.currentTimeMillis(), measure);
+
+		// next scan, the results come with the next broadcast
+		requestScan();
+	}
+}
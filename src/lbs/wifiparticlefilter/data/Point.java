@@ -5,7 +5,7 @@ package lbs.wifiparticlefilter.data;
  * Represents the coordinate of a particle. 
  * 
  * @author Andreas Attenberger
- * @version 1.0
+ * @version 1.1
  */
 public class Point {
 
@@ -47,23 +47,48 @@ public class Point {
 	}	
 	
 	
+	/**
+	 * Packs the coordinates of a point into one long-value. Equal
+	 * coordinates give equal values, so it can be used as a key.
+	 * 
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @return x in the upper, y in the lower 32 bits
+	 */
+	public static long pack(int x, int y){
+		return (((long) x) << 32) | (y & 0xffffffffL);
+	}
+	
+	
 	/**
 	 * Compares two Point-object. 
 	 * 
-	 * @return true, if equal
+	 * @return true, if both coordinates are equal
 	 */
+	@Override
 	public boolean equals(Object that){
 		
-		if(that == null)
-			return false;
+		if (this == that)
+			return true;
 		
-		if (getClass() != that.getClass())
+		if ((that == null) || (getClass() != that.getClass()))
 			return false;
 		
-		if (!super.equals(that))
-			return false;
+		return (x == ((Point) that).x) && (y == ((Point) that).y);
+	}
+	
+	
+	/**
+	 * Gives back a hash-code, which is equal for equal coordinates.
+	 * 
+	 * @return Hash-code of the packed coordinates
+	 */
+	@Override
+	public int hashCode(){
 		
-		return hashCode() == ((Point) that).hashCode();
+		long key = pack(x, y);
+		
+		return (int) (key ^ (key >>> 32));
 	}
 	
 	
@@ -107,6 +132,6 @@ public class Point {
 	 * @return true, if p is in fourth quadrant
 	 */
 	public boolean quad4th(Point p){
-		return ((this.x >= p.getX()) && (this.y <= p.getY()));
+		return ((this.x <= p.getX()) && (this.y >= p.getY()));
 	}
 }
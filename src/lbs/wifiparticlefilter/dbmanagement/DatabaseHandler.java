@@ -1,6 +1,8 @@
 package lbs.wifiparticlefilter.dbmanagement;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -8,70 +10,67 @@ import java.util.Map;
 import lbs.wifiparticlefilter.data.Measure;
 import lbs.wifiparticlefilter.data.Particle;
 import lbs.wifiparticlefilter.data.Point;
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
-public class DatabaseHandler extends SQLiteOpenHelper
+public class DatabaseHandler extends SQLiteOpenHelper implements FingerprintStore
 {
 	private static final String TAG = DatabaseHandler.class.getSimpleName();
-	
-	// Definition database
-	/** Database name. */
-	private static final String DATABASE_NAME = "wifiparticlefilter.db";
-	/** Database version. */
-	private static final int DATABASE_VERSION = 1;
-	
-	// Definition attributes and table WIFI
+
+	// Definition attributes, the statements are in FingerprintSchema
 	/** id, primary key with autoincrement */
-	public static final String _ID = "_id";
-	/** name of the table wifi */
-	public static final String TABLE_NAME_WIFI = "tbl_wifi";
+	public static final String _ID = FingerprintSchema._ID;
+	/** name of the table wifi of version 1, only read for migration */
+	public static final String TABLE_NAME_WIFI = FingerprintSchema.TABLE_NAME_WIFI;
+	/** name of the table with all access points */
+	public static final String TABLE_NAME_AP = FingerprintSchema.TABLE_NAME_AP;
+	/** name of the table with all measurements */
+	public static final String TABLE_NAME_FINGERPRINT = FingerprintSchema.TABLE_NAME_FINGERPRINT;
 	/** attribute x coordinate of the position */
-	public static final String POSITION_X = "x";
+	public static final String POSITION_X = FingerprintSchema.POSITION_X;
 	/** attribute y coordinate of the position */
-	public static final String POSITION_Y = "y";
+	public static final String POSITION_Y = FingerprintSchema.POSITION_Y;
 	/** attribute Received Signal Strength Indication */
-	public static final String RSSI = "rssi";
+	public static final String RSSI = FingerprintSchema.RSSI;
 	/** attribute MAC address */
-	public static final String BSSID = "bssid";
-	/** create table statement */
-	
-	private static final String TABLE_WIFI_CREATE = "CREATE TABLE "
-		+ TABLE_NAME_WIFI + " (" + _ID
-		+ " INTEGER PRIMARY KEY AUTOINCREMENT, "
-		+ POSITION_X + " INTEGER, "
-		+ POSITION_Y + " INTEGER, "
-		+ RSSI       + " INTEGER, "
-		+ BSSID        + " VARCHAR(17));";
-	
-	/** drop statement for old table if new version available */
-	private static final String TABLE_WIFI_DROP = "DROP TABLE IF EXISTS " + TABLE_NAME_WIFI;
-	
+	public static final String BSSID = FingerprintSchema.BSSID;
+	/** attribute id of the access point of a measurement */
+	public static final String AP_ID = FingerprintSchema.AP_ID;
+
 	public DatabaseHandler(Context context)
 	{
-		super(context, DATABASE_NAME, null, DATABASE_VERSION);
+		super(context, FingerprintSchema.DATABASE_NAME, null, FingerprintSchema.DATABASE_VERSION);
 	}
 
 	@Override
 	public void onCreate(SQLiteDatabase db)
 	{
-		db.execSQL(TABLE_WIFI_CREATE);
-		db.close();
+		// the helper closes the database, not the callbacks
+		for(String sql : FingerprintSchema.SCHEMA_CREATE)
+			db.execSQL(sql);
 	}
 
 	@Override
 	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion)
 	{
-		db.execSQL(TABLE_WIFI_DROP);
+		Log.d(TAG, "onUpgrade(): " + oldVersion + " -> " + newVersion);
+
+		// runs inside the transaction of the helper
 		onCreate(db);
-		db.close();
+
+		if(oldVersion < 2)
+		{
+			db.execSQL(FingerprintSchema.MIGRATE_AP);
+			db.execSQL(FingerprintSchema.MIGRATE_FINGERPRINT);
+			db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME_WIFI);
+		}
 	}
-	
+
 	/**
 	 * inserts the given measurement into the database
 	 * @param x the x coordinate
@@ -81,94 +80,177 @@ public class DatabaseHandler extends SQLiteOpenHelper
 	 */
 	public void insert(int x, int y, int rssi, String bssid)
 	{
-		long rowID = -1;
-		
+		List<Measure> measure = Collections.singletonList(new Measure(bssid, rssi));
+
+		insertAll(Collections.singletonList(new Particle(new Point(x, y), measure)));
+	}
+
+	/**
+	 * inserts all measurements of the given points in one transaction with
+	 * compiled statements, so the database is synced only once
+	 * @param points the survey points with the measurements of all access points
+	 * @return number of inserted rows, 0 if the transaction failed
+	 */
+	public int insertAll(List<Particle> points)
+	{
+		int rows = 0;
+
 		// open Database
 		SQLiteDatabase db = getWritableDatabase();
-		
+		SQLiteStatement insertAp = null;
+		SQLiteStatement queryAp = null;
+		SQLiteStatement insert = null;
+
 		try
 		{
-			// values to save
-			ContentValues values = new ContentValues();
-			values.put(POSITION_X, x);
-			values.put(POSITION_Y, y);
-			values.put(RSSI, rssi);
-			values.put(BSSID, bssid);
-			//write to db
-			rowID = db.insert(TABLE_NAME_WIFI, null, values);
+			insertAp = db.compileStatement(FingerprintSchema.AP_INSERT);
+			queryAp = db.compileStatement(FingerprintSchema.AP_QUERY);
+			insert = db.compileStatement(FingerprintSchema.FINGERPRINT_INSERT);
+
+			// ids of the access points in this transaction
+			Map<String, Long> apIds = new HashMap<String, Long>();
+
+			db.beginTransaction();
+
+			try
+			{
+				for(Particle p : points)
+					for(Measure m : p.getMeasure())
+					{
+						Long apId = apIds.get(m.getBSSID());
+						if(apId == null)
+						{
+							insertAp.bindString(1, m.getBSSID());
+							insertAp.execute();
+							queryAp.bindString(1, m.getBSSID());
+							apId = queryAp.simpleQueryForLong();
+							apIds.put(m.getBSSID(), apId);
+						}
+
+						insert.bindLong(1, p.getX());
+						insert.bindLong(2, p.getY());
+						insert.bindLong(3, m.getRssi());
+						insert.bindLong(4, apId);
+						insert.executeInsert();
+						rows++;
+					}
+				db.setTransactionSuccessful();
+			}
+			finally
+			{
+				db.endTransaction();
+			}
 		}
 		catch(SQLiteException e)
 		{
-			Log.e(TAG, "insert():", e);
+			Log.e(TAG, "insertAll():", e);
+			rows = 0;
 		}
 		finally
 		{
+			if(insertAp != null)
+				insertAp.close();
+			if(queryAp != null)
+				queryAp.close();
+			if(insert != null)
+				insert.close();
 			db.close();
-			Log.d(TAG, "insert(): rowID = " + rowID);
+			Log.d(TAG, "insertAll(): rows = " + rows);
 		}
+
+		return rows;
 	}
-	
+
 	/**
 	 * resets the table
 	 */
 	public void resetTable()
 	{
 		SQLiteDatabase db = getWritableDatabase();
-		//drop existing table
-		db.execSQL(TABLE_WIFI_DROP);
-		//create new table
-		db.execSQL(TABLE_WIFI_CREATE);
+		//drop existing tables
+		for(String sql : FingerprintSchema.SCHEMA_DROP)
+			db.execSQL(sql);
+		//create new tables
+		onCreate(db);
 		db.close();
 	}
-	
+
 	/**
 	 * returns a list of particles for all measurements in db
 	 * @return the list
 	 */
 	public List<Particle> getData()
+	{
+		return query(FingerprintSchema.FINGERPRINT_SELECT + FingerprintSchema.ORDER_POSITION, null);
+	}
+
+	/**
+	 * returns a list of particles for all measurements inside a bounding
+	 * box, the borders included. uses the index on the position.
+	 * @param xmin the minimal x coordinate
+	 * @param xmax the maximal x coordinate
+	 * @param ymin the minimal y coordinate
+	 * @param ymax the maximal y coordinate
+	 * @return the list
+	 */
+	public List<Particle> getData(int xmin, int xmax, int ymin, int ymax)
+	{
+		String[] args = new String[]{String.valueOf(xmin), String.valueOf(xmax), String.valueOf(ymin), String.valueOf(ymax)};
+
+		return query(FingerprintSchema.FINGERPRINT_SELECT + FingerprintSchema.WHERE_BOX + FingerprintSchema.ORDER_POSITION, args);
+	}
+
+	/**
+	 * returns a list of particles for all positions, where at least one of
+	 * the given access points was measured. each particle has all
+	 * measurements of its position.
+	 * @param bssids the access point's mac addresses, at most MAX_APS
+	 * @return the list
+	 */
+	public List<Particle> getDataWithAps(Collection<String> bssids)
+	{
+		if(bssids.isEmpty())
+			return new ArrayList<Particle>();
+
+		String sql = FingerprintSchema.FINGERPRINT_SELECT + FingerprintSchema.joinAps(bssids.size()) + FingerprintSchema.ORDER_POSITION;
+
+		return query(sql, bssids.toArray(new String[bssids.size()]));
+	}
+
+	/**
+	 * runs a selection and groups the rows to one particle per position
+	 * @param sql the selection with the columns x, y, rssi, bssid
+	 * @param args the parameters of the selection
+	 * @return the list
+	 */
+	private List<Particle> query(String sql, String[] args)
 	{
 		//get cursor
-		SQLiteDatabase db = getWritableDatabase();
-		String[] columns = new String[]{POSITION_X, POSITION_Y, RSSI, BSSID};
-		Cursor cur = db.query(TABLE_NAME_WIFI, columns, null, null, null, null, POSITION_X + " ASC, " +  POSITION_Y + " ASC");
-		
-		List<Particle> list = new ArrayList<Particle>();
-		HashMap<Point, ArrayList<Measure>> measurements = new HashMap<Point, ArrayList<Measure>>();
-		
-		//get indices of coloumns
-		int xIdx = cur.getColumnIndex(POSITION_X);
-		int yIdx = cur.getColumnIndex(POSITION_Y);
-		int rssiIdx = cur.getColumnIndex(RSSI);
-		int bssidIdx = cur.getColumnIndex(BSSID);
-		//run through all rows
+		SQLiteDatabase db = getReadableDatabase();
+		Cursor cur = db.rawQuery(sql, args);
+
+		FingerprintLoader loader = new FingerprintLoader();
+
+		//run through all rows; columns are x, y, rssi, bssid
 		if(cur.moveToFirst())
 		{
 			while(!cur.isAfterLast())
 			{
-				int x = cur.getInt(xIdx);
-				int y = cur.getInt(yIdx);
-				int rssi = cur.getInt(rssiIdx);
-				String bssid = cur.getString(bssidIdx);
-				
-				Point point = new Point(x, y);
-				
-				if(!measurements.containsKey(point))
-					measurements.put(point, new ArrayList<Measure>());
-				measurements.get(point).add(new Measure(bssid, rssi));
-				
+				loader.add(cur.getInt(0), cur.getInt(1), cur.getInt(2), cur.getString(3));
 				cur.moveToNext();
 			}
 		}
 		else
 			Log.d(TAG, "no data in database");
-		
-		//build list of particles
-		for(Map.Entry<Point, ArrayList<Measure>> entry : measurements.entrySet())
-		    list.add(new Particle(entry.getKey(), entry.getValue()));
+
 		//close cursor and db
 		cur.close();
 		db.close();
-		
-		return list;
+
+		Log.d(TAG, "query(): rows = " + loader.getRows() + ", points = " + loader.getPoints()
+			+ ", collapsed = " + loader.getCollapsed());
+
+		//build list of particles, one per position
+		return loader.build();
 	}
-}
\ No newline at end of file
+}
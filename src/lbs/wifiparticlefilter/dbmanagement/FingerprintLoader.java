@@ -0,0 +1,190 @@
+package lbs.wifiparticlefilter.dbmanagement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import lbs.wifiparticlefilter.data.Measure;
+import lbs.wifiparticlefilter.data.Particle;
+import lbs.wifiparticlefilter.data.Point;
+
+/**
+ * groups measurement rows to one particle per position. positions are
+ * packed to long keys in an open addressing table, so no point object is
+ * created per row, and the measure list of each particle is built once with
+ * its final size. the particles keep the order of their first row.
+ */
+public class FingerprintLoader
+{
+	/** escape number for an empty table entry */
+	private static final int EMPTY = -1;
+
+	/** signal strength of each row */
+	private int[] rowRssi = new int[64];
+	/** access point of each row */
+	private String[] rowBssid = new String[64];
+	/** position index of each row */
+	private int[] rowPoint = new int[64];
+	/** number of rows */
+	private int rows = 0;
+
+	/** packed key of each position */
+	private long[] pointKeys = new long[16];
+	/** number of rows of each position */
+	private int[] pointRows = new int[16];
+	/** number of positions */
+	private int points = 0;
+
+	/** hash table with the position index of each key */
+	private int[] table = newTable(32);
+
+	/**
+	 * adds one measurement row
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param rssi the signal strength in dBm
+	 * @param bssid the access point's mac address
+	 */
+	public void add(int x, int y, int rssi, String bssid)
+	{
+		long key = Point.pack(x, y);
+
+		if(rows == rowRssi.length)
+		{
+			rowRssi = grow(rowRssi);
+			rowPoint = grow(rowPoint);
+			String[] b = new String[rowBssid.length * 2];
+			System.arraycopy(rowBssid, 0, b, 0, rows);
+			rowBssid = b;
+		}
+
+		rowRssi[rows] = rssi;
+		rowBssid[rows] = bssid;
+		rowPoint[rows] = indexOf(key);
+		pointRows[rowPoint[rows]]++;
+		rows++;
+	}
+
+	/**
+	 * builds one particle per position with all measurements of its rows
+	 * @return the list
+	 */
+	public List<Particle> build()
+	{
+		// measure lists with their final size
+		List<List<Measure>> measures = new ArrayList<List<Measure>>(points);
+		for(int i = 0; i < points; i++)
+			measures.add(new ArrayList<Measure>(pointRows[i]));
+
+		for(int r = 0; r < rows; r++)
+			measures.get(rowPoint[r]).add(new Measure(rowBssid[r], rowRssi[r]));
+
+		List<Particle> list = new ArrayList<Particle>(points);
+		for(int i = 0; i < points; i++)
+			list.add(new Particle(new Point((int) (pointKeys[i] >> 32), (int) pointKeys[i]), measures.get(i)));
+
+		return list;
+	}
+
+	/**
+	 * @return the number of added rows
+	 */
+	public int getRows()
+	{
+		return rows;
+	}
+
+	/**
+	 * @return the number of different positions
+	 */
+	public int getPoints()
+	{
+		return points;
+	}
+
+	/**
+	 * @return the number of rows, which were merged into the particle of an earlier row
+	 */
+	public int getCollapsed()
+	{
+		return rows - points;
+	}
+
+	/**
+	 * searches the index of a position, unknown positions are added
+	 * @param key the packed position
+	 * @return the position index
+	 */
+	private int indexOf(long key)
+	{
+		int pos = find(table, key);
+
+		if(table[pos] != EMPTY)
+			return table[pos];
+
+		if(points == pointKeys.length)
+		{
+			pointKeys = grow(pointKeys);
+			pointRows = grow(pointRows);
+		}
+
+		pointKeys[points] = key;
+		table[pos] = points;
+
+		// table is at most half full
+		if(++points * 2 > table.length)
+			rehash();
+
+		return points - 1;
+	}
+
+	/**
+	 * searches the table entry of a key
+	 * @return position of the key or of the empty entry, where it belongs
+	 */
+	private int find(int[] t, long key)
+	{
+		int mask = t.length - 1;
+		long h = key * 0x9E3779B97F4A7C15L;
+		int pos = (int) (h ^ (h >>> 32)) & mask;
+
+		while(t[pos] != EMPTY && pointKeys[t[pos]] != key)
+			pos = (pos + 1) & mask;
+
+		return pos;
+	}
+
+	/**
+	 * doubles the hash table
+	 */
+	private void rehash()
+	{
+		int[] t = newTable(table.length * 2);
+
+		for(int i = 0; i < points; i++)
+			t[find(t, pointKeys[i])] = i;
+
+		table = t;
+	}
+
+	private static int[] newTable(int size)
+	{
+		int[] t = new int[size];
+		Arrays.fill(t, EMPTY);
+		return t;
+	}
+
+	private static long[] grow(long[] a)
+	{
+		long[] b = new long[a.length * 2];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+
+	private static int[] grow(int[] a)
+	{
+		int[] b = new int[a.length * 2];
+		System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+}
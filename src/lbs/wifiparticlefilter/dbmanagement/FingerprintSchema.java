@@ -0,0 +1,123 @@
+package lbs.wifiparticlefilter.dbmanagement;
+
+/**
+ * tables, indexes and statements of the survey database. shared by the
+ * database on the device and the plain jvm database, so this class must not
+ * use android classes.
+ */
+final class FingerprintSchema
+{
+	// Definition database
+	/** Database name. */
+	static final String DATABASE_NAME = "wifiparticlefilter.db";
+	/** Database version; 2 has a separate access point table and indexes */
+	static final int DATABASE_VERSION = 2;
+
+	// Definition attributes & tables
+	/** id, primary key with autoincrement */
+	static final String _ID = "_id";
+	/** name of the table wifi of version 1, only read for migration */
+	static final String TABLE_NAME_WIFI = "tbl_wifi";
+	/** name of the table with all access points */
+	static final String TABLE_NAME_AP = "tbl_ap";
+	/** name of the table with all measurements */
+	static final String TABLE_NAME_FINGERPRINT = "tbl_fingerprint";
+	/** attribute x coordinate of the position */
+	static final String POSITION_X = "x";
+	/** attribute y coordinate of the position */
+	static final String POSITION_Y = "y";
+	/** attribute Received Signal Strength Indication */
+	static final String RSSI = "rssi";
+	/** attribute MAC address */
+	static final String BSSID = "bssid";
+	/** attribute id of the access point of a measurement */
+	static final String AP_ID = "ap_id";
+
+	/** create table statement for access points */
+	static final String TABLE_AP_CREATE = "CREATE TABLE IF NOT EXISTS "
+		+ TABLE_NAME_AP + " (" + _ID
+		+ " INTEGER PRIMARY KEY AUTOINCREMENT, "
+		+ BSSID + " VARCHAR(17) NOT NULL UNIQUE);";
+
+	/** create table statement for measurements */
+	static final String TABLE_FINGERPRINT_CREATE = "CREATE TABLE IF NOT EXISTS "
+		+ TABLE_NAME_FINGERPRINT + " (" + _ID
+		+ " INTEGER PRIMARY KEY AUTOINCREMENT, "
+		+ POSITION_X + " INTEGER NOT NULL, "
+		+ POSITION_Y + " INTEGER NOT NULL, "
+		+ RSSI       + " INTEGER NOT NULL, "
+		+ AP_ID      + " INTEGER NOT NULL REFERENCES " + TABLE_NAME_AP + "(" + _ID + "));";
+
+	/** index for region queries */
+	static final String INDEX_POSITION_CREATE = "CREATE INDEX IF NOT EXISTS idx_fingerprint_position ON "
+		+ TABLE_NAME_FINGERPRINT + " (" + POSITION_X + ", " + POSITION_Y + ");";
+
+	/** index for access point queries */
+	static final String INDEX_AP_CREATE = "CREATE INDEX IF NOT EXISTS idx_fingerprint_ap ON "
+		+ TABLE_NAME_FINGERPRINT + " (" + AP_ID + ");";
+
+	/** all statements, which create the schema */
+	static final String[] SCHEMA_CREATE = {TABLE_AP_CREATE, TABLE_FINGERPRINT_CREATE, INDEX_POSITION_CREATE, INDEX_AP_CREATE};
+
+	/** drop statements of all tables, indexes are dropped with them */
+	static final String[] SCHEMA_DROP = {"DROP TABLE IF EXISTS " + TABLE_NAME_FINGERPRINT,
+		"DROP TABLE IF EXISTS " + TABLE_NAME_AP, "DROP TABLE IF EXISTS " + TABLE_NAME_WIFI};
+
+	/** copies the access points of version 1 */
+	static final String MIGRATE_AP = "INSERT OR IGNORE INTO " + TABLE_NAME_AP + " (" + BSSID + ") SELECT DISTINCT "
+		+ BSSID + " FROM " + TABLE_NAME_WIFI + " WHERE " + BSSID + " IS NOT NULL";
+
+	/** copies the measurements of version 1 */
+	static final String MIGRATE_FINGERPRINT = "INSERT INTO " + TABLE_NAME_FINGERPRINT
+		+ " (" + POSITION_X + ", " + POSITION_Y + ", " + RSSI + ", " + AP_ID + ") SELECT w."
+		+ POSITION_X + ", w." + POSITION_Y + ", w." + RSSI + ", a." + _ID + " FROM " + TABLE_NAME_WIFI + " w JOIN "
+		+ TABLE_NAME_AP + " a ON a." + BSSID + " = w." + BSSID + " ORDER BY w." + _ID;
+
+	/** inserts an access point, if it is unknown */
+	static final String AP_INSERT = "INSERT OR IGNORE INTO " + TABLE_NAME_AP + " (" + BSSID + ") VALUES (?)";
+
+	/** gets the id of an access point */
+	static final String AP_QUERY = "SELECT " + _ID + " FROM " + TABLE_NAME_AP + " WHERE " + BSSID + " = ?";
+
+	/** insert statement for one measurement, compiled once per transaction */
+	static final String FINGERPRINT_INSERT = "INSERT INTO "
+		+ TABLE_NAME_FINGERPRINT + " (" + POSITION_X + ", " + POSITION_Y + ", "
+		+ RSSI + ", " + AP_ID + ") VALUES (?, ?, ?, ?)";
+
+	/** selects measurements with the names of their access points; columns x, y, rssi, bssid */
+	static final String FINGERPRINT_SELECT = "SELECT f." + POSITION_X + ", f." + POSITION_Y + ", f." + RSSI
+		+ ", a." + BSSID + " FROM " + TABLE_NAME_FINGERPRINT + " f JOIN " + TABLE_NAME_AP + " a ON a." + _ID + " = f." + AP_ID;
+
+	/** restricts the selection to a bounding box; xmin, xmax, ymin, ymax */
+	static final String WHERE_BOX = " WHERE f." + POSITION_X + " BETWEEN ? AND ? AND f." + POSITION_Y + " BETWEEN ? AND ?";
+
+	/** order of the selection */
+	static final String ORDER_POSITION = " ORDER BY f." + POSITION_X + " ASC, f." + POSITION_Y + " ASC";
+
+	private FingerprintSchema()
+	{
+	}
+
+	/**
+	 * builds the join with all positions, where at least one of n access
+	 * points was measured. the positions are found by the index on the
+	 * access point, their measurements by the index on the position.
+	 * @param n the number of access points
+	 * @return join clause with n parameters
+	 */
+	static String joinAps(int n)
+	{
+		if(n > FingerprintStore.MAX_APS)
+			throw new IllegalArgumentException("too many access points: " + n);
+
+		StringBuilder sql = new StringBuilder();
+		sql.append(" JOIN (SELECT DISTINCT g.").append(POSITION_X).append(", g.").append(POSITION_Y).append(" FROM ")
+			.append(TABLE_NAME_FINGERPRINT).append(" g JOIN ").append(TABLE_NAME_AP).append(" b ON b.").append(_ID)
+			.append(" = g.").append(AP_ID).append(" WHERE b.").append(BSSID).append(" IN (");
+		for(int i = 0; i < n; i++)
+			sql.append(i == 0 ? "?" : ", ?");
+
+		return sql.append(")) p ON p.").append(POSITION_X).append(" = f.").append(POSITION_X)
+			.append(" AND p.").append(POSITION_Y).append(" = f.").append(POSITION_Y).toString();
+	}
+}
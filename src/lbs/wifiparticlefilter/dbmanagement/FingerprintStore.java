@@ -0,0 +1,63 @@
+package lbs.wifiparticlefilter.dbmanagement;
+
+import java.util.Collection;
+import java.util.List;
+
+import lbs.wifiparticlefilter.data.Particle;
+
+/**
+ * storage of the survey data. the database on the device and the plain jvm
+ * database use the same schema, so recorded data can be copied between them.
+ */
+public interface FingerprintStore
+{
+	/** maximal number of access points of one query, below the parameter limit of sqlite */
+	int MAX_APS = 500;
+
+	/**
+	 * inserts one measurement
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param rssi the signal strength in dBm
+	 * @param bssid the access point's mac address
+	 */
+	void insert(int x, int y, int rssi, String bssid);
+
+	/**
+	 * inserts all measurements of the given points in one transaction
+	 * @param points the survey points with the measurements of all access points
+	 * @return number of inserted rows, 0 if the transaction failed
+	 */
+	int insertAll(List<Particle> points);
+
+	/**
+	 * returns a list of particles for all measurements
+	 * @return the list
+	 */
+	List<Particle> getData();
+
+	/**
+	 * returns a list of particles for all measurements inside a bounding
+	 * box, the borders included
+	 * @param xmin the minimal x coordinate
+	 * @param xmax the maximal x coordinate
+	 * @param ymin the minimal y coordinate
+	 * @param ymax the maximal y coordinate
+	 * @return the list
+	 */
+	List<Particle> getData(int xmin, int xmax, int ymin, int ymax);
+
+	/**
+	 * returns a list of particles for all positions, where at least one of
+	 * the given access points was measured. each particle has all
+	 * measurements of its position.
+	 * @param bssids the access point's mac addresses, at most MAX_APS
+	 * @return the list
+	 */
+	List<Particle> getDataWithAps(Collection<String> bssids);
+
+	/**
+	 * resets the table
+	 */
+	void resetTable();
+}
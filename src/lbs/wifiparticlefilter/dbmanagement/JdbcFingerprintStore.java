@@ -0,0 +1,353 @@
+package lbs.wifiparticlefilter.dbmanagement;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import lbs.wifiparticlefilter.data.Measure;
+import lbs.wifiparticlefilter.data.Particle;
+import lbs.wifiparticlefilter.data.Point;
+
+/**
+ * survey storage in a sqlite file on a plain jvm, e.g. for tests and
+ * benchmarks on a pc. the schema is the same as on the device. the sqlite
+ * jdbc driver is loaded by name, so it is only needed on the classpath,
+ * when this class is used.
+ */
+public class JdbcFingerprintStore implements FingerprintStore
+{
+	private static final Logger LOG = Logger.getLogger(JdbcFingerprintStore.class.getName());
+
+	/** class name of the sqlite jdbc driver */
+	public static final String DRIVER = "org.sqlite.JDBC";
+	/** connection to the database file */
+	private final Connection connection;
+
+	/**
+	 * opens the database file. the schema is created if it doesn't exist, a
+	 * file of version 1 is migrated like on the device.
+	 * @param file the database file
+	 * @throws SQLException if the driver is missing or the file can't be opened
+	 */
+	public JdbcFingerprintStore(File file) throws SQLException
+	{
+		try
+		{
+			Class.forName(DRIVER);
+		}
+		catch(ClassNotFoundException e)
+		{
+			SQLException ex = new SQLException("sqlite driver not on classpath: " + DRIVER);
+			ex.initCause(e);
+			throw ex;
+		}
+
+		connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+
+		// same version number as the helper on the device uses
+		int version = (int) queryLong("PRAGMA user_version", null);
+		boolean oldTable = queryLong("SELECT count(*) FROM sqlite_master WHERE type = 'table' AND name = ?",
+				FingerprintSchema.TABLE_NAME_WIFI) > 0;
+
+		if(version < FingerprintSchema.DATABASE_VERSION)
+		{
+			connection.setAutoCommit(false);
+			Statement stmt = connection.createStatement();
+			try
+			{
+				for(String sql : FingerprintSchema.SCHEMA_CREATE)
+					stmt.executeUpdate(sql);
+
+				if(oldTable)
+				{
+					stmt.executeUpdate(FingerprintSchema.MIGRATE_AP);
+					stmt.executeUpdate(FingerprintSchema.MIGRATE_FINGERPRINT);
+					stmt.executeUpdate("DROP TABLE IF EXISTS " + FingerprintSchema.TABLE_NAME_WIFI);
+				}
+
+				stmt.executeUpdate("PRAGMA user_version = " + FingerprintSchema.DATABASE_VERSION);
+				connection.commit();
+			}
+			catch(SQLException e)
+			{
+				connection.rollback();
+				throw e;
+			}
+			finally
+			{
+				stmt.close();
+				connection.setAutoCommit(true);
+			}
+		}
+	}
+
+	/**
+	 * inserts one measurement in its own transaction, like on the device
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @param rssi the signal strength in dBm
+	 * @param bssid the access point's mac address
+	 */
+	public void insert(int x, int y, int rssi, String bssid)
+	{
+		List<Measure> measure = Collections.singletonList(new Measure(bssid, rssi));
+
+		insertAll(Collections.singletonList(new Particle(new Point(x, y), measure)));
+	}
+
+	/**
+	 * inserts all measurements of the given points in one transaction with
+	 * prepared statements
+	 * @param points the survey points with the measurements of all access points
+	 * @return number of inserted rows, 0 if the transaction failed
+	 */
+	public int insertAll(List<Particle> points)
+	{
+		int rows = 0;
+		PreparedStatement insertAp = null;
+		PreparedStatement queryAp = null;
+		PreparedStatement insert = null;
+
+		try
+		{
+			connection.setAutoCommit(false);
+			insertAp = connection.prepareStatement(FingerprintSchema.AP_INSERT);
+			queryAp = connection.prepareStatement(FingerprintSchema.AP_QUERY);
+			insert = connection.prepareStatement(FingerprintSchema.FINGERPRINT_INSERT);
+
+			try
+			{
+				// ids of the access points in this transaction
+				Map<String, Integer> apIds = new HashMap<String, Integer>();
+
+				for(Particle p : points)
+					for(Measure m : p.getMeasure())
+					{
+						Integer apId = apIds.get(m.getBSSID());
+						if(apId == null)
+						{
+							insertAp.setString(1, m.getBSSID());
+							insertAp.executeUpdate();
+							queryAp.setString(1, m.getBSSID());
+							ResultSet rs = queryAp.executeQuery();
+							rs.next();
+							apId = rs.getInt(1);
+							rs.close();
+							apIds.put(m.getBSSID(), apId);
+						}
+
+						insert.setInt(1, p.getX());
+						insert.setInt(2, p.getY());
+						insert.setInt(3, m.getRssi());
+						insert.setInt(4, apId);
+						insert.addBatch();
+						rows++;
+					}
+				insert.executeBatch();
+				connection.commit();
+			}
+			catch(SQLException e)
+			{
+				connection.rollback();
+				throw e;
+			}
+		}
+		catch(SQLException e)
+		{
+			// same contract as on the device; the transaction is rolled back
+			LOG.log(Level.WARNING, "insertAll() failed", e);
+			rows = 0;
+		}
+		finally
+		{
+			// also after a failed prepare; later calls run in auto-commit again
+			close(insertAp);
+			close(queryAp);
+			close(insert);
+			try
+			{
+				connection.setAutoCommit(true);
+			}
+			catch(SQLException e)
+			{
+				LOG.log(Level.WARNING, "insertAll(): auto-commit not restored", e);
+			}
+		}
+
+		return rows;
+	}
+
+	/**
+	 * closes a statement, failures are only logged
+	 * @param stmt the statement, may be null
+	 */
+	private static void close(Statement stmt)
+	{
+		if(stmt == null)
+			return;
+
+		try
+		{
+			stmt.close();
+		}
+		catch(SQLException e)
+		{
+			LOG.log(Level.WARNING, "close() failed", e);
+		}
+	}
+
+	/**
+	 * returns a list of particles for all measurements, one particle per
+	 * position
+	 * @return the list
+	 */
+	public List<Particle> getData()
+	{
+		return query(FingerprintSchema.FINGERPRINT_SELECT + FingerprintSchema.ORDER_POSITION, new Object[0]);
+	}
+
+	/**
+	 * returns a list of particles for all measurements inside a bounding
+	 * box, the borders included
+	 * @param xmin the minimal x coordinate
+	 * @param xmax the maximal x coordinate
+	 * @param ymin the minimal y coordinate
+	 * @param ymax the maximal y coordinate
+	 * @return the list
+	 */
+	public List<Particle> getData(int xmin, int xmax, int ymin, int ymax)
+	{
+		return query(FingerprintSchema.FINGERPRINT_SELECT + FingerprintSchema.WHERE_BOX + FingerprintSchema.ORDER_POSITION,
+				new Object[]{xmin, xmax, ymin, ymax});
+	}
+
+	/**
+	 * returns a list of particles for all positions, where at least one of
+	 * the given access points was measured
+	 * @param bssids the access point's mac addresses, at most MAX_APS
+	 * @return the list
+	 */
+	public List<Particle> getDataWithAps(Collection<String> bssids)
+	{
+		if(bssids.isEmpty())
+			return new ArrayList<Particle>();
+
+		return query(FingerprintSchema.FINGERPRINT_SELECT + FingerprintSchema.joinAps(bssids.size()) + FingerprintSchema.ORDER_POSITION,
+				bssids.toArray());
+	}
+
+	/**
+	 * resets the table
+	 */
+	public void resetTable()
+	{
+		try
+		{
+			Statement stmt = connection.createStatement();
+			try
+			{
+				for(String sql : FingerprintSchema.SCHEMA_DROP)
+					stmt.executeUpdate(sql);
+				for(String sql : FingerprintSchema.SCHEMA_CREATE)
+					stmt.executeUpdate(sql);
+			}
+			finally
+			{
+				stmt.close();
+			}
+		}
+		catch(SQLException e)
+		{
+			throw new IllegalStateException("resetTable failed", e);
+		}
+	}
+
+	/**
+	 * closes the database file
+	 */
+	public void close()
+	{
+		try
+		{
+			connection.close();
+		}
+		catch(SQLException e)
+		{
+			throw new IllegalStateException("close failed", e);
+		}
+	}
+
+	/**
+	 * runs a selection and groups the rows to particles, one per position
+	 * @param sql the selection with the columns x, y, rssi, bssid
+	 * @param args the parameters of the selection
+	 * @return the list
+	 */
+	private List<Particle> query(String sql, Object[] args)
+	{
+		FingerprintLoader loader = new FingerprintLoader();
+
+		try
+		{
+			PreparedStatement stmt = connection.prepareStatement(sql);
+			try
+			{
+				for(int i = 0; i < args.length; i++)
+					stmt.setObject(i + 1, args[i]);
+
+				ResultSet rs = stmt.executeQuery();
+				while(rs.next())
+					loader.add(rs.getInt(1), rs.getInt(2), rs.getInt(3), rs.getString(4));
+				rs.close();
+			}
+			finally
+			{
+				stmt.close();
+			}
+		}
+		catch(SQLException e)
+		{
+			throw new IllegalStateException("query failed", e);
+		}
+
+		return loader.build();
+	}
+
+	/**
+	 * runs a query with one number as result
+	 * @param sql the query
+	 * @param arg the parameter of the query or null
+	 * @return the number, 0 if there is no row
+	 */
+	private long queryLong(String sql, String arg) throws SQLException
+	{
+		PreparedStatement stmt = connection.prepareStatement(sql);
+		try
+		{
+			if(arg != null)
+				stmt.setString(1, arg);
+
+			ResultSet rs = stmt.executeQuery();
+			long value = rs.next() ? rs.getLong(1) : 0;
+			rs.close();
+
+			return value;
+		}
+		finally
+		{
+			stmt.close();
+		}
+	}
+}
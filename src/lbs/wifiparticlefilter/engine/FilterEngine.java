@@ -0,0 +1,323 @@
+package lbs.wifiparticlefilter.engine;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lbs.wifiparticlefilter.data.Measure;
+import lbs.wifiparticlefilter.filter.Filter;
+import lbs.wifiparticlefilter.filter.LiveRadioMap;
+import lbs.wifiparticlefilter.filter.RadioMap;
+import lbs.wifiparticlefilter.metrics.FilterMetrics;
+import lbs.wifiparticlefilter.metrics.MetricsRegistry;
+
+
+/**
+ * Hosts the filters of many tracked devices. All sessions share one
+ * radio-map; steps run on a bounded thread-pool, at most one per session.
+ * New measurements can be added to the map while the sessions are running.
+ * The steps of all sessions are recorded in one metrics-registry.
+ * <p>
+ * The profile-cache of the map is sized by the engine: its capacity is
+ * configured with the engine, and it has a few segments per thread, so
+ * steps on different threads rarely wait for each other.
+ *
+ * @version 1.4
+ */
+public class FilterEngine {
+
+
+	// measurements of all sessions
+	private final LiveRadioMap map;
+	// number of particles per session
+	private final int particles;
+	// segments of the profile-cache per thread
+	public static final int SEGMENTS_PER_THREAD = 4;
+	// cached profiles per particle and thread, if no cache-size is given
+	public static final int PROFILES_PER_PARTICLE = 4;
+
+	// runs the steps of all sessions
+	private final ThreadPoolExecutor executor;
+	// sessions by device-id
+	private final ConcurrentMap<String,FilterSession> sessions = new ConcurrentHashMap<String,FilterSession>();
+	// locks of the devices, whose sessions are being created
+	private final ConcurrentMap<String,Object> creating = new ConcurrentHashMap<String,Object>();
+	// steps of all sessions
+	private final AtomicLong total_steps = new AtomicLong();
+	// time of creation
+	private final long created = System.nanoTime();
+	// metrics of all sessions
+	private final MetricsRegistry registry = new MetricsRegistry();
+	private final FilterMetrics metrics = new FilterMetrics(registry);
+
+
+	/**
+	 * C'tor; the profile-cache holds the profiles of a few sessions per
+	 * thread.
+	 *
+	 * @param map Radio-map for all sessions
+	 * @param particles Number of particles per session
+	 * @param threads Number of threads for the steps
+	 * @param queue_size Maximal number of waiting steps
+	 */
+	public FilterEngine(RadioMap map, int particles, int threads, int queue_size){
+		this(map, particles, threads, queue_size, PROFILES_PER_PARTICLE * particles * threads);
+	}
+
+
+	/**
+	 * C'tor
+	 *
+	 * @param map Radio-map for all sessions
+	 * @param particles Number of particles per session
+	 * @param threads Number of threads for the steps
+	 * @param queue_size Maximal number of waiting steps
+	 * @param cache_size Number of interpolated profiles, which are cached
+	 * for all sessions
+	 */
+	public FilterEngine(RadioMap map, int particles, int threads, int queue_size, int cache_size){
+		this(new LiveRadioMap(map), particles, threads, queue_size, cache_size);
+	}
+
+
+	/**
+	 * C'tor; sessions follow the versions of a live radio-map. The 
+	 * profile-cache holds the profiles of a few sessions per thread.
+	 *
+	 * @param map Live radio-map for all sessions
+	 * @param particles Number of particles per session
+	 * @param threads Number of threads for the steps
+	 * @param queue_size Maximal number of waiting steps
+	 */
+	public FilterEngine(LiveRadioMap map, int particles, int threads, int queue_size){
+		this(map, particles, threads, queue_size, PROFILES_PER_PARTICLE * particles * threads);
+	}
+
+
+	/**
+	 * C'tor; sessions follow the versions of a live radio-map. The actual
+	 * version gets a new profile-cache, which is kept by later updates.
+	 *
+	 * @param map Live radio-map for all sessions
+	 * @param particles Number of particles per session
+	 * @param threads Number of threads for the steps
+	 * @param queue_size Maximal number of waiting steps
+	 * @param cache_size Number of interpolated profiles, which are cached
+	 * for all sessions
+	 */
+	public FilterEngine(LiveRadioMap map, int particles, int threads, int queue_size, int cache_size){
+
+		this.map = map;
+		this.particles = particles;
+
+		map.setCache(cache_size, SEGMENTS_PER_THREAD * threads);
+
+		executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queue_size));
+	}
+
+
+	/**
+	 * Gets the session of a device. A new session is created, if the device
+	 * is unknown.
+	 *
+	 * @param device Id of the tracked device
+	 * @return Session of the device
+	 */
+	public FilterSession open(String device){
+
+		FilterSession session = sessions.get(device);
+
+		if (session != null)
+			return session;
+
+		// one lock per new device; the filter is only created once
+		Object lock = new Object();
+		Object other = creating.putIfAbsent(device, lock);
+		if (other != null)
+			lock = other;
+
+		synchronized (lock){
+
+			// another thread may have created the session in the meantime
+			session = sessions.get(device);
+
+			if (session == null){
+				session = new FilterSession(device, createFilter(device), executor, total_steps);
+				sessions.put(device, session);
+			}
+		}
+
+		creating.remove(device, lock);
+
+		return session;
+	}
+
+
+	/**
+	 * Submits a scan of a device. The step runs later on the thread-pool.
+	 *
+	 * @param device Id of the tracked device
+	 * @param scan Measure-list of the scan
+	 * @return Session of the device
+	 */
+	public FilterSession submit(String device, List<Measure> scan){
+
+		FilterSession session = open(device);
+		session.submit(scan);
+
+		return session;
+	}
+
+
+	/**
+	 * Gets the session of a device.
+	 *
+	 * @param device Id of the tracked device
+	 * @return Session or null, if device is unknown
+	 */
+	public FilterSession get(String device){
+		return sessions.get(device);
+	}
+
+
+	/**
+	 * Removes the session of a device. A running step is finished.
+	 *
+	 * @param device Id of the tracked device
+	 * @return Removed session or null, if device is unknown
+	 */
+	public FilterSession close(String device){
+		return sessions.remove(device);
+	}
+
+
+	/**
+	 * Gets all sessions.
+	 *
+	 * @return New list with the sessions
+	 */
+	public List<FilterSession> getSessions(){
+		return new ArrayList<FilterSession>(sessions.values());
+	}
+
+
+	/**
+	 * Gets the number of sessions.
+	 *
+	 * @return Number of sessions
+	 */
+	public int getSessionCount(){
+		return sessions.size();
+	}
+
+
+	/**
+	 * Gets the actual version of the radio-map of all sessions.
+	 *
+	 * @return Radio-map
+	 */
+	public RadioMap getRadioMap(){
+		return map.get();
+	}
+
+
+	/**
+	 * Gets the live radio-map of all sessions. Updates are taken by each
+	 * session at its next step.
+	 *
+	 * @return Live radio-map
+	 */
+	public LiveRadioMap getLiveRadioMap(){
+		return map;
+	}
+
+
+	/**
+	 * Gets the number of processed scans of all sessions.
+	 *
+	 * @return Number of steps
+	 */
+	public long getTotalSteps(){
+		return total_steps.get();
+	}
+
+
+	/**
+	 * Gets the number of steps, which are waiting for a thread.
+	 *
+	 * @return Number of waiting steps
+	 */
+	public int getQueued(){
+		return executor.getQueue().size();
+	}
+
+
+	/**
+	 * Gets the processed scans of all sessions per second since creation of
+	 * the engine.
+	 *
+	 * @return Steps per second
+	 */
+	public double getThroughput(){
+
+		double seconds = (System.nanoTime() - created) / 1e9;
+
+		return (seconds > 0) ? total_steps.get() / seconds : 0;
+	}
+
+
+	/**
+	 * Gets the metrics of the steps of all sessions, e.g. for an exporter.
+	 *
+	 * @return Metrics-registry
+	 */
+	public MetricsRegistry getMetrics(){
+		return registry;
+	}
+
+
+	/**
+	 * Stops the thread-pool. Waiting steps are still processed.
+	 */
+	public void shutdown(){
+		executor.shutdown();
+	}
+
+
+	/**
+	 * Waits, until all steps are processed after shutdown.
+	 *
+	 * @param timeout Maximal time to wait
+	 * @param unit Unit of timeout
+	 * @return true, if all steps are processed
+	 * @throws InterruptedException if the thread was interrupted
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+
+	/**
+	 * Creates and initializes the filter of a new session. Subclasses may
+	 * configure the filter.
+	 *
+	 * @param device Id of the tracked device
+	 * @return Initialized filter
+	 */
+	protected Filter createFilter(String device){
+
+		Filter filter = new Filter(particles, map.get());
+		filter.setLiveRadioMap(map);
+		filter.setMetrics(metrics);
+		filter.initFilter();
+
+		return filter;
+	}
+}
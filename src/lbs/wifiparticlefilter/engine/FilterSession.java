@@ -0,0 +1,259 @@
+package lbs.wifiparticlefilter.engine;
+
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import lbs.wifiparticlefilter.data.Measure;
+import lbs.wifiparticlefilter.filter.Filter;
+
+
+/**
+ * Filter of one tracked device. Scans are submitted from any thread; the
+ * filter runs at most one step at a time. If scans arrive faster than they
+ * are processed, only the newest waiting scan is kept.
+ *
+ * @version 1.1
+ */
+public class FilterSession implements Runnable {
+
+
+	// id of the tracked device
+	private final String device;
+	// filter of the device; only used by the thread, which runs the step
+	private final Filter filter;
+	// runs the steps
+	private final Executor executor;
+	// counts the steps of all sessions; null if not counted
+	private final AtomicLong total_steps;
+	// newest scan, which isn't processed yet
+	private final AtomicReference<List<Measure>> pending = new AtomicReference<List<Measure>>();
+	// true, while a step is submitted or running
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	// time of creation
+	private final long created = System.nanoTime();
+	// counters; written by the running step only
+	private volatile long steps = 0;
+	private volatile long busy_nanos = 0;
+	private volatile long errors = 0;
+	private volatile RuntimeException last_error = null;
+	// counters; written by submitting threads
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+
+
+	/**
+	 * C'tor; the filter must be initialized already.
+	 *
+	 * @param device Id of the tracked device
+	 * @param filter Filter of the device
+	 * @param executor Executor for the steps
+	 * @param total_steps Counter for the steps of all sessions or null
+	 */
+	public FilterSession(String device, Filter filter, Executor executor, AtomicLong total_steps){
+
+		this.device = device;
+		this.filter = filter;
+		this.executor = executor;
+		this.total_steps = total_steps;
+	}
+
+
+	/**
+	 * Submits a scan of the device. A scan, which is still waiting, is
+	 * replaced.
+	 *
+	 * @param scan Measure-list of the scan
+	 */
+	public void submit(List<Measure> scan){
+
+		submitted.incrementAndGet();
+
+		// older scan wasn't processed; it is outdated now
+		if (pending.getAndSet(scan) != null)
+			coalesced.incrementAndGet();
+
+		schedule();
+	}
+
+
+	/**
+	 * Runs one step with the newest waiting scan. Called by the executor.
+	 */
+	public void run(){
+
+		List<Measure> scan = pending.getAndSet(null);
+
+		if (scan != null){
+
+			long start = System.nanoTime();
+
+			try {
+
+				filter.setCurrentMeasure(scan);
+				filter.estimate();
+				filter.propagate();
+
+				steps++;
+				if (total_steps != null)
+					total_steps.incrementAndGet();
+
+			} catch (RuntimeException e){
+
+				// session stays usable; next scan starts a new step
+				errors++;
+				last_error = e;
+			}
+
+			busy_nanos += System.nanoTime() - start;
+		}
+
+		scheduled.set(false);
+
+		// scan arrived during the step
+		if (pending.get() != null)
+			schedule();
+	}
+
+
+	/**
+	 * Submits a step, if no step is submitted or running.
+	 */
+	private void schedule(){
+
+		if (!scheduled.compareAndSet(false, true))
+			return;
+
+		try {
+			executor.execute(this);
+		} catch (RejectedExecutionException e){
+
+			// executor is full or shut down; the waiting scan is dropped, so 
+			// it isn't processed late by the next step
+			scheduled.set(false);
+			if (pending.getAndSet(null) != null)
+				rejected.incrementAndGet();
+		}
+	}
+
+
+	/**
+	 * Gets the id of the tracked device.
+	 *
+	 * @return Device-id
+	 */
+	public String getDevice(){
+		return device;
+	}
+
+
+	/**
+	 * Gets the filter of the device. The filter must only be used, while no
+	 * step is running.
+	 *
+	 * @return Filter of the session
+	 */
+	public Filter getFilter(){
+		return filter;
+	}
+
+
+	/**
+	 * Checks, if a step is submitted or running.
+	 *
+	 * @return true, if the session is busy
+	 */
+	public boolean isBusy(){
+		return scheduled.get();
+	}
+
+
+	/**
+	 * Gets the number of processed scans.
+	 *
+	 * @return Number of steps
+	 */
+	public long getSteps(){
+		return steps;
+	}
+
+
+	/**
+	 * Gets the number of submitted scans.
+	 *
+	 * @return Number of scans
+	 */
+	public long getSubmitted(){
+		return submitted.get();
+	}
+
+
+	/**
+	 * Gets the number of scans, which were replaced by a newer scan before
+	 * they were processed.
+	 *
+	 * @return Number of dropped scans
+	 */
+	public long getCoalesced(){
+		return coalesced.get();
+	}
+
+
+	/**
+	 * Gets the number of scans, which were dropped, because the executor
+	 * didn't accept their step.
+	 *
+	 * @return Number of rejected scans
+	 */
+	public long getRejected(){
+		return rejected.get();
+	}
+
+
+	/**
+	 * Gets the number of steps, which failed with an exception.
+	 *
+	 * @return Number of failed steps
+	 */
+	public long getErrors(){
+		return errors;
+	}
+
+
+	/**
+	 * Gets the exception of the last failed step.
+	 *
+	 * @return Exception or null
+	 */
+	public RuntimeException getLastError(){
+		return last_error;
+	}
+
+
+	/**
+	 * Gets the time, which was spent in steps.
+	 *
+	 * @return Busy time in nanoseconds
+	 */
+	public long getBusyNanos(){
+		return busy_nanos;
+	}
+
+
+	/**
+	 * Gets the processed scans per second since creation of the session.
+	 *
+	 * @return Steps per second
+	 */
+	public double getThroughput(){
+
+		double seconds = (System.nanoTime() - created) / 1e9;
+
+		return (seconds > 0) ? steps / seconds : 0;
+	}
+}
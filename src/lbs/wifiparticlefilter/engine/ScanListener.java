@@ -0,0 +1,25 @@
+package lbs.wifiparticlefilter.engine;
+
+
+import java.util.List;
+
+import lbs.wifiparticlefilter.data.Measure;
+
+
+/**
+ * Receiver of the scans of a scan-source.
+ *
+ * @version 1.0
+ */
+public interface ScanListener {
+
+
+	/**
+	 * Called for each scan. Must return quickly; sources call it from their
+	 * own thread, e.g. the ui thread on the device.
+	 *
+	 * @param timestamp Time of the scan in ms
+	 * @param scan Measure-list of the scan
+	 */
+	void onScan(long timestamp, List<Measure> scan);
+}
@@ -0,0 +1,334 @@
+package lbs.wifiparticlefilter.engine;
+
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lbs.wifiparticlefilter.data.Measure;
+import lbs.wifiparticlefilter.metrics.LatencyHistogram;
+
+
+/**
+ * Decouples a scan-source from the filter. Scans are put into a bounded
+ * queue by any thread and handed to the handler by one consumer-thread, so
+ * the source never waits for the filter. If the filter falls behind, the
+ * oldest scans are dropped: a full queue drops its oldest scan, scans which
+ * waited longer than the maximal age are skipped, and with coalescing only
+ * the newest waiting scan is processed. The delay of a processed scan is
+ * bounded by the maximal age plus one step.
+ *
+ * @version 1.0
+ */
+public class ScanPipeline implements ScanListener, Runnable {
+
+
+	// poll-interval of the consumer, to notice the stop
+	private static final long POLL_MS = 100;
+
+	// processes the scans; only called by the consumer-thread
+	private final ScanListener handler;
+	// waiting scans, oldest first
+	private final BlockingQueue<Entry> queue;
+	// maximal waiting time of a scan in ns; 0 for no limit
+	private volatile long max_age = 0;
+	// true, if only the newest waiting scan is processed
+	private volatile boolean coalescing = true;
+	// consumer; null if not started
+	private volatile Thread consumer = null;
+	private volatile boolean running = false;
+	// time from arrival to the end of the step
+	private final LatencyHistogram latency = new LatencyHistogram();
+	// counters; written by the sources
+	private final AtomicLong received = new AtomicLong();
+	private final AtomicLong dropped_full = new AtomicLong();
+	// counters; written by the consumer only
+	private volatile long processed = 0;
+	private volatile long dropped_stale = 0;
+	private volatile long coalesced = 0;
+	private volatile long errors = 0;
+	private volatile RuntimeException last_error = null;
+
+
+	/**
+	 * Scan with its time of arrival.
+	 */
+	private static class Entry {
+
+		final long timestamp;
+		final List<Measure> scan;
+		final long arrived = System.nanoTime();
+
+		Entry(long timestamp, List<Measure> scan){
+			this.timestamp = timestamp;
+			this.scan = scan;
+		}
+	}
+
+
+	/**
+	 * C'tor.
+	 *
+	 * @param handler Processes the scans, e.g. runs the filter
+	 * @param capacity Maximal number of waiting scans
+	 */
+	public ScanPipeline(ScanListener handler, int capacity){
+
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity < 1");
+
+		this.handler = handler;
+		this.queue = new ArrayBlockingQueue<Entry>(capacity);
+	}
+
+
+	/**
+	 * Sets the maximal time, a scan may wait for the filter. Older scans are
+	 * dropped without processing.
+	 *
+	 * @param ms Maximal age in ms; 0 for no limit
+	 */
+	public void setMaxAge(long ms){
+		max_age = TimeUnit.MILLISECONDS.toNanos(ms);
+	}
+
+
+	/**
+	 * Sets, if only the newest waiting scan is processed. Without
+	 * coalescing, all waiting scans are processed in order.
+	 *
+	 * @param coalescing true for coalescing
+	 */
+	public void setCoalescing(boolean coalescing){
+		this.coalescing = coalescing;
+	}
+
+
+	/**
+	 * Starts the consumer-thread.
+	 *
+	 * @throws IllegalStateException if the pipeline is running already
+	 */
+	public synchronized void start(){
+
+		if (running)
+			throw new IllegalStateException("pipeline is running");
+
+		running = true;
+		consumer = new Thread(this, "scan-pipeline");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+
+	/**
+	 * Stops the consumer-thread after the running step. Waiting scans are
+	 * dropped. Doesn't wait for the thread.
+	 */
+	public synchronized void stop(){
+
+		running = false;
+
+		if (consumer != null)
+			consumer.interrupt();
+
+		queue.clear();
+	}
+
+
+	/**
+	 * Waits for the end of the consumer-thread.
+	 *
+	 * @param ms Maximal waiting time in ms
+	 * @return true, if the thread ended or wasn't started
+	 * @throws InterruptedException if the waiting thread is interrupted
+	 */
+	public boolean join(long ms) throws InterruptedException {
+
+		Thread t;
+		synchronized (this){
+			t = consumer;
+		}
+
+		if (t == null)
+			return true;
+
+		t.join(ms);
+		return !t.isAlive();
+	}
+
+
+	/**
+	 * Puts a scan into the queue; never blocks. If the queue is full, the
+	 * oldest scan is dropped.
+	 *
+	 * @param timestamp Time of the scan in ms
+	 * @param scan Measure-list of the scan
+	 */
+	public void onScan(long timestamp, List<Measure> scan){
+
+		received.incrementAndGet();
+
+		Entry e = new Entry(timestamp, scan);
+
+		// make room; the consumer may take the head in the meantime
+		while (!queue.offer(e))
+			if (queue.poll() != null)
+				dropped_full.incrementAndGet();
+	}
+
+
+	/**
+	 * Consumer-loop. Called by the consumer-thread.
+	 */
+	public void run(){
+
+		// an old consumer ends, even if the pipeline was restarted meanwhile
+		while (running && consumer == Thread.currentThread()){
+
+			Entry e;
+			try {
+				e = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ex){
+				continue;
+			}
+
+			if (e == null)
+				continue;
+
+			// newer scans make this one outdated
+			if (coalescing){
+
+				Entry next;
+				while ((next = queue.poll()) != null){
+					e = next;
+					coalesced++;
+				}
+			}
+
+			// scan waited too long; the position would lag behind
+			if (max_age > 0 && System.nanoTime() - e.arrived > max_age){
+				dropped_stale++;
+				continue;
+			}
+
+			try {
+
+				handler.onScan(e.timestamp, e.scan);
+				processed++;
+
+			} catch (RuntimeException ex){
+
+				// pipeline stays usable; next scan starts a new step
+				errors++;
+				last_error = ex;
+			}
+
+			latency.record(System.nanoTime() - e.arrived);
+		}
+	}
+
+
+	/**
+	 * Checks, if the consumer-thread is running.
+	 *
+	 * @return true, if running
+	 */
+	public boolean isRunning(){
+		return running;
+	}
+
+
+	/**
+	 * Gets the number of waiting scans.
+	 *
+	 * @return Queue length
+	 */
+	public int getQueued(){
+		return queue.size();
+	}
+
+
+	/**
+	 * Gets the number of received scans.
+	 *
+	 * @return Number of scans
+	 */
+	public long getReceived(){
+		return received.get();
+	}
+
+
+	/**
+	 * Gets the number of scans, which were handed to the handler.
+	 *
+	 * @return Number of scans
+	 */
+	public long getProcessed(){
+		return processed;
+	}
+
+
+	/**
+	 * Gets the number of scans, which were dropped from the full queue.
+	 *
+	 * @return Number of scans
+	 */
+	public long getDroppedFull(){
+		return dropped_full.get();
+	}
+
+
+	/**
+	 * Gets the number of scans, which were dropped, because they waited
+	 * longer than the maximal age.
+	 *
+	 * @return Number of scans
+	 */
+	public long getDroppedStale(){
+		return dropped_stale;
+	}
+
+
+	/**
+	 * Gets the number of scans, which were replaced by a newer waiting scan.
+	 *
+	 * @return Number of scans
+	 */
+	public long getCoalesced(){
+		return coalesced;
+	}
+
+
+	/**
+	 * Gets the number of steps, which ended with an exception.
+	 *
+	 * @return Number of failed steps
+	 */
+	public long getErrors(){
+		return errors;
+	}
+
+
+	/**
+	 * Gets the exception of the last failed step.
+	 *
+	 * @return Exception or null
+	 */
+	public RuntimeException getLastError(){
+		return last_error;
+	}
+
+
+	/**
+	 * Gets the histogram of the times from the arrival of a scan to the end
+	 * of its step.
+	 *
+	 * @return Latency-histogram in ns
+	 */
+	public LatencyHistogram getLatency(){
+		return latency;
+	}
+}
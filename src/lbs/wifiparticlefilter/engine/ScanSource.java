@@ -0,0 +1,27 @@
+package lbs.wifiparticlefilter.engine;
+
+
+/**
+ * Source of scans, e.g. the wifi of the device, a recorded log or a
+ * synthetic walk. A source delivers its scans to one listener, until it is
+ * stopped.
+ *
+ * @version 1.0
+ */
+public interface ScanSource {
+
+
+	/**
+	 * Starts the delivery of scans.
+	 *
+	 * @param listener Receiver of the scans
+	 */
+	void start(ScanListener listener);
+
+
+	/**
+	 * Stops the delivery of scans. Scans may still arrive, while the source
+	 * shuts down.
+	 */
+	void stop();
+}
@@ -0,0 +1,151 @@
+package lbs.wifiparticlefilter.filter;
+
+
+/**
+ * Calculates the likelihood-sums of many particles at once. Interpolated
+ * signal-strengths are quantized to one byte, so the likelihood of each
+ * hotspot of the measurement takes only 256 values. They are calculated
+ * once per measurement into a table; the weighting of the particles then
+ * needs no division, only table-lookups and additions.
+ * <p>
+ * The strengths of a tile of particles are written as table-indices into a
+ * dense matrix with one row per hotspot of the measurement; hotspots, which
+ * a particle doesn't know, point to a zero in the table. The rows are added
+ * in the order of the hotspot-ids and the table holds the same values as
+ * the merge-join in the filter calculates, so the sums are the same.
+ *
+ * @version 1.1
+ */
+public class BatchLikelihood {
+
+
+	// number of particles in one tile
+	public static final int TILE = 256;
+	// number of signal-strengths of one byte; index of a missing hotspot
+	private static final int VALUES = 256;
+	private static final int MISSING = VALUES;
+	// row-length of the table; the last value is for a missing hotspot
+	private static final int ROW = VALUES + 1;
+
+	// likelihoods of each hotspot of the measurement for all strengths
+	private double[] table = new double[0];
+	// measurement of the table
+	private Profile scan = null;
+
+
+	/**
+	 * Calculates the table for a measurement. Must be called before 
+	 * calcSums; then calcSums may run on many threads at once.
+	 *
+	 * @param scan Profile of the actual measurement
+	 */
+	public void prepare(Profile scan){
+
+		int[] rssi_curr = scan.getRssi();
+		int rows = rssi_curr.length;
+
+		if (table.length < rows * ROW)
+			table = new double[rows * ROW];
+
+		for (int a=0; a<rows; a++){
+
+			double rssi = rssi_curr[a];
+			int base = a * ROW;
+
+			// same calculation as the filter does for each particle
+			for (int v=0; v<VALUES; v++){
+				double r = rssi / (double) (v + Byte.MIN_VALUE);
+				table[base + v] = (r > 1.0) ? 1.0 / r : r;
+			}
+
+			table[base + MISSING] = 0.0;
+		}
+
+		this.scan = scan;
+	}
+
+
+	/**
+	 * Calculates the sum of the likelihoods of all hotspots for a range of
+	 * particles. Each call uses its own tile, so ranges can be calculated
+	 * in parallel.
+	 *
+	 * @param particles Store with the particles
+	 * @param from Index of the first particle
+	 * @param to Index after the last particle
+	 * @param sums Array for the sums; index is the index of the particle
+	 * @return false, if a particle has a strength outside of one byte; the
+	 * sums are not valid then
+	 */
+	public boolean calcSums(ParticleStore particles, int from, int to, double[] sums){
+
+		int[] ids_curr = scan.getIds();
+		int rows = ids_curr.length;
+
+		// matrix of this call; one column per particle
+		short[] tile = new short[rows * Math.min(TILE, Math.max(to - from, 0))];
+
+		for (int t=from; t<to; t+=TILE){
+
+			int n = Math.min(TILE, to - t);
+
+			for (int p=0; p<n; p++)
+				if (!fillColumn(particles.getProfile(t + p), ids_curr, tile, p, n))
+					return false;
+
+			for (int p=0; p<n; p++)
+				sums[t + p] = 0.0;
+
+			// one row per hotspot of the measurement
+			for (int a=0; a<rows; a++){
+
+				int base = a * n;
+				int row = a * ROW;
+
+				for (int p=0; p<n; p++)
+					sums[t + p] += table[row + tile[base + p]];
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Writes the table-indices of a particle for all hotspots of the 
+	 * measurement into a column of the tile.
+	 *
+	 * @return false, if a strength is outside of one byte
+	 */
+	private static boolean fillColumn(Profile prof, int[] ids_curr, short[] tile, int column, int n){
+
+		int[] ids_part = prof.getIds();
+		int[] rssi_part = prof.getRssi();
+
+		for (int a=0; a<ids_curr.length; a++)
+			tile[a * n + column] = MISSING;
+
+		int i = 0;
+		int j = 0;
+
+		while ((i < ids_curr.length) && (j < ids_part.length)){
+
+			if (ids_curr[i] < ids_part[j]){
+				i++;
+			} else if (ids_curr[i] > ids_part[j]){
+				j++;
+			} else {
+
+				int v = rssi_part[j] - Byte.MIN_VALUE;
+				if ((v < 0) || (v >= VALUES))
+					return false;
+
+				// measurement may contain a hotspot twice
+				tile[i * n + column] = (short) v;
+				i++;
+			}
+		}
+
+		return true;
+	}
+}
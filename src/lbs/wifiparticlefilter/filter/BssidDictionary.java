@@ -0,0 +1,121 @@
+package lbs.wifiparticlefilter.filter;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lbs.wifiparticlefilter.data.Measure;
+import lbs.wifiparticlefilter.data.Particle;
+
+
+/**
+ * Dictionary for all hotspots of the database. Every BSSID gets a dense
+ * integer-id, so measures can be compared by id instead of by string.
+ *
+ * @version 1.1
+ */
+public class BssidDictionary {
+
+
+	// escape-number for unknown hotspots
+	public static final int UNKNOWN = -1;
+
+	// ids by BSSID
+	private final Map<String,Integer> ids = new HashMap<String,Integer>();
+	// BSSIDs by id
+	private final List<String> names = new ArrayList<String>();
+
+
+	/**
+	 * C'tor; creates an empty dictionary.
+	 */
+	public BssidDictionary(){
+	}
+
+
+	/**
+	 * C'tor; copies a dictionary. All hotspots keep their ids, so profiles
+	 * of the other dictionary stay valid for the copy.
+	 *
+	 * @param base Dictionary to copy
+	 */
+	public BssidDictionary(BssidDictionary base){
+
+		ids.putAll(base.ids);
+		names.addAll(base.names);
+	}
+
+
+	/**
+	 * C'tor; adds all hotspots, which are measured in the database.
+	 *
+	 * @param list Particle-list with measurements from database
+	 */
+	public BssidDictionary(List<Particle> list){
+
+		for (int i=0; i<list.size(); i++){
+
+			List<Measure> mlist = list.get(i).getMeasure();
+
+			for (int j=0; j<mlist.size(); j++)
+				intern(mlist.get(j).getBSSID());
+		}
+	}
+
+
+	/**
+	 * Gives back the id of a hotspot. Unknown hotspots get the next free id.
+	 *
+	 * @param bssid Name of the hotspot
+	 * @return Id of the hotspot
+	 */
+	public int intern(String bssid){
+
+		Integer id = ids.get(bssid);
+
+		if (id == null){
+			id = names.size();
+			ids.put(bssid, id);
+			names.add(bssid);
+		}
+
+		return id;
+	}
+
+
+	/**
+	 * Gives back the id of a hotspot.
+	 *
+	 * @param bssid Name of the hotspot
+	 * @return Id of the hotspot or UNKNOWN, if hotspot is not in database
+	 */
+	public int getId(String bssid){
+
+		Integer id = ids.get(bssid);
+
+		return (id != null) ? id : UNKNOWN;
+	}
+
+
+	/**
+	 * Gives back the name of a hotspot.
+	 *
+	 * @param id Id of the hotspot
+	 * @return BSSID of the hotspot
+	 */
+	public String getBssid(int id){
+		return names.get(id);
+	}
+
+
+	/**
+	 * Gets the number of hotspots.
+	 *
+	 * @return Number of hotspots
+	 */
+	public int size(){
+		return names.size();
+	}
+}
@@ -2,34 +2,94 @@ package lbs.wifiparticlefilter.filter;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import lbs.wifiparticlefilter.data.Measure;
 import lbs.wifiparticlefilter.data.Particle;
 import lbs.wifiparticlefilter.data.Point;
+import lbs.wifiparticlefilter.metrics.FilterMetrics;
 
 
 /**
  * Class contains filter-core for localisation by wifi-measurements.
  * 
  * @author Andreas Attenberger
- * @version 1.9
+ * @version 1.15
  */
 public class Filter {
 
 	
+	// Number of interpolated profiles, which are cached
+	public static final int CACHE_SIZE = 4096;
+	// Number of incremental steps, after which all weights are recalculated
+	public static final int REFRESH_STEPS = 50;
+	// Escape-number for a hotspot, which is missing in a measurement
+	private static final int MISSING = Integer.MIN_VALUE;
+	
 	// List with wifi-measurements from datebase
 	private List<Particle> db_list;
+	// Indexed measurements; may be shared with other filters
+	private RadioMap map;
+	// Source of new versions of the map; null, if the map is fixed
+	private LiveRadioMap live = null;
 	// Array for room-dilation; [xmin xmax ymin ymax]
 	private int[] border = new int[4];
 	// Number of particles
 	private int num_part;
-	// List for "moving"-particles
-	private List<Particle> part_list;	
+	// Store for "moving"-particles
+	private ParticleStore store;
+	// Store for the particles of the next step; swapped with store
+	private ParticleStore next;
+	// Cumulative weights for systematic resampling
+	private double[] cum_weight;
+	// Strategy to create the particles of the next step
+	private Resampling resampling = Resampling.MEAN_THRESHOLD;
+	// Adapts num_part to the spread of the particles; null for fixed number
+	private KldSampling kld = null;
+	// Mean weight of the particles before normalization
+	private double likelihood = Double.NaN;
+	// Random numbers for new particles & resampling
+	private RandomSource random = new SplitMixRandom();
+	// Runs loops over the particles; sequential by default
+	private ParallelRunner runner = new ParallelRunner();
+	// Loops for the runner; created once
+	private final WeightTask weight_task = new WeightTask();
+	private final WeightSum weight_sum = new WeightSum();
+	private final NormTask norm_task = new NormTask();
+	private final InterpolateTask interpolate_task = new InterpolateTask();
 	// Tuning-factor for degeneration-threshold
 	double threshold = 0.7;	
 	// List for actual wifi-measurement
 	private List<Measure> current = null;
+	// Profile of actual wifi-measurement; only hotspots from database
+	private Profile current_prof = null;
+	// Update weights only for hotspots, which changed since the last step
+	private boolean incremental = false;
+	// Profile of the last measurement, which was used by estimate
+	private Profile last_prof = null;
+	// Steps since all weights were calculated completely
+	private int incremental_steps = 0;
+	// Changed hotspots; id, rssi in last and in actual measurement
+	private int[] delta_ids = new int[0];
+	private int[] delta_last = new int[0];
+	private int[] delta_curr = new int[0];
+	private int delta_size = 0;
+	// Calculates likelihoods of many particles at once; null if not used
+	private BatchLikelihood batch = null;
+	// Sums of the batch-calculation; index is the index in store
+	private double[] batch_sums = new double[0];
+	// Particles of the last step for other threads, e.g. a renderer
+	private final AtomicReference<ParticleSnapshot> snapshot = new AtomicReference<ParticleSnapshot>(ParticleSnapshot.EMPTY);
+	// Number of published snapshots
+	private long snapshot_steps = 0;
+	// Records times & work of the steps; null if not measured
+	private FilterMetrics metrics = null;
+	// Interpolated profiles since the last step
+	private long interpolated = 0;
+	// Particles, which were not kept by the last resampling
+	private int replaced = 0;
 	
 	
 	/**
@@ -40,12 +100,31 @@ public class Filter {
 	 */
 	public Filter(int particles, List<Particle> database){
 		
-		num_part = particles;
-		part_list = new ArrayList<Particle>();	
+		this(particles, new RadioMap(database));
+		
+		// interpolate compares the database by reference
 		db_list = database;
+	}
+	
+	
+	/**
+	 * C'tor; the radio-map is only read, so one map can be used by many 
+	 * filters at once.
+	 * 
+	 * @param particles Number of particles for creation
+	 * @param map Indexed measurements from database
+	 */
+	public Filter(int particles, RadioMap map){
 		
-		// calc dilation of room
-		border = this.calcBorder();		
+		num_part = particles;
+		store = new ParticleStore(num_part);
+		next = new ParticleStore(num_part);
+		cum_weight = new double[num_part];
+		this.map = map;
+		db_list = map.getDatabase();
+		
+		// dilation of room
+		border = map.getBorder();
 	}
 	
 	
@@ -57,24 +136,25 @@ public class Filter {
 		// calc initial weight
 		double initial_weight = 1.0 / num_part;
 		
+		store.clear();
+		
 		for (int i=0; i<num_part; i++){
 			
 			// create random point
-			Point p = createRandomPoint();
+			int x = randomCoord(border[0], border[1]);
+			int y = randomCoord(border[2], border[3]);
 			
-			// new particle on point p
-			Particle part = new Particle(p);
-			
-			// interpolate particle part by his neighbors from database
-			InterpolateParticle ip = new InterpolateParticle(part, db_list);
-			Particle clean = ip.interpolatedParticle();
-			
-			// set intial weight
-			clean.setWeight(initial_weight);
-			
-			// add particle to list
-			part_list.add(clean);	
+			// add particle with intial weight to store; not interpolated yet
+			store.add(x, y, initial_weight, null);
 		}	
+		
+		// interpolate all points by their neighbors from database
+		interpolateAll(store, 0);
+		
+		publish();
+		
+		// initial interpolations don't belong to a step
+		interpolated = 0;
 	}
 	
 	
@@ -84,66 +164,207 @@ public class Filter {
 	 */
 	public void estimate(){
 		
-		for (int i=0; i<part_list.size(); i++){
-			
-			// get particle from list
-			Particle tmp = part_list.get(i);
+		long start = (metrics != null) ? System.nanoTime() : 0;
 		
-			calcWeight(tmp);
+		// only changed hotspots have to be considered
+		weight_task.use_delta = incremental && calcDelta();
+		
+		// space for sums & likelihood-table of the batch-calculation
+		if ((batch != null) && !weight_task.use_delta){
+			if (batch_sums.length < store.capacity())
+				batch_sums = new double[store.capacity()];
+			batch.prepare(current_prof);
 		}
 		
+		// weight of all particles
+		weight_task.target = store;
+		runner.forEach(store.size(), weight_task);
+		
 		// normalize weights
-		part_list = normWeight(part_list);		
+		double sum = normWeight(store);		
+		
+		// how good the particles explain the measurement
+		likelihood = sum / store.size();
+		
+		if (metrics != null){
+			int weighted = weight_task.use_delta ? delta_size : current_prof.getIds().length;
+			metrics.recordEstimate(System.nanoTime() - start, (long) weighted * store.size(), calcEss(store));
+		}
 	}
 	
 	
 	/**
 	 * Creates particles on their probability-density-function. More probable
 	 * particles are propagated. Less probable particles will be rejected and  
-	 * replaced by new more probable particles. 
+	 * replaced by new more probable particles. The particles are created by 
+	 * the selected resampling-strategy.
 	 * 
 	 */
 	public void propagate(){
 		
+		long start = (metrics != null) ? System.nanoTime() : 0;
+		
 		// calcs sum of all weights
-		double sum = sumWeight(part_list);
+		double sum = sumWeight(store);
 		
-		// mean weight overall particles
-		double mean_weight = sum / num_part;
+		// store for particles
+		next.clear();
+		
+		// systematic resampling needs a valid distribution of the weights
+		if ((resampling == Resampling.SYSTEMATIC) && (sum > 0) && !Double.isInfinite(sum))
+			resampleSystematic(sum);
+		else
+			resampleMeanThreshold(sum);
+		
+		// update particles; old store is reused in next step
+		ParticleStore tmp = store;
+		store = next;
+		next = tmp;
+		
+		// number of particles for the next step
+		if (kld != null)
+			num_part = kld.update(store, likelihood);
+		
+		publish();
+		
+		if (metrics != null)
+			metrics.recordPropagate(System.nanoTime() - start, replaced, interpolated);
+		interpolated = 0;
+	}
+	
+	
+	/**
+	 * Adapts the number of particles to the spread of the particles. The 
+	 * filter starts with the maximal number, which is reduced, while the 
+	 * particles converge.
+	 * 
+	 * @param min Minimal number of particles
+	 * @param max Maximal number of particles
+	 */
+	public void setAdaptive(int min, int max){
+		
+		kld = new KldSampling(min, max, border);
 		
-		// List for particles
-		List<Particle> tmp_list = new ArrayList<Particle>();
+		// stores must take the maximal number
+		if (store.capacity() < max){
+			
+			ParticleStore larger = new ParticleStore(max);
+			for (int i=0; i<store.size(); i++)
+				larger.copy(store, i);
+			
+			store = larger;
+			next = new ParticleStore(max);
+			cum_weight = new double[max];
+		}
+		
+		// start with maximal number; particles are spread
+		num_part = max;
+	}
+	
+	
+	/**
+	 * Gets the number of particles, which are created in the next step.
+	 * 
+	 * @return Number of particles
+	 */
+	public int getNumParticles(){
+		return num_part;
+	}
+	
+	
+	/**
+	 * Switches incremental weighting on or off. In incremental mode, each
+	 * particle keeps the sum of the likelihoods of all hotspots; estimate 
+	 * only updates the hotspots, which appeared, disappeared or changed 
+	 * since the last measurement. Particles, which are new after resampling,
+	 * are calculated completely.
+	 * 
+	 * @param incremental true for incremental weighting
+	 */
+	public void setIncremental(boolean incremental){
+		
+		this.incremental = incremental;
+		
+		// partial sums may be outdated
+		last_prof = null;
+	}
+	
+	
+	/**
+	 * Switches the batch-calculation of the weights on or off. In batch-mode,
+	 * the likelihoods are taken from a table, which is calculated once per 
+	 * measurement, so the weighting needs no division. Weights are the same
+	 * in both modes.
+	 * 
+	 * @param enabled true for batch-calculation
+	 */
+	public void setBatchLikelihood(boolean enabled){
+		this.batch = enabled ? new BatchLikelihood() : null;
+	}
+	
+	
+	/**
+	 * Sets the strategy, which creates the particles of the next step.
+	 * 
+	 * @param resampling Resampling-strategy
+	 */
+	public void setResampling(Resampling resampling){
+		this.resampling = resampling;
+	}
+	
+	
+	/**
+	 * Gets the strategy, which creates the particles of the next step.
+	 * 
+	 * @return Resampling-strategy
+	 */
+	public Resampling getResampling(){
+		return resampling;
+	}
+	
+	
+	/**
+	 * Keeps all particles with more weight than the average particle and 
+	 * replaces the others by new particles near the mean position of the kept
+	 * particles.
+	 * 
+	 * @param sum Sum of all weights
+	 */
+	private void resampleMeanThreshold(double sum){
+		
+		// mean weight overall particles
+		double mean_weight = sum / store.size();
 		
 		double mean_x = 0;
 		double mean_y = 0;
 
-		for (int i=0; i<part_list.size(); i++){
+		for (int i=0; i<store.size(); i++){
 			
-			// get particle from list
-			Particle p = part_list.get(i);
 			// weight of particle
-			double weight = p.getWeight();
+			double weight = store.getWeight(i);
 			
-			// if particle has more weight than average particle, write to list
-			if (weight >= mean_weight){
+			// if particle has more weight than average particle, write to list;
+			// number of particles may have been reduced
+			if ((weight >= mean_weight) && (next.size() < num_part)){
 				
-				tmp_list.add(p);		
+				next.copy(store, i);		
 				
 				// calc sum of coordinates
-				mean_x = mean_x + p.getX();
-				mean_y = mean_y + p.getY();				
+				mean_x = mean_x + store.getX(i);
+				mean_y = mean_y + store.getY(i);				
 			}
 		}
 		
 		// calc mean coordinate
-		mean_x = Math.round(mean_x / tmp_list.size());
-		mean_y = Math.round(mean_y / tmp_list.size());
+		mean_x = Math.round(mean_x / next.size());
+		mean_y = Math.round(mean_y / next.size());
 		int x = (int) mean_x;
 		int y = (int) mean_y;
 		
 		
 		// difference between all particles and more probable particles
-		int diff = num_part - tmp_list.size();
+		int diff = num_part - next.size();
+		replaced = Math.max(diff, 0);
 		
 		// there must be a difference, except for completely degeneration 
 		if (diff > 0){
@@ -151,43 +372,86 @@ public class Filter {
 			// initial weight
 			double initial_weight = 1.0 / num_part;
 			
+			// first new particle
+			int first = next.size();
+			
 			// create new particles according to difference 
 			for (int j=0; j<diff; j++){
 				
-				Point new_coord;
-				Particle part;
+				int new_x;
+				int new_y;
 				
 				// only if there is a mean position of predicted particle
 				if ((x != 0) && (y != 0)){
 					
 					// new particle on pseudo-random point near predicted point
-					new_coord = createPseudoRandomPoint(x,y);
-					part = new Particle(new_coord);
+					new_x = pseudoRandomCoord(x, border[0], border[1]);
+					new_y = pseudoRandomCoord(y, border[2], border[3]);
 					
 				} else {
 					
 					// new particle on random point
-					new_coord = createRandomPoint();
-					part = new Particle(new_coord);					
+					new_x = randomCoord(border[0], border[1]);
+					new_y = randomCoord(border[2], border[3]);
 				}
 				
-				// new particle on random point
-				//Point new_coord = createRandomPoint();
-				//Particle part = new Particle(new_coord);
-				
-				// interpolate from neigborhood
-				InterpolateParticle ip = new InterpolateParticle(part, db_list);
-				Particle clean = ip.interpolatedParticle();
-
-				// set new weight 
-				clean.setWeight(initial_weight);
-
-				tmp_list.add(clean);					
+				// new particle with new weight; not interpolated yet
+				next.add(new_x, new_y, initial_weight, null);
 			}			
+			
+			// interpolate new particles from neigborhood
+			interpolateAll(next, first);
 		}
+	}
+	
+	
+	/**
+	 * Draws the particles of the next step by systematic resampling. One 
+	 * random offset is used for all particles, so the store is run through
+	 * once.
+	 * 
+	 * @param sum Sum of all weights
+	 */
+	private void resampleSystematic(double sum){
+		
+		int n = store.size();
+		
+		// cumulative weights
+		double cum = 0;
+		for (int i=0; i<n; i++){
+			cum = cum + store.getWeight(i);
+			cum_weight[i] = cum;
+		}
+		
+		// distance between two drawn particles & random offset
+		double step = sum / num_part;
+		double u = random.nextDouble() * step;
+		
+		// initial weight
+		double initial_weight = 1.0 / num_part;
+		
+		int i = 0;
+		// particle of the last draw; copies of one particle count once as kept
+		int last = -1;
+		replaced = num_part;
 		
-		// update particlelist
-		part_list = tmp_list;		
+		for (int j=0; j<num_part; j++){
+			
+			// position of the j-th particle in cumulative weights
+			double pos = u + j * step;
+			
+			while ((i < n - 1) && (cum_weight[i] < pos))
+				i++;
+			
+			if (i != last){
+				replaced--;
+				last = i;
+			}
+			
+			// duplicate particle; interpolated profile is reused
+			int k = next.copy(store, i);
+			next.setWeight(k, initial_weight);
+		}
 	}
 	
 	
@@ -198,13 +462,9 @@ public class Filter {
 	 */
 	public Point createRandomPoint(){
 		
-		// generate random numbers
-		double x = Math.random() * (border[1] - border[0]) + border[0];
-		double y = Math.random() * (border[3] - border[2]) + border[2];
-
-		// typecast necessary
-		int tx = (int)Math.round(x); 	
-		int ty = (int)Math.round(y); 
+		// generate random coordinates
+		int tx = randomCoord(border[0], border[1]);
+		int ty = randomCoord(border[2], border[3]);
 
 		// new point-object for coordinates
 		Point point = new Point(tx, ty);
@@ -214,67 +474,157 @@ public class Filter {
 	
 	
 	/**
-	 * Searches for min/max-values in the database and saves them on a array.
+	 * returns the border
+	 * 
+	 * @return the border array
+	 */
+	public int[] getBorder()
+	{
+		return this.border;
+	}
+	
+	
+	/**
+	 * Method updates a wifi-measurement on actual position.
 	 * 
-	 * @return Array with border-values; [xmin xmax ymin ymax]
+	 * @param m Measure-List with all actual measurements
 	 */
-	private int[] calcBorder(){		
+	public void setCurrentMeasure(List<Measure> m){
+		
+		long start = (metrics != null) ? System.nanoTime() : 0;
+		
+		// a new version of a live map is only taken between steps
+		if (live != null){
+			RadioMap latest = live.get();
+			if (latest != map)
+				takeVersion(latest);
+		}
+		
+		this.current = m;
 		
-		// array with border-values; [xmin xmax ymin ymax]
-		int[] border = new int[]{Integer.MAX_VALUE, 0, Integer.MAX_VALUE, 0};
+		// hotspots, which aren't in database, are dropped here once
+		this.current_prof = Profile.encode(m, map.getDictionary());
 		
-		for (int i=0; i<db_list.size(); i++){
+		if (metrics != null)
+			metrics.recordMeasure(System.nanoTime() - start);
+	}
+	
+	
+	/**
+	 * Method gives back all particle as list. The list is a new copy of the
+	 * particles in the store; it is not updated by the next step.
+	 * 
+	 * @return List of type Particle
+	 */
+	public List<Particle> getParticles(){
+		
+		List<Particle> list = new ArrayList<Particle>(store.size());
+		
+		for (int i=0; i<store.size(); i++){
 			
-			// get values from list
-			int x = db_list.get(i).getX();
-			int y = db_list.get(i).getY();
+			Point p = new Point(store.getX(i), store.getY(i));
+			List<Measure> m = store.getProfile(i).getMeasures();
 			
-			// xmin
-			if (x < border[0])				
-				border[0] = x;
-			// xmax
-			if (x > border[1])
-				border[1] = x;
-			// ymin
-			if (y < border[2])				
-				border[2] = y;
-			// ymax
-			if (y > border[3])
-				border[3] = y;			
+			list.add(new Particle(p, m, store.getWeight(i)));
 		}
 		
-		return border;
+		return list;
 	}
 	
 	
 	/**
-	 * returns the border
+	 * Gets the particles of the last step. The snapshot is immutable and can
+	 * be read by any thread without locks; each step publishes a new one.
 	 * 
-	 * @return the border array
+	 * @return Snapshot of the particles
 	 */
-	public int[] getBorder()
-	{
-		return this.border;
+	public ParticleSnapshot getSnapshot(){
+		return snapshot.get();
 	}
 	
 	
 	/**
-	 * Method updates a wifi-measurement on actual position.
+	 * Publishes a snapshot of the actual particles. Each snapshot has its own
+	 * arrays, so a reader of the old snapshot is never disturbed.
+	 */
+	private void publish(){
+		snapshot.set(ParticleSnapshot.of(store, border, ++snapshot_steps));
+	}
+	
+	
+	/**
+	 * Records times and work of the steps, e.g. to watch a device or a 
+	 * server. One instance may be shared by many filters.
 	 * 
-	 * @param m Measure-List with all actual measurements
+	 * @param metrics Metrics of the steps; null to stop measuring
 	 */
-	public void setCurrentMeasure(List<Measure> m){
-		this.current = m;
+	public void setMetrics(FilterMetrics metrics){
+		this.metrics = metrics;
 	}
 	
 	
 	/**
-	 * Method gives back all particle as list.
+	 * Gets the metrics of the steps.
 	 * 
-	 * @return List of type Particle
+	 * @return Metrics or null, if not measured
 	 */
-	public List<Particle> getParticles(){
-		return part_list;
+	public FilterMetrics getMetrics(){
+		return metrics;
+	}
+	
+	
+	/**
+	 * Gets the store with the actual particles. The store is reused by the
+	 * filter and changes with each step.
+	 * 
+	 * @return Store of the particles
+	 */
+	public ParticleStore getParticleStore(){
+		return store;
+	}
+	
+	
+	/**
+	 * Calculates the estimated position as weighted mean of all particles.
+	 * Called after estimate, the weights of the actual measurement are used.
+	 * If the weights are not valid, all particles count the same.
+	 * 
+	 * @return Estimated position or null, if there are no particles
+	 */
+	public Point getEstimate(){
+		
+		int n = store.size();
+		
+		if (n == 0)
+			return null;
+		
+		double sum = 0;
+		double sum_x = 0;
+		double sum_y = 0;
+		
+		for (int i=0; i<n; i++){
+			
+			double w = store.getWeight(i);
+			
+			sum = sum + w;
+			sum_x = sum_x + w * store.getX(i);
+			sum_y = sum_y + w * store.getY(i);
+		}
+		
+		// complete degeneration; mean of all particles
+		if (!(sum > 0) || Double.isInfinite(sum) || Double.isNaN(sum_x + sum_y)){
+			
+			sum = n;
+			sum_x = 0;
+			sum_y = 0;
+			
+			for (int i=0; i<n; i++){
+				sum_x = sum_x + store.getX(i);
+				sum_y = sum_y + store.getY(i);
+			}
+		}
+		
+		return new Point((int) Math.round(sum_x / sum), (int) Math.round(sum_y / sum));
 	}
 	
 	
@@ -294,10 +644,15 @@ public class Filter {
 
 			// particle from list
 			Particle p = part.get(i);
+			Particle mean;
 
-			// interpolate them
-			InterpolateParticle ip = new InterpolateParticle(p, db);
-			Particle mean = ip.interpolatedParticle();
+			// index & cache can only be used for the database of the filter
+			if (db == db_list){
+				mean = new Particle(p.getPoint(), interpolateProfile(p.getX(), p.getY()).getMeasures());
+			} else {
+				InterpolateParticle ip = new InterpolateParticle(p, db);
+				mean = ip.interpolatedParticle();
+			}
 
 			// add to list
 			plist.add(mean);
@@ -308,140 +663,533 @@ public class Filter {
 
 
 	/**
-	 * Calculates new weight for a particle. 
+	 * Sets the runner for the loops over all particles. With an executor,
+	 * weights are calculated and particles are interpolated in parallel, if
+	 * there are enough particles.
+	 * 
+	 * @param runner Runner for loops; null for sequential execution
+	 */
+	public void setParallelRunner(ParallelRunner runner){
+		this.runner = (runner != null) ? runner : new ParallelRunner();
+	}
+	
+	
+	/**
+	 * Sets the source of random numbers. The source is only used by the
+	 * thread, which calls the filter.
+	 * 
+	 * @param random Random source
+	 */
+	public void setRandomSource(RandomSource random){
+		this.random = random;
+	}
+	
+	
+	/**
+	 * Sets a fixed seed. A filter with the same seed, database and 
+	 * measurements gives the same particles in each run.
+	 * 
+	 * @param seed Seed of the random numbers
+	 */
+	public void setSeed(long seed){
+		this.random = new SplitMixRandom(seed);
+	}
+	
+	
+	/**
+	 * Gets the source of random numbers.
+	 * 
+	 * @return Random source
+	 */
+	public RandomSource getRandomSource(){
+		return random;
+	}
+	
+	
+	/**
+	 * Gets the profile-cache of the filter.
+	 * 
+	 * @return Cache with interpolated profiles
+	 */
+	public ProfileCache getProfileCache(){
+		return map.getProfileCache();
+	}
+	
+	
+	/**
+	 * Lets the filter follow a live radio-map. New versions are taken at the
+	 * next measurement; the particles keep their positions.
+	 * 
+	 * @param live Live radio-map; null to keep the actual map fixed
+	 */
+	public void setLiveRadioMap(LiveRadioMap live){
+		this.live = live;
+	}
+	
+	
+	/**
+	 * Takes a new version of the map. Particles stay, but get the profiles of 
+	 * the new version; most of them are still in the cache.
+	 * 
+	 * @param next New version of the map
+	 */
+	private void takeVersion(RadioMap next){
+		
+		map = next;
+		db_list = next.getDatabase();
+		
+		// new points may enlarge the room
+		int[] next_border = next.getBorder();
+		if (!Arrays.equals(border, next_border)){
+			border = next_border;
+			if (kld != null)
+				kld = new KldSampling(kld.getMin(), kld.getMax(), border);
+		}
+		
+		// partial sums of the old profiles don't fit
+		last_prof = null;
+		
+		interpolateAll(store, 0);
+	}
+	
+	
+	/**
+	 * Replaces the radio-map, e.g. when the device enters another building
+	 * or floor. The particles are spread again over the new map. A live
+	 * radio-map is detached.
+	 * 
+	 * @param map Indexed measurements of the new area
+	 */
+	public void setRadioMap(RadioMap map){
+		
+		live = null;
+		this.map = map;
+		db_list = map.getDatabase();
+		border = map.getBorder();
+		
+		// grid of the bins covers the new area
+		if (kld != null){
+			kld = new KldSampling(kld.getMin(), kld.getMax(), border);
+			num_part = kld.getMax();
+		}
+		
+		// sums of the old map don't fit
+		last_prof = null;
+		likelihood = Double.NaN;
+		
+		initFilter();
+	}
+	
+	
+	/**
+	 * Gets the radio-map of the filter.
+	 * 
+	 * @return Indexed measurements from database
+	 */
+	public RadioMap getRadioMap(){
+		return map;
+	}
+	
+	
+	/**
+	 * Interpolates a position from the database of the filter. Profiles are 
+	 * taken from the cache, if the position was already interpolated.
 	 * 
-	 * @param p Particle whose weight will be calculated
+	 * @param x x-coordinate of the particle
+	 * @param y y-coordinate of the particle
+	 * @return Profile with interpolated measures
 	 */
-	private void calcWeight(Particle p){
+	private Profile interpolateProfile(int x, int y){
+		return map.interpolate(x, y);
+	}
+	
+	
+	/**
+	 * Interpolates all particles of a store from an index on. Coordinates
+	 * are already drawn, so the result doesn't depend on the order of the 
+	 * interpolations.
+	 * 
+	 * @param particles Store with particles
+	 * @param first Index of the first particle
+	 */
+	private void interpolateAll(ParticleStore particles, int first){
+		
+		interpolate_task.target = particles;
+		interpolate_task.first = first;
+		interpolated = interpolated + particles.size() - first;
 		
-		double weight = 0;
+		runner.forEach(particles.size() - first, interpolate_task);
+	}
+	
 	
-		// list with new weights 
-		List<Double> weight_list = new ArrayList<Double>();		
-		List<Measure> mlist = p.getMeasure();
+	/**
+	 * Calculates the changes between the last and the actual measurement. 
+	 * 
+	 * @return true, if weights can be updated by the changes
+	 */
+	private boolean calcDelta(){
+		
+		Profile last = last_prof;
+		last_prof = current_prof;
+		
+		// no partial sums yet or time to remove rounding-errors
+		if ((last == null) || (++incremental_steps >= REFRESH_STEPS)){
+			incremental_steps = 0;
+			return false;
+		}
+		
+		// a hotspot, which was measured twice, has no unique change
+		if (hasDuplicates(last) || hasDuplicates(current_prof))
+			return false;
+		
+		int[] ids_last = last.getIds();
+		int[] rssi_last = last.getRssi();
+		int[] ids_curr = current_prof.getIds();
+		int[] rssi_curr = current_prof.getRssi();
+		
+		// enough space for all hotspots of both measurements
+		int length = ids_last.length + ids_curr.length;
+		if (delta_ids.length < length){
+			delta_ids = new int[length];
+			delta_last = new int[length];
+			delta_curr = new int[length];
+		}
+		
+		delta_size = 0;
+		int i = 0;
+		int j = 0;
+		
+		while ((i < ids_last.length) || (j < ids_curr.length)){
 			
-		// measures at this location
-		for (int i=0; i<current.size(); i++){
+			int id_last = (i < ids_last.length) ? ids_last[i] : Integer.MAX_VALUE;
+			int id_curr = (j < ids_curr.length) ? ids_curr[j] : Integer.MAX_VALUE;
 			
-			String ssid = current.get(i).getBSSID();
+			if (id_last < id_curr){
+				// hotspot disappeared
+				addDelta(id_last, rssi_last[i++], MISSING);
+			} else if (id_last > id_curr){
+				// hotspot appeared
+				addDelta(id_curr, MISSING, rssi_curr[j++]);
+			} else {
+				// hotspot changed
+				if (rssi_last[i] != rssi_curr[j])
+					addDelta(id_curr, rssi_last[i], rssi_curr[j]);
+				i++;
+				j++;
+			}
+		}
+		
+		// complete calculation is cheaper
+		return delta_size < ids_curr.length;
+	}
+	
+	
+	/**
+	 * Adds a changed hotspot.
+	 */
+	private void addDelta(int id, int rssi_last, int rssi_curr){
+		
+		delta_ids[delta_size] = id;
+		delta_last[delta_size] = rssi_last;
+		delta_curr[delta_size] = rssi_curr;
+		delta_size++;
+	}
+	
+	
+	/**
+	 * Checks, if a profile contains a hotspot more than once.
+	 */
+	private static boolean hasDuplicates(Profile prof){
+		
+		int[] ids = prof.getIds();
+		
+		for (int i=1; i<ids.length; i++)
+			if (ids[i] == ids[i - 1])
+				return true;
+		
+		return false;
+	}
+	
+	
+	/**
+	 * Calculates the sum of the likelihoods of all hotspots for a particle. 
+	 * Both profiles are sorted by hotspot-id, so equal hotspots are found in
+	 * one run through both.
+	 * 
+	 * @param prof Profile of the particle
+	 * @return Sum of the likelihoods
+	 */
+	private double calcSum(Profile prof){
+		
+		double sum = 0;
+		
+		// measures at this location
+		int[] ids_curr = current_prof.getIds();
+		int[] rssi_curr = current_prof.getRssi();
+		// measures from generated particle
+		int[] ids_part = prof.getIds();
+		int[] rssi_part = prof.getRssi();
+		
+		int i = 0;
+		int j = 0;
+		
+		while ((i < ids_curr.length) && (j < ids_part.length)){
 			
-			// all measures from generated particle
-			for (int j=0; j<mlist.size(); j++){
-				
-				String ssid_part = mlist.get(j).getBSSID();
+			if (ids_curr[i] < ids_part[j]){
+				i++;
+			} else if (ids_curr[i] > ids_part[j]){
+				j++;
+			} else {
 				
-				// same ssids --> I can calculate a new weight 
-				if (ssid.equals(ssid_part)){
-				
-					// rssi from actual location
-					int rssi_curr = current.get(i).getRssi();
-					// rssi from particle
-					int rssi_part = mlist.get(j).getRssi();
-					
-					// calc new weight; typecast is necessary
-					weight = ((double) rssi_curr) / ((double) rssi_part);
-					
-					// get percentage
-					if (weight > 1.0)
-						weight = 1.0 / weight;
+				// same ssids --> I can calculate a new weight
+				sum = sum + likelihood(rssi_curr[i], rssi_part[j]);
 				
-					// add to list
-					weight_list.add(weight);
-				}				
+				// particle-profile has each hotspot once, measurement may not
+				i++;
 			}
 		}
+		
+		return sum;
+	}
 	
-		double sum = 0;
-		int number_weights = weight_list.size();
+	
+	/**
+	 * Updates the sum of the likelihoods of a particle by the changed 
+	 * hotspots.
+	 * 
+	 * @param prof Profile of the particle
+	 * @param sum Sum of the likelihoods for the last measurement
+	 * @return Sum of the likelihoods for the actual measurement
+	 */
+	private double updateSum(Profile prof, double sum){
+		
+		int[] ids_part = prof.getIds();
+		int[] rssi_part = prof.getRssi();
+		
+		for (int k=0; k<delta_size; k++){
 			
-		// calc sum of all weights
-		for (int k=0; k<number_weights; k++)
-			sum = sum + weight_list.get(k);
+			int j = Arrays.binarySearch(ids_part, delta_ids[k]);
+			
+			// particle doesn't know the hotspot
+			if (j < 0)
+				continue;
+			
+			if (delta_last[k] != MISSING)
+				sum = sum - likelihood(delta_last[k], rssi_part[j]);
+			if (delta_curr[k] != MISSING)
+				sum = sum + likelihood(delta_curr[k], rssi_part[j]);
+		}
 		
-		//double mean_weight = sum / number_weights;
-		double mean_weight = sum / current.size();
-
-		// set new weight 
-		p.setWeight(mean_weight);
+		return sum;
+	}
+	
+	
+	/**
+	 * Calculates the likelihood of one hotspot.
+	 * 
+	 * @param rssi_curr Signal-strength at actual location
+	 * @param rssi_part Signal-strength of the particle
+	 * @return Ratio of the signal-strengths; 1.0 is best
+	 */
+	private static double likelihood(int rssi_curr, int rssi_part){
+		
+		// calc new weight; typecast is necessary
+		double weight = ((double) rssi_curr) / ((double) rssi_part);
+		
+		// get percentage
+		if (weight > 1.0)
+			weight = 1.0 / weight;
+		
+		return weight;
 	}
 
 	
 	/**
 	 * Calculates the sum of all particle-weights.
 	 * 
-	 * @param list List with all particles
+	 * @param particles Store with all particles
 	 * @return Sum of weights
 	 */
-	private double sumWeight(List<Particle> list){
+	private double sumWeight(ParticleStore particles){
 		
-		double sum = 0;
+		weight_sum.target = particles;
 		
-		for (int i=0; i<list.size(); i++){
-			
-			// get weights & calc sum
-			sum = sum + list.get(i).getWeight();
-		}
-		
-		return sum;
+		// sum of partial sums
+		return runner.sum(particles.size(), weight_sum);
 	}	
 	
 	
 	/**
 	 * Normalizes all particle-weights.
 	 * 
-	 * @param list List with all particles
-	 * @return Particlelist with normalized weights
+	 * @param particles Store with all particles
+	 * @return Sum of weights before normalization
 	 */
-	private List<Particle> normWeight(List<Particle> list){
+	private double normWeight(ParticleStore particles){
 		
 		// sum all weights 
-		double sum = sumWeight(list);
+		norm_task.sum = sumWeight(particles);
+		norm_task.target = particles;
 		
-		for (int i=0; i<list.size(); i++){
-			
-			// calc normalized weights
-			double new_weight = list.get(i).getWeight() / sum;
-			
-			// set new weights
-			list.get(i).setWeight(new_weight);
-		}
+		runner.forEach(particles.size(), norm_task);
 		
-		return list;
+		return norm_task.sum;
 	}	
 
 	
 	/**
-	 * Calculates a pseudo-random Point-object with coordinates near input
-	 * arguments.
+	 * Calculates the effective sample size of normalized weights; the number
+	 * of particles, which would carry the same information with equal 
+	 * weights.
 	 * 
-	 * @param x_mean x-coordinate; center-point of new area
-	 * @param y_mean y-coordinate; center-point of new area
-	 * @return New Point-object with pseudo-random coordinates
+	 * @param particles Store with all particles
+	 * @return Effective sample size; 0 if the weights are not valid
 	 */
-	private Point createPseudoRandomPoint(int x_mean, int y_mean){
+	private static double calcEss(ParticleStore particles){
 		
-		// calcs a smaller roi in room 
-		int high_x = (int) (x_mean + ((border[1] - border[0]) + border[0]) * 0.2);
-		int low_x = (int) (x_mean - ((border[1] - border[0]) + border[0]) * 0.2);
-		int high_y = (int) (y_mean + ((border[3] - border[2]) + border[2]) * 0.2);
-		int low_y = (int) (y_mean - ((border[3] - border[2]) + border[2]) * 0.2);
+		double sum_sq = 0;
 		
-		//System.out.println(low_x + " " + high_x);
-		//System.out.println(low_y + " " + high_y);
-
-		// calcs random numbers
-		double x = Math.random() * (high_x - low_x) + low_x;
-		double y = Math.random() * (high_y - low_y) + low_y;		
+		for (int i=0; i<particles.size(); i++)
+			sum_sq = sum_sq + particles.getWeight(i) * particles.getWeight(i);
+		
+		return (sum_sq > 0) ? 1.0 / sum_sq : 0;
+	}
+	
+	
+	/**
+	 * Calculates a random coordinate between two values.
+	 * 
+	 * @param low Lowest value
+	 * @param high Highest value
+	 * @return Random coordinate
+	 */
+	private int randomCoord(int low, int high){
+		
+		// generate random number
+		double c = random.nextDouble() * (high - low) + low;
 		
 		// typecast necessary
-		int tx = (int)Math.round(x); 	
-		int ty = (int)Math.round(y); 
-
-		//System.out.println("pseudo "+tx + " " + ty);
+		return (int)Math.round(c);
+	}
+	
+	
+	/**
+	 * Calculates a pseudo-random coordinate near the input argument. The 
+	 * area around the coordinate depends on the dilation of the room.
+	 * 
+	 * @param mean Center-coordinate of new area
+	 * @param min Minimal coordinate of the room
+	 * @param max Maximal coordinate of the room
+	 * @return Pseudo-random coordinate
+	 */
+	private int pseudoRandomCoord(int mean, int min, int max){
 		
-		// new point-object for coordinates
-		Point point = new Point(tx, ty);
-
-		return point;
+		// calcs a smaller roi in room 
+		int high = (int) (mean + ((max - min) + min) * 0.2);
+		int low = (int) (mean - ((max - min) + min) * 0.2);
+		
+		// calcs random number
+		return randomCoord(low, high);
+	}
+	
+	
+	/**
+	 * Calculates the weights of a range of particles.
+	 */
+	private class WeightTask implements ParallelRunner.Task {
+		
+		ParticleStore target;
+		boolean use_delta;
+		
+		public void run(int from, int to){
+			
+			// all sums of the range at once; merge-join for unusual strengths
+			boolean use_batch = (batch != null) && !use_delta 
+					&& batch.calcSums(target, from, to, batch_sums);
+			
+			for (int i=from; i<to; i++){
+				
+				Profile prof = target.getProfile(i);
+				double sum = target.getPartial(i);
+				
+				// particle is new or all weights are calculated again
+				if (use_batch)
+					sum = batch_sums[i];
+				else if (!use_delta || Double.isNaN(sum))
+					sum = calcSum(prof);
+				else
+					sum = updateSum(prof, sum);
+				
+				if (incremental)
+					target.setPartial(i, sum);
+				
+				// hotspots, which were dropped, count for the mean as well
+				target.setWeight(i, sum / current.size());
+			}
+		}
+	}
+	
+	
+	/**
+	 * Sums the weights of a range of particles.
+	 */
+	private class WeightSum implements ParallelRunner.Sum {
+		
+		ParticleStore target;
+		
+		public double sum(int from, int to){
+			
+			double sum = 0;
+			
+			for (int i=from; i<to; i++){
+				
+				// get weights & calc sum
+				sum = sum + target.getWeight(i);
+			}
+			
+			return sum;
+		}
+	}
+	
+	
+	/**
+	 * Normalizes the weights of a range of particles.
+	 */
+	private class NormTask implements ParallelRunner.Task {
+		
+		ParticleStore target;
+		double sum;
+		
+		public void run(int from, int to){
+			
+			for (int i=from; i<to; i++){
+				
+				// calc normalized weights
+				double new_weight = target.getWeight(i) / sum;
+				
+				// set new weights
+				target.setWeight(i, new_weight);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Interpolates a range of particles; indices start at first.
+	 */
+	private class InterpolateTask implements ParallelRunner.Task {
+		
+		ParticleStore target;
+		int first;
+		
+		public void run(int from, int to){
+			
+			for (int i=first + from; i<first + to; i++){
+				
+				// interpolate from neigborhood
+				Profile prof = interpolateProfile(target.getX(i), target.getY(i));
+				target.setProfile(i, prof);
+			}
+		}
 	}
 }
@@ -0,0 +1,351 @@
+package lbs.wifiparticlefilter.filter;
+
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import lbs.wifiparticlefilter.data.Measure;
+import lbs.wifiparticlefilter.data.Particle;
+import lbs.wifiparticlefilter.data.Point;
+
+
+/**
+ * Primitive table with all fingerprints of a radio-map. Coordinates are
+ * stored per point; the measures of point i are the entries start[i] to
+ * start[i + 1] - 1, sorted by hotspot-id. Signal-strengths are quantized to
+ * one byte, which holds every dBm-value a wifi-chip reports.
+ * <p>
+ * The table works on buffers, so it can lie on the heap or in a
+ * memory-mapped file.
+ *
+ * @version 1.2
+ */
+public class FingerprintTable {
+
+
+	// coordinates of the points
+	private final IntBuffer xs;
+	private final IntBuffer ys;
+	// first entry of each point; length is size() + 1
+	private final IntBuffer start;
+	// hotspot-id & signal-strength of each entry
+	private final IntBuffer ids;
+	private final ByteBuffer rssi;
+
+
+	/**
+	 * C'tor; compiles a particle-list into a table on the heap.
+	 *
+	 * @param list Particle-list with measurements from database
+	 * @param dict Dictionary with all hotspots of the list
+	 */
+	public FingerprintTable(List<Particle> list, BssidDictionary dict){
+
+		int n = list.size();
+
+		int total = 0;
+		for (int i=0; i<n; i++)
+			total = total + list.get(i).getMeasure().size();
+
+		int[] x = new int[n];
+		int[] y = new int[n];
+		int[] s = new int[n + 1];
+		int[] id = new int[total];
+		byte[] r = new byte[total];
+
+		int e = 0;
+
+		for (int i=0; i<n; i++){
+
+			Particle p = list.get(i);
+			x[i] = p.getX();
+			y[i] = p.getY();
+			s[i] = e;
+
+			// sort measures of the point by id; id in upper, rssi in lower bits
+			List<Measure> mlist = p.getMeasure();
+			long[] packed = new long[mlist.size()];
+
+			for (int j=0; j<mlist.size(); j++){
+				int k = dict.intern(mlist.get(j).getBSSID());
+				packed[j] = (((long) k) << 32) | (quantize(mlist.get(j).getRssi()) & 0xffffffffL);
+			}
+
+			Arrays.sort(packed);
+
+			for (int j=0; j<packed.length; j++){
+				id[e] = (int) (packed[j] >>> 32);
+				r[e] = (byte) (int) packed[j];
+				e++;
+			}
+		}
+
+		s[n] = e;
+
+		xs = IntBuffer.wrap(x);
+		ys = IntBuffer.wrap(y);
+		start = IntBuffer.wrap(s);
+		ids = IntBuffer.wrap(id);
+		rssi = ByteBuffer.wrap(r);
+	}
+
+
+	/**
+	 * C'tor; copies a table and adds measurements. The measures of a
+	 * particle are added to the entries of its point, like the database 
+	 * groups all rows of one position; unchanged points keep their index, 
+	 * new points follow the points of the base-table.
+	 *
+	 * @param base Table to copy
+	 * @param list Particle-list with the new measurements
+	 * @param targets Index of each particle in the new table; indices below
+	 * base.size() are extended, the others must follow without gap
+	 * @param dict Dictionary, which contains the hotspots of the base-table
+	 */
+	FingerprintTable(FingerprintTable base, List<Particle> list, int[] targets, BssidDictionary dict){
+
+		int n = base.size();
+		for (int j=0; j<targets.length; j++)
+			n = Math.max(n, targets[j] + 1);
+
+		// particles of each point as linked list; -1 for none
+		int[] first = new int[n];
+		int[] next = new int[targets.length];
+		Arrays.fill(first, -1);
+		for (int j=targets.length - 1; j>=0; j--){
+			next[j] = first[targets[j]];
+			first[targets[j]] = j;
+		}
+
+		// table of the new particles; hotspots are added to dict
+		FingerprintTable added = new FingerprintTable(list, dict);
+
+		// all old and all new entries
+		int total = base.start.get(base.size()) + added.start.get(added.size());
+
+		int[] x = new int[n];
+		int[] y = new int[n];
+		int[] s = new int[n + 1];
+		int[] id = new int[total];
+		byte[] r = new byte[total];
+
+		int e = 0;
+
+		for (int i=0; i<n; i++){
+
+			s[i] = e;
+
+			if (i < base.size()){
+				x[i] = base.getX(i);
+				y[i] = base.getY(i);
+				e = copyEntries(base, i, id, r, e);
+			} else {
+				x[i] = added.getX(first[i]);
+				y[i] = added.getY(first[i]);
+			}
+
+			// no new measures; entries of the base are already sorted
+			if (first[i] < 0)
+				continue;
+
+			for (int j=first[i]; j>=0; j=next[j])
+				e = copyEntries(added, j, id, r, e);
+
+			// sort all entries of the point by id; id in upper, rssi in lower bits
+			long[] packed = new long[e - s[i]];
+			for (int f=0; f<packed.length; f++)
+				packed[f] = (((long) id[s[i] + f]) << 32) | (r[s[i] + f] & 0xffffffffL);
+
+			Arrays.sort(packed);
+
+			for (int f=0; f<packed.length; f++){
+				id[s[i] + f] = (int) (packed[f] >>> 32);
+				r[s[i] + f] = (byte) (int) packed[f];
+			}
+		}
+
+		s[n] = e;
+
+		xs = IntBuffer.wrap(x);
+		ys = IntBuffer.wrap(y);
+		start = IntBuffer.wrap(s);
+		ids = IntBuffer.wrap(id);
+		rssi = ByteBuffer.wrap(r);
+	}
+
+
+	/**
+	 * Copies the entries of a point.
+	 *
+	 * @return Next free entry
+	 */
+	private static int copyEntries(FingerprintTable t, int k, int[] id, byte[] r, int e){
+
+		for (int f=t.getStart(k); f<t.getEnd(k); f++){
+			id[e] = t.getId(f);
+			r[e] = (byte) t.getRssi(f);
+			e++;
+		}
+
+		return e;
+	}
+
+
+	/**
+	 * C'tor; table over existing buffers. Buffers are used from index 0 and
+	 * must not be changed.
+	 *
+	 * @param xs x-coordinates
+	 * @param ys y-coordinates
+	 * @param start First entry of each point
+	 * @param ids Hotspot-id of each entry
+	 * @param rssi Signal-strength of each entry
+	 */
+	public FingerprintTable(IntBuffer xs, IntBuffer ys, IntBuffer start, IntBuffer ids, ByteBuffer rssi){
+
+		this.xs = xs;
+		this.ys = ys;
+		this.start = start;
+		this.ids = ids;
+		this.rssi = rssi;
+	}
+
+
+	/**
+	 * Gets the number of points.
+	 *
+	 * @return Number of points
+	 */
+	public int size(){
+		return xs.limit();
+	}
+
+
+	/**
+	 * Gets the number of measures of all points.
+	 *
+	 * @return Number of entries
+	 */
+	public int entries(){
+		return ids.limit();
+	}
+
+
+	/**
+	 * Gets the x-coordinate of a point.
+	 *
+	 * @param i Index of the point
+	 * @return x-coordinate
+	 */
+	public int getX(int i){
+		return xs.get(i);
+	}
+
+
+	/**
+	 * Gets the y-coordinate of a point.
+	 *
+	 * @param i Index of the point
+	 * @return y-coordinate
+	 */
+	public int getY(int i){
+		return ys.get(i);
+	}
+
+
+	/**
+	 * Gets the first entry of a point.
+	 *
+	 * @param i Index of the point
+	 * @return Index of the first entry
+	 */
+	public int getStart(int i){
+		return start.get(i);
+	}
+
+
+	/**
+	 * Gets the end of the entries of a point.
+	 *
+	 * @param i Index of the point
+	 * @return Index after the last entry
+	 */
+	public int getEnd(int i){
+		return start.get(i + 1);
+	}
+
+
+	/**
+	 * Gets the hotspot-id of an entry.
+	 *
+	 * @param e Index of the entry
+	 * @return Hotspot-id
+	 */
+	public int getId(int e){
+		return ids.get(e);
+	}
+
+
+	/**
+	 * Gets the signal-strength of an entry.
+	 *
+	 * @param e Index of the entry
+	 * @return Signal-strength in dBm
+	 */
+	public int getRssi(int e){
+		return rssi.get(e);
+	}
+
+
+	/**
+	 * Creates a particle with the measures of a point.
+	 *
+	 * @param i Index of the point
+	 * @param dict Dictionary for the hotspot-names
+	 * @return New particle
+	 */
+	public Particle getParticle(int i, BssidDictionary dict){
+
+		List<Measure> mlist = new ArrayList<Measure>(getEnd(i) - getStart(i));
+
+		for (int e=getStart(i); e<getEnd(i); e++)
+			mlist.add(new Measure(dict.getBssid(getId(e)), getRssi(e)));
+
+		return new Particle(new Point(getX(i), getY(i)), mlist);
+	}
+
+
+	/**
+	 * Gets the buffers of the table; used to write the table into a file.
+	 *
+	 * @return Buffers; [xs ys start ids]
+	 */
+	IntBuffer[] getIntBuffers(){
+		return new IntBuffer[]{xs.duplicate(), ys.duplicate(), start.duplicate(), ids.duplicate()};
+	}
+
+
+	/**
+	 * Gets the signal-strengths of the table; used to write the table into a
+	 * file.
+	 *
+	 * @return Buffer with one byte per entry
+	 */
+	ByteBuffer getRssiBuffer(){
+		return rssi.duplicate();
+	}
+
+
+	/**
+	 * Limits a signal-strength to the range of one byte.
+	 *
+	 * @param rssi Signal-strength in dBm
+	 * @return Signal-strength between -128 and 127
+	 */
+	static int quantize(int rssi){
+		return Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, rssi));
+	}
+}
@@ -26,6 +26,8 @@ public class InterpolateParticle {
 	private Particle p;
 	// Particle-list with measures, which contains the neighbors
 	private List<Particle> db_list;
+	// Index over db_list; null, if the whole list has to be searched
+	private SpatialIndex index;
 	
 	
 	/**
@@ -36,8 +38,22 @@ public class InterpolateParticle {
 	 */
 	public InterpolateParticle(Particle p, List<Particle> list) {
 		
+		this(p, list, null);
+	}
+	
+	
+	/**
+	 * C'tor; neighbors are looked up in a prebuilt index over the list.
+	 * 
+	 * @param p Particle, whose neighbor we are looking for
+	 * @param list Particle-list with measurements we want to compare 
+	 * @param index Index over list; if null, the whole list will be searched
+	 */
+	public InterpolateParticle(Particle p, List<Particle> list, SpatialIndex index) {
+		
 		this.p = p;		
-		db_list = list;		
+		db_list = list;
+		this.index = index;
 	}
 
 	
@@ -48,55 +64,25 @@ public class InterpolateParticle {
 	 */
 	public Particle interpolatedParticle(){	
 		
-		// Map for Particle-objects sorted by quadrants 		
-		Map<Integer,Point> q1_map = new HashMap<Integer,Point>();
-		Map<Integer,Point> q2_map = new HashMap<Integer,Point>();
-		Map<Integer,Point> q3_map = new HashMap<Integer,Point>();
-		Map<Integer,Point> q4_map = new HashMap<Integer,Point>();		
-		
-		// Point-object for current particle
-		Point currentParticle = this.p.getPoint();
+		// Index of the nearest neighbor in each quadrant
+		int[] nearest;
 		
-		// run through database
-		for (int i=0; i<db_list.size(); i++){
-			
-			// get coordinates from list
-			Point p_tmp = db_list.get(i).getPoint();
-			
-			// Point from database is in first quadrant
-			if (currentParticle.quad1st(p_tmp)){	
-				// add to Map for fist quadrant
-				q1_map.put(i, p_tmp);
-			}
-			
-			// Point from database is in second quadrant
-			if (currentParticle.quad2nd(p_tmp)){
-				// add to Map for second quadrant
-				q2_map.put(i, p_tmp);
-			}
-
-			// Point from database is in third quadrant
-			if (currentParticle.quad3rd(p_tmp)){
-				// add to Map for third quadrant
-				q3_map.put(i, p_tmp);
-			}
-
-			// Point from database is in fourth quadrant
-			if (currentParticle.quad4th(p_tmp)){
-				// add to Map for fourth quadrant
-				q4_map.put(i, p_tmp);
-			}			
+		if (index != null){
+			// index searches only the cells near the particle
+			nearest = index.getNearestPoints(this.p.getPoint());
+		} else {
+			// run through whole database
+			nearest = searchNearestPoints();
 		}
-
 		
 		// Index of the nearest neighbor in first quadrant
-		int idx_1q = getNearestPoint(q1_map);
+		int idx_1q = nearest[0];
 		// Index of the nearest neighbor in second quadrant
-		int idx_2q = getNearestPoint(q2_map);
+		int idx_2q = nearest[1];
 		// Index of the nearest neighbor in third quadrant
-		int idx_3q = getNearestPoint(q3_map);
+		int idx_3q = nearest[2];
 		// Index of the nearest neighbor in fourth quadrant
-		int idx_4q = getNearestPoint(q4_map);
+		int idx_4q = nearest[3];
 		
 		// temp Particle
 		Particle p_tmp2 = null;		
@@ -159,6 +145,66 @@ public class InterpolateParticle {
 	}	
 	
 	
+	/**
+	 * Runs through the whole database and searches the nearest neighbor in 
+	 * each quadrant.
+	 * 
+	 * @return Array with indices of the nearest neighbors; [q1 q2 q3 q4]
+	 */
+	private int[] searchNearestPoints(){
+		
+		// Map for Particle-objects sorted by quadrants 		
+		Map<Integer,Point> q1_map = new HashMap<Integer,Point>();
+		Map<Integer,Point> q2_map = new HashMap<Integer,Point>();
+		Map<Integer,Point> q3_map = new HashMap<Integer,Point>();
+		Map<Integer,Point> q4_map = new HashMap<Integer,Point>();		
+		
+		// Point-object for current particle
+		Point currentParticle = this.p.getPoint();
+		
+		// run through database
+		for (int i=0; i<db_list.size(); i++){
+			
+			// get coordinates from list
+			Point p_tmp = db_list.get(i).getPoint();
+			
+			// Point from database is in first quadrant
+			if (currentParticle.quad1st(p_tmp)){	
+				// add to Map for fist quadrant
+				q1_map.put(i, p_tmp);
+			}
+			
+			// Point from database is in second quadrant
+			if (currentParticle.quad2nd(p_tmp)){
+				// add to Map for second quadrant
+				q2_map.put(i, p_tmp);
+			}
+
+			// Point from database is in third quadrant
+			if (currentParticle.quad3rd(p_tmp)){
+				// add to Map for third quadrant
+				q3_map.put(i, p_tmp);
+			}
+
+			// Point from database is in fourth quadrant
+			if (currentParticle.quad4th(p_tmp)){
+				// add to Map for fourth quadrant
+				q4_map.put(i, p_tmp);
+			}			
+		}
+
+		
+		// Index of the nearest neighbor in each quadrant
+		int[] nearest = new int[4];
+		nearest[0] = getNearestPoint(q1_map);
+		nearest[1] = getNearestPoint(q2_map);
+		nearest[2] = getNearestPoint(q3_map);
+		nearest[3] = getNearestPoint(q4_map);
+		
+		return nearest;
+	}
+	
+	
 	/**
 	 * Calculates the distance between two Point-objetcts
 	 * 
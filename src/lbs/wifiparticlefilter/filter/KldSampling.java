@@ -0,0 +1,201 @@
+package lbs.wifiparticlefilter.filter;
+
+
+import java.util.Arrays;
+
+
+/**
+ * Adapts the number of particles to the spread of the particle-cloud
+ * (KLD-sampling, Fox 2003). The room is divided into a grid of bins; the
+ * more bins are occupied by particles, the more particles are needed, so
+ * that the error of the sampled distribution stays below epsilon with
+ * probability 1 - delta.
+ * <p>
+ * If the likelihood of the particles drops, e.g. because the user moved
+ * out of the cloud, the maximum number of particles is used again.
+ *
+ * @version 1.0
+ */
+public class KldSampling {
+
+
+	// default error-bound between sampled and true distribution
+	public static final double DEFAULT_EPSILON = 0.05;
+	// default upper (1 - delta)-quantile of the normal distribution; 0.99
+	public static final double DEFAULT_Z = 2.326;
+	// default number of bins along the longer side of the room
+	public static final int DEFAULT_BINS = 20;
+	// likelihood below this part of the average means the cloud is lost
+	public static final double RECOVERY_RATIO = 0.5;
+	// weight of a new likelihood in the average
+	private static final double AVERAGE_RATE = 0.1;
+
+	// minimal & maximal number of particles
+	private final int min;
+	private final int max;
+	// error-bound & quantile
+	private final double epsilon;
+	private final double z;
+	// grid of bins over the room
+	private final int min_x;
+	private final int min_y;
+	private final int bin_size;
+	private final int cols;
+	private final int rows;
+	// number of the last count, in which a bin was occupied
+	private final int[] stamp;
+	private int generation = 0;
+	// average likelihood of the particles
+	private double avg_likelihood = Double.NaN;
+
+
+	/**
+	 * C'tor; uses default error-bound, quantile and bins.
+	 *
+	 * @param min Minimal number of particles
+	 * @param max Maximal number of particles
+	 * @param border Dilation of the room; [xmin xmax ymin ymax]
+	 */
+	public KldSampling(int min, int max, int[] border){
+		this(min, max, border, DEFAULT_BINS, DEFAULT_EPSILON, DEFAULT_Z);
+	}
+
+
+	/**
+	 * C'tor
+	 *
+	 * @param min Minimal number of particles
+	 * @param max Maximal number of particles
+	 * @param border Dilation of the room; [xmin xmax ymin ymax]
+	 * @param bins Number of bins along the longer side of the room
+	 * @param epsilon Error-bound between sampled and true distribution
+	 * @param z Upper (1 - delta)-quantile of the normal distribution
+	 */
+	public KldSampling(int min, int max, int[] border, int bins, double epsilon, double z){
+
+		if ((min < 1) || (max < min))
+			throw new IllegalArgumentException("invalid range of particles: " + min + ".." + max);
+
+		this.min = min;
+		this.max = max;
+		this.epsilon = epsilon;
+		this.z = z;
+
+		int width = Math.max(border[1] - border[0], 0) + 1;
+		int height = Math.max(border[3] - border[2], 0) + 1;
+
+		min_x = border[0];
+		min_y = border[2];
+		bin_size = Math.max(1, (Math.max(width, height) + bins - 1) / bins);
+		cols = (width + bin_size - 1) / bin_size;
+		rows = (height + bin_size - 1) / bin_size;
+
+		stamp = new int[cols * rows];
+	}
+
+
+	/**
+	 * Calculates the number of particles for the next step.
+	 *
+	 * @param particles Store with the particles of the next step
+	 * @param likelihood Mean weight of the particles before normalization
+	 * @return Number of particles between min and max
+	 */
+	public int update(ParticleStore particles, double likelihood){
+
+		// likelihood dropped; particles are lost, spread again
+		boolean lost = !Double.isNaN(avg_likelihood) && (likelihood < avg_likelihood * RECOVERY_RATIO);
+
+		if (!Double.isNaN(likelihood) && !Double.isInfinite(likelihood)){
+
+			if (Double.isNaN(avg_likelihood))
+				avg_likelihood = likelihood;
+			else
+				avg_likelihood = avg_likelihood + AVERAGE_RATE * (likelihood - avg_likelihood);
+		}
+
+		if (lost)
+			return max;
+
+		return bound(countBins(particles));
+	}
+
+
+	/**
+	 * Gives back the number of particles for k occupied bins.
+	 *
+	 * @param k Number of occupied bins
+	 * @return Number of particles between min and max
+	 */
+	public int bound(int k){
+
+		if (k < 2)
+			return min;
+
+		// Wilson-Hilferty approximation of the chi-square quantile
+		double a = 2.0 / (9.0 * (k - 1));
+		double b = 1.0 - a + Math.sqrt(a) * z;
+		double n = (k - 1) / (2.0 * epsilon) * b * b * b;
+
+		if (n >= max)
+			return max;
+
+		return Math.max(min, (int) Math.ceil(n));
+	}
+
+
+	/**
+	 * Gets the minimal number of particles.
+	 *
+	 * @return Minimal number
+	 */
+	public int getMin(){
+		return min;
+	}
+
+
+	/**
+	 * Gets the maximal number of particles.
+	 *
+	 * @return Maximal number
+	 */
+	public int getMax(){
+		return max;
+	}
+
+
+	/**
+	 * Counts the bins, which contain at least one particle. Particles outside
+	 * the room count for the nearest bin.
+	 */
+	private int countBins(ParticleStore particles){
+
+		generation++;
+
+		// stamps overflowed; start again
+		if (generation == 0){
+			Arrays.fill(stamp, 0);
+			generation = 1;
+		}
+
+		int k = 0;
+
+		for (int i=0; i<particles.size(); i++){
+
+			int cx = (particles.getX(i) - min_x) / bin_size;
+			int cy = (particles.getY(i) - min_y) / bin_size;
+
+			cx = Math.min(Math.max(cx, 0), cols - 1);
+			cy = Math.min(Math.max(cy, 0), rows - 1);
+
+			int bin = cy * cols + cx;
+
+			if (stamp[bin] != generation){
+				stamp[bin] = generation;
+				k++;
+			}
+		}
+
+		return k;
+	}
+}
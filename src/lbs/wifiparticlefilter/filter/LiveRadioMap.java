@@ -0,0 +1,88 @@
+package lbs.wifiparticlefilter.filter;
+
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import lbs.wifiparticlefilter.data.Particle;
+
+
+/**
+ * Radio-map, which gets new measurements while filters are running. Each
+ * update creates a new immutable version, which is published at once;
+ * filters take the actual version at the start of a step, so a running step
+ * finishes on the version it started with.
+ *
+ * @version 1.1
+ */
+public class LiveRadioMap {
+
+
+	// actual version
+	private final AtomicReference<RadioMap> current;
+
+
+	/**
+	 * C'tor
+	 *
+	 * @param map First version of the map
+	 */
+	public LiveRadioMap(RadioMap map){
+		current = new AtomicReference<RadioMap>(map);
+	}
+
+
+	/**
+	 * Gets the actual version of the map.
+	 *
+	 * @return Radio-map
+	 */
+	public RadioMap get(){
+		return current.get();
+	}
+
+
+	/**
+	 * Adds new or changed measurements and publishes the next version.
+	 * Updates are serialized, so no update gets lost.
+	 *
+	 * @param points Particle-list with new measurements
+	 * @return Published version
+	 */
+	public synchronized RadioMap update(List<Particle> points){
+
+		RadioMap next = current.get().update(points);
+		current.set(next);
+
+		return next;
+	}
+
+
+	/**
+	 * Publishes the actual version with a new empty profile-cache; later 
+	 * updates keep its size.
+	 *
+	 * @param cache_size Number of interpolated profiles, which are cached
+	 * @param segments Number of independently locked parts of the cache
+	 * @return Published version
+	 * @see RadioMap#withCache(int, int)
+	 */
+	public synchronized RadioMap setCache(int cache_size, int segments){
+
+		RadioMap next = current.get().withCache(cache_size, segments);
+		current.set(next);
+
+		return next;
+	}
+
+
+	/**
+	 * Replaces the map completely, e.g. after the database was reloaded.
+	 * Filters take it like an update.
+	 *
+	 * @param map New radio-map
+	 */
+	public synchronized void set(RadioMap map){
+		current.set(map);
+	}
+}
@@ -0,0 +1,245 @@
+package lbs.wifiparticlefilter.filter;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+
+/**
+ * Runs loops over particles in chunks on an executor. Below a threshold,
+ * or without an executor, a loop runs on the calling thread.
+ * <p>
+ * Sums are always built from partial sums of fixed blocks, which are added
+ * in block-order, so the result doesn't depend on the number of threads.
+ *
+ * @version 1.0
+ */
+public class ParallelRunner {
+
+
+	// number of elements, below which loops run sequentially
+	public static final int DEFAULT_THRESHOLD = 4096;
+	// number of elements per chunk
+	public static final int DEFAULT_CHUNK = 1024;
+
+	// executor for the chunks; null for sequential execution
+	private final ExecutorService executor;
+	// number of elements, below which loops run sequentially
+	private final int threshold;
+	// number of elements per chunk
+	private final int chunk;
+
+
+	/**
+	 * Loop over a range of elements.
+	 */
+	public interface Task {
+
+		/**
+		 * Processes the elements from index from to index to - 1.
+		 *
+		 * @param from First index
+		 * @param to Index after the last element
+		 */
+		void run(int from, int to);
+	}
+
+
+	/**
+	 * Partial sum over a range of elements.
+	 */
+	public interface Sum {
+
+		/**
+		 * Sums the elements from index from to index to - 1.
+		 *
+		 * @param from First index
+		 * @param to Index after the last element
+		 * @return Sum of the elements
+		 */
+		double sum(int from, int to);
+	}
+
+
+	/**
+	 * C'tor; all loops run on the calling thread.
+	 */
+	public ParallelRunner(){
+		this(null, DEFAULT_THRESHOLD, DEFAULT_CHUNK);
+	}
+
+
+	/**
+	 * C'tor
+	 *
+	 * @param executor Executor for the chunks; null for sequential execution
+	 */
+	public ParallelRunner(ExecutorService executor){
+		this(executor, DEFAULT_THRESHOLD, DEFAULT_CHUNK);
+	}
+
+
+	/**
+	 * C'tor
+	 *
+	 * @param executor Executor for the chunks; null for sequential execution
+	 * @param threshold Number of elements, below which loops run sequentially
+	 * @param chunk Number of elements per chunk
+	 */
+	public ParallelRunner(ExecutorService executor, int threshold, int chunk){
+
+		if (chunk < 1)
+			throw new IllegalArgumentException("chunk must be positive: " + chunk);
+
+		this.executor = executor;
+		this.threshold = threshold;
+		this.chunk = chunk;
+	}
+
+
+	/**
+	 * Runs a task over n elements.
+	 *
+	 * @param n Number of elements
+	 * @param task Loop over a range of elements
+	 */
+	public void forEach(int n, final Task task){
+
+		if (!isParallel(n)){
+			task.run(0, n);
+			return;
+		}
+
+		List<Callable<Object>> chunks = new ArrayList<Callable<Object>>();
+
+		for (int from=chunk; from<n; from+=chunk){
+
+			final int f = from;
+			final int t = Math.min(from + chunk, n);
+
+			chunks.add(new Callable<Object>(){
+				public Object call(){
+					task.run(f, t);
+					return null;
+				}
+			});
+		}
+
+		List<Future<Object>> results = submit(chunks);
+
+		// first chunk runs on the calling thread
+		task.run(0, Math.min(chunk, n));
+
+		await(results);
+	}
+
+
+	/**
+	 * Sums over n elements. Partial sums of the chunks are added in 
+	 * chunk-order, in parallel and sequential execution.
+	 *
+	 * @param n Number of elements
+	 * @param part Partial sum over a range of elements
+	 * @return Sum of all elements
+	 */
+	public double sum(int n, final Sum part){
+
+		int blocks = (n + chunk - 1) / chunk;
+		double sum = 0;
+
+		if (!isParallel(n)){
+
+			// same order of additions as below, without an array
+			for (int b=0; b<blocks; b++)
+				sum = sum + part.sum(b * chunk, Math.min((b + 1) * chunk, n));
+
+			return sum;
+		}
+
+		final double[] partial = new double[blocks];
+
+		List<Callable<Object>> chunks = new ArrayList<Callable<Object>>();
+
+		for (int b=1; b<blocks; b++){
+
+			final int k = b;
+			final int f = b * chunk;
+			final int t = Math.min(f + chunk, n);
+
+			chunks.add(new Callable<Object>(){
+				public Object call(){
+					partial[k] = part.sum(f, t);
+					return null;
+				}
+			});
+		}
+
+		List<Future<Object>> results = submit(chunks);
+
+		// first block runs on the calling thread
+		partial[0] = part.sum(0, Math.min(chunk, n));
+
+		await(results);
+
+		for (int b=0; b<blocks; b++)
+			sum = sum + partial[b];
+
+		return sum;
+	}
+
+
+	/**
+	 * Checks, whether a loop over n elements runs in parallel.
+	 *
+	 * @param n Number of elements
+	 * @return true, if chunks are run on the executor
+	 */
+	public boolean isParallel(int n){
+		return (executor != null) && (n >= threshold) && (n > chunk);
+	}
+
+
+	/**
+	 * Submits all chunks to the executor.
+	 */
+	private List<Future<Object>> submit(List<Callable<Object>> chunks){
+
+		List<Future<Object>> results = new ArrayList<Future<Object>>(chunks.size());
+
+		for (int i=0; i<chunks.size(); i++)
+			results.add(executor.submit(chunks.get(i)));
+
+		return results;
+	}
+
+
+	/**
+	 * Waits for all chunks. Exceptions of a chunk are thrown again.
+	 */
+	private void await(List<Future<Object>> results){
+
+		try {
+			for (int i=0; i<results.size(); i++)
+				results.get(i).get();
+		}
+		catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while waiting for chunks", e);
+		}
+		catch (ExecutionException e){
+
+			Throwable cause = e.getCause();
+
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+
+			throw new IllegalStateException(cause);
+		}
+	}
+}
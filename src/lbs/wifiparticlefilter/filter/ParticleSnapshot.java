@@ -0,0 +1,147 @@
+package lbs.wifiparticlefilter.filter;
+
+
+/**
+ * Immutable copy of the particles after one step of the filter. Coordinates
+ * and weights are kept in primitive arrays, which are never changed after
+ * the creation, so a renderer can read a snapshot on another thread without
+ * locks, while the filter runs the next step.
+ *
+ * @version 1.0
+ */
+public final class ParticleSnapshot {
+
+
+	// snapshot without particles
+	public static final ParticleSnapshot EMPTY = new ParticleSnapshot(0, new int[0], new int[0], new double[0], new int[4]);
+
+	// number of the step; counted by the filter
+	private final long step;
+	// coordinates
+	private final int[] xs;
+	private final int[] ys;
+	// weights
+	private final double[] weights;
+	// largest weight
+	private final double max_weight;
+	// dilation of room; [xmin xmax ymin ymax]
+	private final int[] border;
+
+
+	/**
+	 * C'tor; the arrays are taken, not copied.
+	 */
+	private ParticleSnapshot(long step, int[] xs, int[] ys, double[] weights, int[] border){
+
+		this.step = step;
+		this.xs = xs;
+		this.ys = ys;
+		this.weights = weights;
+		this.border = border;
+
+		double max = 0;
+		for (int i=0; i<weights.length; i++)
+			if (weights[i] > max)
+				max = weights[i];
+
+		max_weight = max;
+	}
+
+
+	/**
+	 * Copies the particles of a store.
+	 *
+	 * @param store Store with the particles
+	 * @param border Dilation of room; [xmin xmax ymin ymax]
+	 * @param step Number of the step
+	 * @return New snapshot
+	 */
+	public static ParticleSnapshot of(ParticleStore store, int[] border, long step){
+
+		int n = store.size();
+		int[] xs = new int[n];
+		int[] ys = new int[n];
+		double[] weights = new double[n];
+
+		for (int i=0; i<n; i++){
+			xs[i] = store.getX(i);
+			ys[i] = store.getY(i);
+			weights[i] = store.getWeight(i);
+		}
+
+		return new ParticleSnapshot(step, xs, ys, weights, border.clone());
+	}
+
+
+	/**
+	 * Gets the number of particles.
+	 *
+	 * @return Number of particles
+	 */
+	public int size(){
+		return xs.length;
+	}
+
+
+	/**
+	 * Gets the x-coordinate of a particle.
+	 *
+	 * @param i Index of the particle
+	 * @return x-coordinate
+	 */
+	public int getX(int i){
+		return xs[i];
+	}
+
+
+	/**
+	 * Gets the y-coordinate of a particle.
+	 *
+	 * @param i Index of the particle
+	 * @return y-coordinate
+	 */
+	public int getY(int i){
+		return ys[i];
+	}
+
+
+	/**
+	 * Gets the weight of a particle.
+	 *
+	 * @param i Index of the particle
+	 * @return Weight
+	 */
+	public double getWeight(int i){
+		return weights[i];
+	}
+
+
+	/**
+	 * Gets the largest weight of all particles.
+	 *
+	 * @return Largest weight; 0 without particles
+	 */
+	public double getMaxWeight(){
+		return max_weight;
+	}
+
+
+	/**
+	 * Gets the number of the step, after which the snapshot was taken.
+	 *
+	 * @return Step-number
+	 */
+	public long getStep(){
+		return step;
+	}
+
+
+	/**
+	 * Gets the dilation of room at the time of the step.
+	 *
+	 * @return Copy of [xmin xmax ymin ymax]
+	 */
+	public int[] getBorder(){
+		return border.clone();
+	}
+}
@@ -0,0 +1,207 @@
+package lbs.wifiparticlefilter.filter;
+
+
+import java.util.Arrays;
+
+
+/**
+ * Primitive storage for particles. Coordinates, weights and profiles are
+ * stored in parallel arrays, which are allocated once; the filter uses two
+ * stores and swaps them after each step.
+ *
+ * @version 1.0
+ */
+public class ParticleStore {
+
+
+	// coordinates
+	private final int[] xs;
+	private final int[] ys;
+	// weights
+	private final double[] weights;
+	// interpolated profiles; shared with the profile-cache
+	private final Profile[] profiles;
+	// sum of the likelihoods of all hotspots in the last measurement; NaN,
+	// if the sum has to be calculated completely
+	private final double[] partials;
+	// number of particles in store
+	private int size = 0;
+
+
+	/**
+	 * C'tor
+	 *
+	 * @param capacity Maximum number of particles
+	 */
+	public ParticleStore(int capacity){
+
+		xs = new int[capacity];
+		ys = new int[capacity];
+		weights = new double[capacity];
+		profiles = new Profile[capacity];
+		partials = new double[capacity];
+	}
+
+
+	/**
+	 * Adds a particle to the store.
+	 *
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @param weight Weight of the particle
+	 * @param profile Interpolated profile of the position
+	 * @return Index of the new particle
+	 */
+	public int add(int x, int y, double weight, Profile profile){
+
+		if (size == xs.length)
+			throw new IllegalStateException("store is full: " + size);
+
+		xs[size] = x;
+		ys[size] = y;
+		weights[size] = weight;
+		profiles[size] = profile;
+		partials[size] = Double.NaN;
+
+		return size++;
+	}
+
+
+	/**
+	 * Adds a copy of a particle from another store. The partial sum is 
+	 * copied as well, because the profile is the same.
+	 *
+	 * @param from Store with the particle
+	 * @param i Index of the particle in from
+	 * @return Index of the new particle
+	 */
+	public int copy(ParticleStore from, int i){
+
+		int k = add(from.xs[i], from.ys[i], from.weights[i], from.profiles[i]);
+		partials[k] = from.partials[i];
+
+		return k;
+	}
+
+
+	/**
+	 * Removes all particles. No memory is released, except the references to
+	 * the profiles.
+	 */
+	public void clear(){
+
+		Arrays.fill(profiles, 0, size, null);
+		size = 0;
+	}
+
+
+	/**
+	 * Gets the number of particles.
+	 *
+	 * @return Number of particles
+	 */
+	public int size(){
+		return size;
+	}
+
+
+	/**
+	 * Gets the maximum number of particles.
+	 *
+	 * @return Capacity of the store
+	 */
+	public int capacity(){
+		return xs.length;
+	}
+
+
+	/**
+	 * Gets the x-coordinate of a particle.
+	 *
+	 * @param i Index of the particle
+	 * @return x-coordinate
+	 */
+	public int getX(int i){
+		return xs[i];
+	}
+
+
+	/**
+	 * Gets the y-coordinate of a particle.
+	 *
+	 * @param i Index of the particle
+	 * @return y-coordinate
+	 */
+	public int getY(int i){
+		return ys[i];
+	}
+
+
+	/**
+	 * Gets the weight of a particle.
+	 *
+	 * @param i Index of the particle
+	 * @return Weight
+	 */
+	public double getWeight(int i){
+		return weights[i];
+	}
+
+
+	/**
+	 * Sets a new weight for a particle.
+	 *
+	 * @param i Index of the particle
+	 * @param weight New weight
+	 */
+	public void setWeight(int i, double weight){
+		weights[i] = weight;
+	}
+
+
+	/**
+	 * Gets the interpolated profile of a particle.
+	 *
+	 * @param i Index of the particle
+	 * @return Profile of the particle
+	 */
+	public Profile getProfile(int i){
+		return profiles[i];
+	}
+
+
+	/**
+	 * Sets the interpolated profile of a particle.
+	 *
+	 * @param i Index of the particle
+	 * @param profile Profile of the particle
+	 */
+	public void setProfile(int i, Profile profile){
+		profiles[i] = profile;
+		partials[i] = Double.NaN;
+	}
+
+
+	/**
+	 * Gets the sum of the likelihoods of all hotspots in the last 
+	 * measurement.
+	 *
+	 * @param i Index of the particle
+	 * @return Partial sum or NaN, if it has to be calculated completely
+	 */
+	public double getPartial(int i){
+		return partials[i];
+	}
+
+
+	/**
+	 * Sets the sum of the likelihoods of all hotspots in the last 
+	 * measurement.
+	 *
+	 * @param i Index of the particle
+	 * @param partial Partial sum or NaN
+	 */
+	public void setPartial(int i, double partial){
+		partials[i] = partial;
+	}
+}
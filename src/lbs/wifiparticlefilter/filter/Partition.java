@@ -0,0 +1,124 @@
+package lbs.wifiparticlefilter.filter;
+
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Description of one part of a partitioned radio-map, e.g. a building, a
+ * floor or a region of a campus. The measurements lie in a compiled
+ * radio-map file, which is only loaded, when the partition is needed.
+ *
+ * @version 1.0
+ */
+public class Partition {
+
+
+	// name of the partition; unique in a partitioned map
+	private final String id;
+	// compiled radio-map of the partition
+	private final File file;
+	// dilation of the partition; [xmin xmax ymin ymax]
+	private final int[] border;
+	// all hotspots, which are measured in the partition, with their
+	// strongest signal-strength in it
+	private final Map<String,Integer> peaks;
+
+
+	/**
+	 * C'tor
+	 *
+	 * @param id Name of the partition
+	 * @param file Compiled radio-map of the partition
+	 * @param border Dilation of the partition; [xmin xmax ymin ymax]
+	 * @param peaks All hotspots of the partition with their strongest 
+	 * signal-strength
+	 */
+	public Partition(String id, File file, int[] border, Map<String,Integer> peaks){
+
+		this.id = id;
+		this.file = file;
+		this.border = border.clone();
+		this.peaks = Collections.unmodifiableMap(new HashMap<String,Integer>(peaks));
+	}
+
+
+	/**
+	 * Gets the name of the partition.
+	 *
+	 * @return Id of the partition
+	 */
+	public String getId(){
+		return id;
+	}
+
+
+	/**
+	 * Gets the compiled radio-map of the partition.
+	 *
+	 * @return Radio-map file
+	 */
+	public File getFile(){
+		return file;
+	}
+
+
+	/**
+	 * Gets the dilation of the partition.
+	 *
+	 * @return Copy of the border-values; [xmin xmax ymin ymax]
+	 */
+	public int[] getBorder(){
+		return border.clone();
+	}
+
+
+	/**
+	 * Gets all hotspots, which are measured in the partition.
+	 *
+	 * @return Unmodifiable set of BSSIDs
+	 */
+	public Set<String> getBssids(){
+		return peaks.keySet();
+	}
+
+
+	/**
+	 * Gets the strongest signal-strength of a hotspot in the partition.
+	 * 
+	 * @param bssid BSSID of the hotspot
+	 * @return Signal-strength in dBm or Integer.MIN_VALUE, if the hotspot
+	 * isn't measured in the partition
+	 */
+	public int getPeak(String bssid){
+		
+		Integer peak = peaks.get(bssid);
+		
+		return (peak != null) ? peak : Integer.MIN_VALUE;
+	}
+
+
+	/**
+	 * Checks, if a point lies inside the partition.
+	 *
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @return true, if the point is inside the border
+	 */
+	public boolean contains(int x, int y){
+		return (x >= border[0]) && (x <= border[1]) && (y >= border[2]) && (y <= border[3]);
+	}
+
+
+	/**
+	 * Gives back the name of the partition.
+	 */
+	@Override
+	public String toString(){
+		return id;
+	}
+}
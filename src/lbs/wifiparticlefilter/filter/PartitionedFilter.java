@@ -0,0 +1,173 @@
+package lbs.wifiparticlefilter.filter;
+
+
+import java.io.IOException;
+import java.util.List;
+
+import lbs.wifiparticlefilter.data.Measure;
+import lbs.wifiparticlefilter.data.Point;
+
+
+/**
+ * Particle filter over a partitioned radio-map. Each scan selects the
+ * partition of the device; the filter is moved into another partition only,
+ * if consecutive scans agree on it, so a single scan at a border doesn't
+ * spread the particles again.
+ *
+ * @version 1.0
+ */
+public class PartitionedFilter {
+
+
+	// number of consecutive scans, which must select a new partition
+	public static final int SWITCH_SCANS = 2;
+
+	// all partitions
+	private final PartitionedRadioMap maps;
+	// number of particles for a new filter
+	private final int particles;
+	// filter of the actual partition; null before the first known scan
+	private Filter filter = null;
+	// actual partition
+	private Partition current = null;
+	// partition, which was selected by the last scans, and number of them
+	private Partition candidate = null;
+	private int votes = 0;
+	// number of partition-changes
+	private int switches = 0;
+
+
+	/**
+	 * C'tor
+	 *
+	 * @param maps Partitioned radio-map
+	 * @param particles Number of particles
+	 */
+	public PartitionedFilter(PartitionedRadioMap maps, int particles){
+
+		this.maps = maps;
+		this.particles = particles;
+	}
+
+
+	/**
+	 * Method updates a wifi-measurement on actual position. The partition is
+	 * selected and loaded here, if necessary.
+	 *
+	 * @param m Measure-List with all actual measurements
+	 * @throws IOException if the radio-map of a partition can't be loaded
+	 */
+	public void setCurrentMeasure(List<Measure> m) throws IOException {
+
+		Partition p = maps.select(m);
+
+		// no known hotspot; stay in the actual partition
+		if (p == null)
+			p = current;
+
+		if ((p != null) && (p != current)){
+
+			// count consecutive votes for the same partition
+			if (p == candidate)
+				votes++;
+			else {
+				candidate = p;
+				votes = 1;
+			}
+
+			if ((current == null) || (votes >= SWITCH_SCANS))
+				enter(p);
+
+		} else {
+			candidate = null;
+			votes = 0;
+		}
+
+		if (filter != null)
+			filter.setCurrentMeasure(m);
+	}
+
+
+	/**
+	 * Moves the filter into a partition.
+	 */
+	private void enter(Partition p) throws IOException {
+
+		RadioMap map = maps.get(p);
+
+		if (filter == null){
+			filter = new Filter(particles, map);
+			filter.initFilter();
+		} else {
+			filter.setRadioMap(map);
+			switches++;
+		}
+
+		current = p;
+		candidate = null;
+		votes = 0;
+	}
+
+
+	/**
+	 * Method considers actual measure and calcs new weight. Does nothing
+	 * before the first scan with a known hotspot.
+	 */
+	public void estimate(){
+
+		if (filter != null)
+			filter.estimate();
+	}
+
+
+	/**
+	 * Method resamples and moves the particles. Does nothing before the first
+	 * scan with a known hotspot.
+	 */
+	public void propagate(){
+
+		if (filter != null)
+			filter.propagate();
+	}
+
+
+	/**
+	 * Gets the estimated position.
+	 *
+	 * @return Weighted mean of the particles or null, if no partition is
+	 * selected yet
+	 */
+	public Point getEstimate(){
+		return (filter != null) ? filter.getEstimate() : null;
+	}
+
+
+	/**
+	 * Gets the filter of the actual partition.
+	 *
+	 * @return Filter or null, if no partition is selected yet
+	 */
+	public Filter getFilter(){
+		return filter;
+	}
+
+
+	/**
+	 * Gets the actual partition.
+	 *
+	 * @return Partition or null, if no partition is selected yet
+	 */
+	public Partition getPartition(){
+		return current;
+	}
+
+
+	/**
+	 * Gets the number of partition-changes.
+	 *
+	 * @return Number of switches
+	 */
+	public int getSwitches(){
+		return switches;
+	}
+}
@@ -0,0 +1,397 @@
+package lbs.wifiparticlefilter.filter;
+
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lbs.wifiparticlefilter.data.Measure;
+
+
+/**
+ * Radio-map of a large area, which is split into partitions, e.g. buildings
+ * or floors. Only the partitions, which are needed by a filter, are loaded.
+ * Loaded partitions are kept, until the sum of their file-sizes exceeds the
+ * memory-budget; then the least recently used partitions are dropped.
+ * <p>
+ * The budget is nominal: it counts the file-sizes of the partitions in the
+ * cache, not the memory of the process. A dropped partition stays mapped,
+ * until its buffers are collected by the garbage-collector, and filters,
+ * which still use its map, keep it alive.
+ * <p>
+ * Partitions are described by a manifest with one line per partition:
+ * <pre>id,file,xmin,xmax,ymin,ymax,bssid:peak;bssid:peak;...</pre>
+ * Files are compiled radio-maps; relative paths start at the manifest. The
+ * peak is the strongest signal-strength of the hotspot in the partition.
+ *
+ * @version 1.2
+ */
+public class PartitionedRadioMap {
+
+
+	// number of strongest hotspots of a scan, which vote for a partition
+	public static final int VOTE_APS = 5;
+
+	// all partitions
+	private final List<Partition> partitions;
+	// partitions by id
+	private final Map<String,Partition> by_id = new HashMap<String,Partition>();
+	// indices of the partitions, in which a hotspot is strongest
+	private final Map<String,int[]> homes = new HashMap<String,int[]>();
+	// maximal sum of the file-sizes of the loaded partitions
+	private final long budget;
+	// cache-size of each loaded radio-map
+	private final int cache_size;
+	// loaded radio-maps; least recently used first
+	private final LinkedHashMap<Partition,RadioMap> loaded = new LinkedHashMap<Partition,RadioMap>(16, 0.75f, true);
+	// sum of the file-sizes of the loaded partitions
+	private long loaded_bytes = 0;
+	// counters
+	private long loads = 0;
+	private long evictions = 0;
+
+
+	/**
+	 * C'tor
+	 *
+	 * @param partitions All partitions of the area
+	 * @param budget Maximal sum of the file-sizes of the loaded partitions
+	 * @param cache_size Number of interpolated profiles per partition
+	 */
+	public PartitionedRadioMap(List<Partition> partitions, long budget, int cache_size){
+
+		this.partitions = Collections.unmodifiableList(new ArrayList<Partition>(partitions));
+		this.budget = budget;
+		this.cache_size = cache_size;
+
+		Map<String,List<Integer>> index = new HashMap<String,List<Integer>>();
+		Map<String,Integer> peaks = new HashMap<String,Integer>();
+
+		for (int i=0; i<this.partitions.size(); i++){
+
+			Partition p = this.partitions.get(i);
+
+			if (by_id.put(p.getId(), p) != null)
+				throw new IllegalArgumentException("partition is not unique: " + p.getId());
+
+			for (String bssid : p.getBssids()){
+
+				int peak = p.getPeak(bssid);
+				Integer best = peaks.get(bssid);
+				List<Integer> list = index.get(bssid);
+
+				// weaker than in another partition
+				if ((best != null) && (peak < best))
+					continue;
+
+				// stronger than in all partitions before
+				if ((list == null) || (peak > best)){
+					list = new ArrayList<Integer>();
+					index.put(bssid, list);
+					peaks.put(bssid, peak);
+				}
+				list.add(i);
+			}
+		}
+
+		// compact arrays for the votes
+		for (Map.Entry<String,List<Integer>> e : index.entrySet()){
+
+			int[] ids = new int[e.getValue().size()];
+			for (int i=0; i<ids.length; i++)
+				ids[i] = e.getValue().get(i);
+
+			homes.put(e.getKey(), ids);
+		}
+	}
+
+
+	/**
+	 * Gets the radio-map of a partition. The partition is loaded, if it
+	 * isn't loaded yet; other partitions may be dropped for it.
+	 *
+	 * @param p Partition
+	 * @return Radio-map of the partition
+	 * @throws IOException if the partition can't be loaded
+	 */
+	public synchronized RadioMap get(Partition p) throws IOException {
+
+		RadioMap map = loaded.get(p);
+
+		if (map != null)
+			return map;
+
+		map = RadioMapFile.open(p.getFile(), cache_size);
+		loaded.put(p, map);
+		loaded_bytes += p.getFile().length();
+		loads++;
+
+		// drop least recently used partitions; the new one stays
+		Iterator<Map.Entry<Partition,RadioMap>> it = loaded.entrySet().iterator();
+
+		while ((loaded_bytes > budget) && (loaded.size() > 1) && it.hasNext()){
+
+			Partition eldest = it.next().getKey();
+			if (eldest == p)
+				continue;
+
+			// filters, which use the map, keep it until they switch
+			it.remove();
+			loaded_bytes -= eldest.getFile().length();
+			evictions++;
+		}
+
+		return map;
+	}
+
+
+	/**
+	 * Selects the partition, which fits a scan best. Each of the strongest
+	 * hotspots of the scan votes for the partition, in which it is measured
+	 * strongest.
+	 *
+	 * @param scan Measure-list of the scan
+	 * @return Partition with most votes or null, if no hotspot is known
+	 */
+	public Partition select(List<Measure> scan){
+
+		// strongest hotspots first
+		List<Measure> sorted = new ArrayList<Measure>(scan);
+		Collections.sort(sorted, new Comparator<Measure>() {
+			public int compare(Measure a, Measure b){
+				return b.getRssi() - a.getRssi();
+			}
+		});
+
+		int[] votes = new int[partitions.size()];
+		int best = -1;
+
+		for (int i=0; i<Math.min(VOTE_APS, sorted.size()); i++){
+
+			int[] ids = homes.get(sorted.get(i).getBSSID());
+
+			// hotspot isn't in any partition
+			if (ids == null)
+				continue;
+
+			for (int j=0; j<ids.length; j++){
+
+				votes[ids[j]]++;
+
+				// on equal votes, the first partition wins
+				if ((best < 0) || (votes[ids[j]] > votes[best]) || (votes[ids[j]] == votes[best] && ids[j] < best))
+					best = ids[j];
+			}
+		}
+
+		return (best >= 0) ? partitions.get(best) : null;
+	}
+
+
+	/**
+	 * Gets a partition by its name.
+	 *
+	 * @param id Name of the partition
+	 * @return Partition or null, if unknown
+	 */
+	public Partition getPartition(String id){
+		return by_id.get(id);
+	}
+
+
+	/**
+	 * Gets all partitions.
+	 *
+	 * @return Unmodifiable partition-list
+	 */
+	public List<Partition> getPartitions(){
+		return partitions;
+	}
+
+
+	/**
+	 * Checks, if a partition is loaded.
+	 *
+	 * @param p Partition
+	 * @return true, if the radio-map is in memory
+	 */
+	public synchronized boolean isLoaded(Partition p){
+		return loaded.containsKey(p);
+	}
+
+
+	/**
+	 * Gets the number of loaded partitions.
+	 *
+	 * @return Number of partitions in memory
+	 */
+	public synchronized int getLoadedCount(){
+		return loaded.size();
+	}
+
+
+	/**
+	 * Gets the sum of the file-sizes of the loaded partitions.
+	 *
+	 * @return Loaded bytes
+	 */
+	public synchronized long getLoadedBytes(){
+		return loaded_bytes;
+	}
+
+
+	/**
+	 * Gets the maximal sum of the file-sizes of the loaded partitions.
+	 *
+	 * @return Memory-budget in bytes
+	 */
+	public long getBudget(){
+		return budget;
+	}
+
+
+	/**
+	 * Gets the number of loaded partitions since creation.
+	 *
+	 * @return Number of loads
+	 */
+	public synchronized long getLoads(){
+		return loads;
+	}
+
+
+	/**
+	 * Gets the number of dropped partitions since creation.
+	 *
+	 * @return Number of evictions
+	 */
+	public synchronized long getEvictions(){
+		return evictions;
+	}
+
+
+	/**
+	 * Reads the partitions of a manifest.
+	 *
+	 * @param manifest Manifest-file
+	 * @param budget Maximal sum of the file-sizes of the loaded partitions
+	 * @return Partitioned radio-map
+	 * @throws IOException if the manifest can't be read or is malformed
+	 */
+	public static PartitionedRadioMap readManifest(File manifest, long budget) throws IOException {
+
+		List<Partition> list = new ArrayList<Partition>();
+		BufferedReader in = new BufferedReader(new FileReader(manifest));
+
+		try {
+
+			String line;
+			int number = 0;
+
+			while ((line = in.readLine()) != null){
+
+				number++;
+				line = line.trim();
+
+				if ((line.length() == 0) || line.startsWith("#"))
+					continue;
+
+				String[] cols = line.split(",", -1);
+
+				if (cols.length != 7)
+					throw new IOException(manifest + ":" + number + ": expected id,file,xmin,xmax,ymin,ymax,peaks");
+
+				File file = new File(cols[1].trim());
+				if (!file.isAbsolute())
+					file = new File(manifest.getAbsoluteFile().getParentFile(), cols[1].trim());
+
+				int[] border = new int[4];
+				Map<String,Integer> peaks = new HashMap<String,Integer>();
+
+				try {
+					for (int i=0; i<4; i++)
+						border[i] = Integer.parseInt(cols[2 + i].trim());
+
+					// bssid:peak; BSSIDs contain colons, so the last one splits
+					String[] names = cols[6].split(";");
+					for (int i=0; i<names.length; i++){
+
+						String name = names[i].trim();
+						int colon = name.lastIndexOf(':');
+
+						if (name.length() == 0)
+							continue;
+						if (colon < 0)
+							throw new IOException(manifest + ":" + number + ": expected bssid:peak, found " + name);
+
+						peaks.put(name.substring(0, colon), Integer.parseInt(name.substring(colon + 1)));
+					}
+				} catch (NumberFormatException e){
+					throw new IOException(manifest + ":" + number + ": " + e.getMessage());
+				}
+
+				list.add(new Partition(cols[0].trim(), file, border, peaks));
+			}
+
+		} finally {
+			in.close();
+		}
+
+		return new PartitionedRadioMap(list, budget, Filter.CACHE_SIZE);
+	}
+
+
+	/**
+	 * Writes a manifest for partitions. Files are written as given.
+	 *
+	 * @param partitions All partitions
+	 * @param manifest Manifest-file
+	 * @throws IOException if the manifest can't be written
+	 */
+	public static void writeManifest(List<Partition> partitions, File manifest) throws IOException {
+
+		Writer out = new BufferedWriter(new FileWriter(manifest));
+
+		try {
+
+			out.write("# id,file,xmin,xmax,ymin,ymax,bssid:peak;...\n");
+
+			for (int i=0; i<partitions.size(); i++){
+
+				Partition p = partitions.get(i);
+				int[] b = p.getBorder();
+
+				StringBuilder sb = new StringBuilder();
+				sb.append(p.getId()).append(',').append(p.getFile().getPath());
+				for (int j=0; j<4; j++)
+					sb.append(',').append(b[j]);
+				sb.append(',');
+
+				boolean first = true;
+				for (String bssid : p.getBssids()){
+					if (!first)
+						sb.append(';');
+					sb.append(bssid).append(':').append(p.getPeak(bssid));
+					first = false;
+				}
+
+				out.write(sb.append('\n').toString());
+			}
+
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package lbs.wifiparticlefilter.filter;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import lbs.wifiparticlefilter.data.Measure;
+
+
+/**
+ * Compact measure-profile. Hotspots are stored by their dictionary-id in
+ * ascending order, together with the signal-strength of each hotspot, so
+ * two profiles can be compared in one run through both arrays.
+ *
+ * @version 1.1
+ */
+public class Profile {
+
+
+	// hotspot-ids in ascending order
+	private final int[] ids;
+	// signal-strength of each hotspot
+	private final int[] rssi;
+	// measures of the profile; created on demand, if null
+	private volatile List<Measure> measures;
+	// names of the hotspots for the measures; null if measures are given
+	private final BssidDictionary dict;
+
+
+	/**
+	 * C'tor
+	 *
+	 * @param ids Hotspot-ids in ascending order
+	 * @param rssi Signal-strength of each hotspot
+	 * @param measures Measure-list of the profile
+	 */
+	public Profile(int[] ids, int[] rssi, List<Measure> measures){
+
+		this.ids = ids;
+		this.rssi = rssi;
+		this.measures = Collections.unmodifiableList(measures);
+		this.dict = null;
+	}
+
+
+	/**
+	 * C'tor; the measure-list is only created, if it is requested.
+	 *
+	 * @param ids Hotspot-ids in ascending order
+	 * @param rssi Signal-strength of each hotspot
+	 * @param dict Dictionary with the names of the hotspots
+	 */
+	public Profile(int[] ids, int[] rssi, BssidDictionary dict){
+
+		this.ids = ids;
+		this.rssi = rssi;
+		this.dict = dict;
+	}
+
+
+	/**
+	 * Creates a profile from a measure-list. Hotspots, which are not in the
+	 * dictionary, are dropped.
+	 *
+	 * @param list Measure-list
+	 * @param dict Dictionary with all known hotspots
+	 * @return Profile sorted by hotspot-id
+	 */
+	public static Profile encode(List<Measure> list, BssidDictionary dict){
+
+		// id in upper, rssi in lower 32 bits; sorting orders by id
+		long[] packed = new long[list.size()];
+		int n = 0;
+
+		for (int i=0; i<list.size(); i++){
+
+			Measure m = list.get(i);
+			int id = dict.getId(m.getBSSID());
+
+			// hotspot isn't in database; can never be compared
+			if (id == BssidDictionary.UNKNOWN)
+				continue;
+
+			packed[n++] = (((long) id) << 32) | (m.getRssi() & 0xffffffffL);
+		}
+
+		Arrays.sort(packed, 0, n);
+
+		int[] ids = new int[n];
+		int[] rssi = new int[n];
+
+		for (int i=0; i<n; i++){
+			ids[i] = (int) (packed[i] >>> 32);
+			rssi[i] = (int) packed[i];
+		}
+
+		return new Profile(ids, rssi, list);
+	}
+
+
+	/**
+	 * Gets the hotspot-ids in ascending order. The array is shared and must
+	 * not be modified.
+	 *
+	 * @return Array with hotspot-ids
+	 */
+	public int[] getIds(){
+		return ids;
+	}
+
+
+	/**
+	 * Gets the signal-strength of each hotspot. The array is shared and must
+	 * not be modified.
+	 *
+	 * @return Array with signal-strengths
+	 */
+	public int[] getRssi(){
+		return rssi;
+	}
+
+
+	/**
+	 * Gets the number of hotspots in the profile.
+	 *
+	 * @return Number of hotspots
+	 */
+	public int size(){
+		return ids.length;
+	}
+
+
+	/**
+	 * Gets the measures of the profile.
+	 *
+	 * @return Unmodifiable measure-list
+	 */
+	public List<Measure> getMeasures(){
+
+		List<Measure> list = measures;
+
+		// two threads may create the list both; lists are equal
+		if (list == null){
+
+			list = new ArrayList<Measure>(ids.length);
+			for (int i=0; i<ids.length; i++)
+				list.add(new Measure(dict.getBssid(ids[i]), rssi[i]));
+
+			list = Collections.unmodifiableList(list);
+			measures = list;
+		}
+
+		return list;
+	}
+}
@@ -0,0 +1,525 @@
+package lbs.wifiparticlefilter.filter;
+
+
+import java.util.Arrays;
+
+import lbs.wifiparticlefilter.data.Point;
+
+
+/**
+ * Bounded cache for interpolated measure-profiles. Particles lie on integer
+ * coordinates, so the profile of a position only has to be interpolated
+ * once. If the cache is full, the least recently used profile is removed.
+ * <p>
+ * Positions are stored as packed long-values in an open-addressing table,
+ * and the usage-order is a linked list over slot-indices, so lookups don't
+ * create any objects.
+ * <p>
+ * The cache is split into segments with an own lock, table and usage-order;
+ * the segment of a position is given by its hash. Filters on different
+ * threads, which share a map, only wait for each other, if they hit the
+ * same segment. Each segment removes its own least recently used profile.
+ *
+ * @version 1.3
+ */
+public class ProfileCache {
+
+
+	// maximum number of segments; selected by the upper 8 bits of the hash
+	private static final int MAX_SEGMENTS = 256;
+
+	// segments; the number is a power of 2
+	private final Segment[] segments;
+	private final int segment_mask;
+
+
+	/**
+	 * C'tor; cache with one segment, e.g. for a single filter.
+	 *
+	 * @param capacity Maximum number of profiles in cache
+	 */
+	public ProfileCache(int capacity){
+		this(capacity, 1);
+	}
+
+
+	/**
+	 * C'tor; the capacity is split evenly into the segments. The number of
+	 * segments is rounded up to a power of 2, but limited to the capacity.
+	 *
+	 * @param capacity Maximum number of profiles in cache
+	 * @param segments Number of segments, e.g. a few per thread
+	 */
+	public ProfileCache(int capacity, int segments){
+
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		if (segments < 1)
+			throw new IllegalArgumentException("segments must be positive: " + segments);
+
+		int n = 1;
+		while ((n < segments) && (n < MAX_SEGMENTS) && (2 * n <= capacity))
+			n = 2 * n;
+
+		this.segments = new Segment[n];
+		segment_mask = n - 1;
+
+		// rounded up; each segment has the same capacity
+		for (int i=0; i<n; i++)
+			this.segments[i] = new Segment((capacity + n - 1) / n);
+	}
+
+
+	/**
+	 * Gets the profile of a position.
+	 *
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @return Profile or null, if position is not cached
+	 */
+	public Profile get(int x, int y){
+
+		long key = Point.pack(x, y);
+
+		return segmentOf(key).get(key);
+	}
+
+
+	/**
+	 * Adds the profile of a position to the cache.
+	 *
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @param profile Interpolated profile of the position
+	 */
+	public void put(int x, int y, Profile profile){
+
+		long key = Point.pack(x, y);
+
+		segmentOf(key).put(key, profile);
+	}
+
+
+	/**
+	 * Copies all cached profiles segment by segment, in each segment the
+	 * least recently used first. Putting them in this order into a cache with
+	 * the same number of segments keeps the usage-order.
+	 *
+	 * @param positions Array for the packed positions; at least getCapacity()
+	 * @param profiles Array for the profiles; at least getCapacity()
+	 * @return Number of copied profiles
+	 */
+	public int copyTo(long[] positions, Profile[] profiles){
+
+		int n = 0;
+
+		for (int i=0; i<segments.length; i++)
+			n = segments[i].copyTo(positions, profiles, n);
+
+		return n;
+	}
+
+
+	/**
+	 * Removes all profiles. Counters are not reset.
+	 */
+	public void clear(){
+		for (int i=0; i<segments.length; i++)
+			segments[i].clear();
+	}
+
+
+	/**
+	 * Gets the number of cached profiles. Concurrent changes may be partly
+	 * counted.
+	 *
+	 * @return Number of profiles
+	 */
+	public int size(){
+
+		int n = 0;
+		for (int i=0; i<segments.length; i++)
+			n = n + segments[i].size();
+
+		return n;
+	}
+
+
+	/**
+	 * Gets the maximum number of cached profiles.
+	 *
+	 * @return Capacity of the cache
+	 */
+	public int getCapacity(){
+		return segments.length * segments[0].getCapacity();
+	}
+
+
+	/**
+	 * Gets the number of segments.
+	 *
+	 * @return Number of segments
+	 */
+	public int getSegments(){
+		return segments.length;
+	}
+
+
+	/**
+	 * Gets the number of lookups, which found a profile.
+	 *
+	 * @return Number of hits
+	 */
+	public long getHits(){
+
+		long n = 0;
+		for (int i=0; i<segments.length; i++)
+			n = n + segments[i].getHits();
+
+		return n;
+	}
+
+
+	/**
+	 * Gets the number of lookups, which found no profile.
+	 *
+	 * @return Number of misses
+	 */
+	public long getMisses(){
+
+		long n = 0;
+		for (int i=0; i<segments.length; i++)
+			n = n + segments[i].getMisses();
+
+		return n;
+	}
+
+
+	/**
+	 * Gets the number of profiles, which were removed because a segment was
+	 * full.
+	 *
+	 * @return Number of evictions
+	 */
+	public long getEvictions(){
+
+		long n = 0;
+		for (int i=0; i<segments.length; i++)
+			n = n + segments[i].getEvictions();
+
+		return n;
+	}
+
+
+	/**
+	 * Gets the segment of a packed position. The upper bits of the hash are
+	 * used, the tables of the segments use the lower ones.
+	 */
+	private Segment segmentOf(long key){
+		return segments[(hash(key) >>> 24) & segment_mask];
+	}
+
+
+	/**
+	 * Mixes the bits of a packed position.
+	 */
+	private static int hash(long key){
+
+		long h = key * 0x9E3779B97F4A7C15L;
+
+		return (int) (h ^ (h >>> 32));
+	}
+
+
+	/**
+	 * One segment of the cache; all methods are synchronized on the segment.
+	 */
+	private static class Segment {
+
+
+		// escape-number for no slot
+		private static final int NIL = -1;
+
+		// maximum number of profiles
+		private final int capacity;
+		// packed position of each slot
+		private final long[] keys;
+		// profile of each slot
+		private final Profile[] values;
+		// usage-order; prev is more, next is less recently used
+		private final int[] prev;
+		private final int[] next;
+		// hash-table with slot + 1; 0 is an empty entry
+		private final int[] table;
+		private final int mask;
+		// most & least recently used slot
+		private int head = NIL;
+		private int tail = NIL;
+		// number of used slots
+		private int count = 0;
+		// counters
+		private long hits = 0;
+		private long misses = 0;
+		private long evictions = 0;
+
+
+		/**
+		 * C'tor
+		 *
+		 * @param capacity Maximum number of profiles in segment
+		 */
+		Segment(int capacity){
+
+			this.capacity = capacity;
+
+			keys = new long[capacity];
+			values = new Profile[capacity];
+			prev = new int[capacity];
+			next = new int[capacity];
+
+			// table is at most half full
+			int size = Integer.highestOneBit(capacity) << 2;
+			table = new int[size];
+			mask = size - 1;
+		}
+
+
+		/**
+		 * Gets the profile of a position.
+		 *
+		 * @param key Packed position
+		 * @return Profile or null, if position is not cached
+		 */
+		synchronized Profile get(long key){
+
+			int pos = find(key);
+
+			if (table[pos] == 0){
+				misses++;
+				return null;
+			}
+
+			hits++;
+
+			// profile was used; move to front
+			int slot = table[pos] - 1;
+			unlink(slot);
+			linkFirst(slot);
+
+			return values[slot];
+		}
+
+
+		/**
+		 * Adds the profile of a position to the cache.
+		 *
+		 * @param key Packed position
+		 * @param profile Interpolated profile of the position
+		 */
+		synchronized void put(long key, Profile profile){
+
+			int pos = find(key);
+			int slot;
+
+			if (table[pos] != 0){
+
+				// position is already cached; replace profile
+				slot = table[pos] - 1;
+				unlink(slot);
+
+			} else {
+
+				if (count < capacity){
+
+					// next free slot
+					slot = count++;
+
+				} else {
+
+					// cache is full; reuse least recently used slot
+					slot = tail;
+					unlink(slot);
+					remove(find(keys[slot]));
+					evictions++;
+
+					// table has changed
+					pos = find(key);
+				}
+
+				keys[slot] = key;
+				table[pos] = slot + 1;
+			}
+
+			values[slot] = profile;
+			linkFirst(slot);
+		}
+
+
+		/**
+		 * Copies all cached profiles, the least recently used first. Putting
+		 * them in this order into another segment keeps the usage-order.
+		 *
+		 * @param positions Array for the packed positions; at least size()
+		 * @param profiles Array for the profiles; at least size()
+		 * @param n First index in both arrays
+		 * @return Next free index
+		 */
+		synchronized int copyTo(long[] positions, Profile[] profiles, int n){
+
+			for (int slot=tail; slot!=NIL; slot=prev[slot]){
+				positions[n] = keys[slot];
+				profiles[n] = values[slot];
+				n++;
+			}
+
+			return n;
+		}
+
+
+		/**
+		 * Removes all profiles. Counters are not reset.
+		 */
+		synchronized void clear(){
+
+			Arrays.fill(table, 0);
+			Arrays.fill(values, null);
+			head = NIL;
+			tail = NIL;
+			count = 0;
+		}
+
+
+		/**
+		 * Gets the number of cached profiles.
+		 *
+		 * @return Number of profiles
+		 */
+		synchronized int size(){
+			return count;
+		}
+
+
+		/**
+		 * Gets the maximum number of cached profiles.
+		 *
+		 * @return Capacity of the segment
+		 */
+		int getCapacity(){
+			return capacity;
+		}
+
+
+		/**
+		 * Gets the number of lookups, which found a profile.
+		 *
+		 * @return Number of hits
+		 */
+		synchronized long getHits(){
+			return hits;
+		}
+
+
+		/**
+		 * Gets the number of lookups, which found no profile.
+		 *
+		 * @return Number of misses
+		 */
+		synchronized long getMisses(){
+			return misses;
+		}
+
+
+		/**
+		 * Gets the number of profiles, which were removed because the cache was
+		 * full.
+		 *
+		 * @return Number of evictions
+		 */
+		synchronized long getEvictions(){
+			return evictions;
+		}
+
+
+		/**
+		 * Searches the table-entry of a key.
+		 *
+		 * @return Position of the key or of the empty entry, where it belongs
+		 */
+		private int find(long key){
+
+			int pos = hash(key) & mask;
+
+			while ((table[pos] != 0) && (keys[table[pos] - 1] != key))
+				pos = (pos + 1) & mask;
+
+			return pos;
+		}
+
+
+		/**
+		 * Removes a table-entry. Following entries are moved back, so no entry
+		 * gets unreachable.
+		 *
+		 * @param pos Position of the entry
+		 */
+		private void remove(int pos){
+
+			int j = pos;
+
+			while (true){
+
+				j = (j + 1) & mask;
+
+				if (table[j] == 0)
+					break;
+
+				// position, where the entry belongs to
+				int k = hash(keys[table[j] - 1]) & mask;
+
+				// entry stays, if k lies cyclic in (pos, j]
+				boolean stays = (pos <= j) ? ((pos < k) && (k <= j)) : ((pos < k) || (k <= j));
+
+				if (!stays){
+					table[pos] = table[j];
+					pos = j;
+				}
+			}
+
+			table[pos] = 0;
+		}
+
+
+		/**
+		 * Removes a slot from the usage-order.
+		 */
+		private void unlink(int slot){
+
+			if (prev[slot] != NIL)
+				next[prev[slot]] = next[slot];
+			else
+				head = next[slot];
+
+			if (next[slot] != NIL)
+				prev[next[slot]] = prev[slot];
+			else
+				tail = prev[slot];
+		}
+
+
+		/**
+		 * Adds a slot at the front of the usage-order.
+		 */
+		private void linkFirst(int slot){
+
+			prev[slot] = NIL;
+			next[slot] = head;
+
+			if (head != NIL)
+				prev[head] = slot;
+			else
+				tail = slot;
+
+			head = slot;
+		}
+	}
+}
@@ -0,0 +1,450 @@
+package lbs.wifiparticlefilter.filter;
+
+
+import java.nio.IntBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lbs.wifiparticlefilter.data.Particle;
+import lbs.wifiparticlefilter.data.Point;
+
+
+/**
+ * Immutable radio-map with all measurements from the database. The map is
+ * indexed once and can be shared by many filters; interpolated profiles are
+ * cached for all of them.
+ * <p>
+ * Measurements are kept in a primitive fingerprint-table, which is compiled
+ * from a particle-list or mapped from a file by {@link RadioMapFile}.
+ * <p>
+ * New measurements don't change a map; {@link #update(List)} creates the
+ * next version of it, so filters, which still use the old version, aren't
+ * disturbed.
+ *
+ * @version 1.4
+ */
+public class RadioMap {
+
+
+	// List with wifi-measurements from database; unmodifiable
+	private final List<Particle> db_list;
+	// Measurements by hotspot-id
+	private final FingerprintTable table;
+	// Array for room-dilation; [xmin xmax ymin ymax]
+	private final int[] border;
+	// Index over db_list for neighbor-search
+	private final SpatialIndex index;
+	// Ids of all hotspots in db_list; never changed after construction
+	private final BssidDictionary dict;
+	// Interpolated profiles by position; shared by all filters
+	private final ProfileCache cache;
+	// Number of updates since the first version
+	private final long version;
+
+
+	/**
+	 * C'tor
+	 *
+	 * @param database List with all measured particles from database
+	 */
+	public RadioMap(List<Particle> database){
+		this(database, Filter.CACHE_SIZE);
+	}
+
+
+	/**
+	 * C'tor
+	 *
+	 * @param database List with all measured particles from database
+	 * @param cache_size Number of interpolated profiles, which are cached
+	 */
+	public RadioMap(List<Particle> database, int cache_size){
+
+		// own copy; later changes of the list don't affect the map
+		db_list = Collections.unmodifiableList(new ArrayList<Particle>(database));
+
+		border = calcBorder(db_list);
+		index = new SpatialIndex(db_list);
+		dict = new BssidDictionary(db_list);
+		table = new FingerprintTable(db_list, dict);
+		cache = new ProfileCache(cache_size);
+		version = 0;
+	}
+
+
+	/**
+	 * C'tor; map over a prebuilt table and index, e.g. from a file.
+	 *
+	 * @param table Measurements by hotspot-id
+	 * @param index Index over the points of the table
+	 * @param dict Dictionary with all hotspots of the table
+	 * @param border Dilation of the room; [xmin xmax ymin ymax]
+	 * @param cache_size Number of interpolated profiles, which are cached
+	 */
+	public RadioMap(FingerprintTable table, SpatialIndex index, BssidDictionary dict, int[] border, int cache_size){
+
+		this.table = table;
+		this.index = index;
+		this.dict = dict;
+		this.border = border.clone();
+		cache = new ProfileCache(cache_size);
+		version = 0;
+
+		// particles are created, when they are requested
+		db_list = new TableList();
+	}
+
+
+	/**
+	 * C'tor; next version of a map.
+	 */
+	private RadioMap(FingerprintTable table, SpatialIndex index, BssidDictionary dict, int[] border, ProfileCache cache, long version){
+
+		this.table = table;
+		this.index = index;
+		this.dict = dict;
+		this.border = border;
+		this.cache = cache;
+		this.version = version;
+
+		db_list = new TableList();
+	}
+
+
+	/**
+	 * Creates the next version of the map with new or changed measurements.
+	 * The measures of a particle on the position of a measured point are 
+	 * added to the point, other particles become new points. This is the 
+	 * same rule as in the database, which keeps all rows and groups them by
+	 * position, so a reloaded map equals the updated one. This map isn't 
+	 * changed.
+	 * <p>
+	 * The new version starts with the cached profiles of this map, except
+	 * the profiles of positions, whose neighbors have changed.
+	 *
+	 * @param points Particle-list with new measurements
+	 * @return Next version of the map
+	 */
+	public RadioMap update(List<Particle> points){
+
+		int n = table.size();
+
+		// index of each particle in the new table; particles on one position are merged
+		Map<Long,Integer> positions = new HashMap<Long,Integer>();
+		int[] targets = new int[points.size()];
+		int added = 0;
+
+		for (int j=0; j<points.size(); j++){
+
+			int x = points.get(j).getX();
+			int y = points.get(j).getY();
+			Long key = Point.pack(x, y);
+			Integer target = positions.get(key);
+
+			if (target == null){
+
+				// nearest point in 1st quadrant has distance 0, if it exists
+				int k = (n > 0) ? index.getNearestPoints(new Point(x, y))[0] : SpatialIndex.NONE;
+
+				if ((k != SpatialIndex.NONE) && (table.getX(k) == x) && (table.getY(k) == y))
+					target = k;
+				else
+					target = n + added++;
+
+				positions.put(key, target);
+			}
+
+			targets[j] = target;
+		}
+
+		// ids of known hotspots stay the same
+		BssidDictionary next_dict = new BssidDictionary(dict);
+		FingerprintTable next_table = new FingerprintTable(table, points, targets, next_dict);
+		IntBuffer[] buffers = next_table.getIntBuffers();
+		SpatialIndex next_index = new SpatialIndex(buffers[0], buffers[1]);
+
+		// changed points
+		boolean[] changed = new boolean[next_table.size()];
+		for (int j=0; j<targets.length; j++)
+			changed[targets[j]] = true;
+
+		// new points may enlarge the room
+		int[] next_border = border.clone();
+		for (int j=0; j<points.size(); j++){
+			next_border[0] = Math.min(next_border[0], points.get(j).getX());
+			next_border[1] = Math.max(next_border[1], points.get(j).getX());
+			next_border[2] = Math.min(next_border[2], points.get(j).getY());
+			next_border[3] = Math.max(next_border[3], points.get(j).getY());
+		}
+
+		ProfileCache next_cache = new ProfileCache(cache.getCapacity(), cache.getSegments());
+		long[] keys = new long[cache.getCapacity()];
+		Profile[] profiles = new Profile[cache.getCapacity()];
+		int count = cache.copyTo(keys, profiles);
+
+		for (int i=0; i<count; i++){
+
+			Point p = new Point((int) (keys[i] >> 32), (int) keys[i]);
+			int[] before = index.getNearestPoints(p);
+			int[] after = next_index.getNearestPoints(p);
+			boolean valid = true;
+
+			// indices of unchanged points are the same in both versions
+			for (int q=0; q<4; q++)
+				if ((after[q] != before[q]) || ((after[q] != SpatialIndex.NONE) && changed[after[q]]))
+					valid = false;
+
+			if (valid)
+				next_cache.put(p.getX(), p.getY(), profiles[i]);
+		}
+
+		return new RadioMap(next_table, next_index, next_dict, next_border, next_cache, version + 1);
+	}
+
+
+	/**
+	 * Creates a map with the same measurements and version, but an own empty
+	 * cache; e.g. to size the cache for the filters, which share the map. 
+	 * Updates of the new map keep its cache-size. This map isn't changed.
+	 *
+	 * @param cache_size Number of interpolated profiles, which are cached
+	 * @param segments Number of independently locked parts of the cache
+	 * @return Map with the new cache
+	 */
+	public RadioMap withCache(int cache_size, int segments){
+		return new RadioMap(table, index, dict, border, new ProfileCache(cache_size, segments), version);
+	}
+
+
+	/**
+	 * Interpolates a position from the measurements of the map. Profiles are
+	 * taken from the cache, if the position was already interpolated.
+	 *
+	 * @param x x-coordinate of the particle
+	 * @param y y-coordinate of the particle
+	 * @return Profile with interpolated measures
+	 */
+	public Profile interpolate(int x, int y){
+
+		Profile profile = cache.get(x, y);
+
+		// position wasn't interpolated yet; two threads may do it both
+		if (profile == null){
+			profile = interpolateTable(x, y);
+			cache.put(x, y, profile);
+		}
+
+		return profile;
+	}
+
+
+	/**
+	 * Interpolates a position like {@link InterpolateParticle}, but on the
+	 * hotspot-ids of the table: each hotspot of the nearest points in all
+	 * four quadrants gets the mean of its signal-strengths.
+	 *
+	 * @param x x-coordinate of the particle
+	 * @param y y-coordinate of the particle
+	 * @return Profile with interpolated measures
+	 */
+	private Profile interpolateTable(int x, int y){
+
+		int[] nearest = index.getNearestPoints(new Point(x, y));
+
+		// number of measures of all neighbors
+		int total = 0;
+		for (int q=0; q<4; q++)
+			if (nearest[q] != SpatialIndex.NONE)
+				total = total + table.getEnd(nearest[q]) - table.getStart(nearest[q]);
+
+		// id in upper, rssi in lower 32 bits; sorting groups the hotspots
+		long[] packed = new long[total];
+		int n = 0;
+
+		for (int q=0; q<4; q++){
+
+			// no neighbor in this quadrant
+			if (nearest[q] == SpatialIndex.NONE)
+				continue;
+
+			for (int e=table.getStart(nearest[q]); e<table.getEnd(nearest[q]); e++)
+				packed[n++] = (((long) table.getId(e)) << 32) | (table.getRssi(e) & 0xffffffffL);
+		}
+
+		Arrays.sort(packed);
+
+		// number of different hotspots
+		int m = 0;
+		for (int i=0; i<n; i++)
+			if ((i == 0) || ((packed[i] >>> 32) != (packed[i - 1] >>> 32)))
+				m++;
+
+		int[] ids = new int[m];
+		int[] rssi = new int[m];
+		int k = -1;
+		int count = 0;
+		double sum = 0;
+
+		for (int i=0; i<n; i++){
+
+			int id = (int) (packed[i] >>> 32);
+
+			// next hotspot; mean of the last one is complete
+			if ((k < 0) || (ids[k] != id)){
+				if (k >= 0)
+					rssi[k] = (int) (sum / count);
+				k++;
+				ids[k] = id;
+				sum = 0;
+				count = 0;
+			}
+
+			sum = sum + (int) packed[i];
+			count++;
+		}
+
+		if (k >= 0)
+			rssi[k] = (int) (sum / count);
+
+		return new Profile(ids, rssi, dict);
+	}
+
+
+	/**
+	 * Gets the measurements of the map. For a map from a file, the particles
+	 * are created on each access.
+	 *
+	 * @return Unmodifiable particle-list
+	 */
+	public List<Particle> getDatabase(){
+		return db_list;
+	}
+
+
+	/**
+	 * Gets the dilation of the room.
+	 *
+	 * @return Copy of the border-values; [xmin xmax ymin ymax]
+	 */
+	public int[] getBorder(){
+		return border.clone();
+	}
+
+
+	/**
+	 * Gets the index for neighbor-search.
+	 *
+	 * @return Spatial index over the measurements
+	 */
+	public SpatialIndex getIndex(){
+		return index;
+	}
+
+
+	/**
+	 * Gets the ids of all hotspots. The dictionary is shared and must not be
+	 * changed.
+	 *
+	 * @return Dictionary of the map
+	 */
+	public BssidDictionary getDictionary(){
+		return dict;
+	}
+
+
+	/**
+	 * Gets the cache with interpolated profiles.
+	 *
+	 * @return Profile-cache of the map
+	 */
+	public ProfileCache getProfileCache(){
+		return cache;
+	}
+
+
+	/**
+	 * Gets the measurements by hotspot-id.
+	 *
+	 * @return Fingerprint-table of the map
+	 */
+	public FingerprintTable getTable(){
+		return table;
+	}
+
+
+	/**
+	 * Gets the version of the map.
+	 *
+	 * @return Number of updates since the first version
+	 */
+	public long getVersion(){
+		return version;
+	}
+
+
+	/**
+	 * Gets the number of measured points.
+	 *
+	 * @return Number of points
+	 */
+	public int size(){
+		return table.size();
+	}
+
+
+	/**
+	 * Searches for min/max-values in the database.
+	 *
+	 * @param list Particle-list with measurements from database
+	 * @return Array with border-values; [xmin xmax ymin ymax]
+	 */
+	private static int[] calcBorder(List<Particle> list){
+
+		// array with border-values; [xmin xmax ymin ymax]
+		int[] border = new int[]{Integer.MAX_VALUE, 0, Integer.MAX_VALUE, 0};
+
+		for (int i=0; i<list.size(); i++){
+
+			// get values from list
+			int x = list.get(i).getX();
+			int y = list.get(i).getY();
+
+			// xmin
+			if (x < border[0])
+				border[0] = x;
+			// xmax
+			if (x > border[1])
+				border[1] = x;
+			// ymin
+			if (y < border[2])
+				border[2] = y;
+			// ymax
+			if (y > border[3])
+				border[3] = y;
+		}
+
+		return border;
+	}
+
+
+	/**
+	 * Read-only particle-list over the table.
+	 */
+	private class TableList extends AbstractList<Particle> {
+
+		@Override
+		public Particle get(int i){
+			return table.getParticle(i, dict);
+		}
+
+		@Override
+		public int size(){
+			return table.size();
+		}
+	}
+}
@@ -0,0 +1,331 @@
+package lbs.wifiparticlefilter.filter;
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+
+/**
+ * Binary file-format for compiled radio-maps. The file contains the
+ * fingerprint-table, the hotspot-names, the border and the prebuilt grid of
+ * the spatial index. Opening a file maps it read-only into memory; the
+ * table and the grid are used directly from the mapping, so only the
+ * hotspot-names are loaded onto the heap.
+ * <p>
+ * Layout; all numbers are little-endian:
+ * <pre>
+ * int     magic 'WPRM', version
+ * int     points n, entries e, hotspots m
+ * int[4]  border; xmin xmax ymin ymax
+ * int[5]  grid; min_x min_y cell cols rows
+ * int[n]  x-coordinates
+ * int[n]  y-coordinates
+ * int[n+1] first entry of each point
+ * int[e]  hotspot-ids
+ * int[cols*rows+1] first entry of each cell
+ * int[n]  point-indices sorted by cell
+ * byte[e] signal-strengths; padded to 4 bytes
+ * m times short length & UTF-8 bytes of the BSSID
+ * </pre>
+ * Files are limited to 2 GB, because buffer-positions are int-values.
+ *
+ * @version 1.1
+ */
+public class RadioMapFile {
+
+
+	// first bytes of each file; "WPRM"
+	public static final int MAGIC = 0x4d525057;
+	// actual version of the format
+	public static final int VERSION = 1;
+	// number of ints in the header
+	private static final int HEADER_INTS = 14;
+
+
+	/**
+	 * Writes a radio-map into a file.
+	 *
+	 * @param map Radio-map
+	 * @param file Target file; an existing file is replaced
+	 * @throws IOException if the file can't be written
+	 */
+	public static void write(RadioMap map, File file) throws IOException {
+
+		FingerprintTable table = map.getTable();
+		SpatialIndex index = map.getIndex();
+		BssidDictionary dict = map.getDictionary();
+
+		int[] grid = index.getGrid();
+		int[] border = map.getBorder();
+		IntBuffer[] tables = table.getIntBuffers();
+		IntBuffer[] cells = index.getCellBuffers();
+
+		FileOutputStream out = new FileOutputStream(file);
+
+		try {
+
+			Writer w = new Writer(out.getChannel());
+
+			// header
+			w.putInt(MAGIC);
+			w.putInt(VERSION);
+			w.putInt(table.size());
+			w.putInt(table.entries());
+			w.putInt(dict.size());
+			for (int i=0; i<4; i++)
+				w.putInt(border[i]);
+			for (int i=0; i<5; i++)
+				w.putInt(grid[i]);
+
+			// table & grid
+			for (int i=0; i<tables.length; i++)
+				w.putInts(tables[i]);
+			for (int i=0; i<cells.length; i++)
+				w.putInts(cells[i]);
+
+			// signal-strengths; padded, so the names start aligned
+			ByteBuffer rssi = table.getRssiBuffer();
+			for (int i=0; i<rssi.limit(); i++)
+				w.putByte(rssi.get(i));
+			for (int i=rssi.limit(); i % 4 != 0; i++)
+				w.putByte((byte) 0);
+
+			// hotspot-names in order of their ids
+			for (int i=0; i<dict.size(); i++){
+
+				byte[] name = dict.getBssid(i).getBytes("UTF-8");
+
+				w.putShort((short) name.length);
+				for (int j=0; j<name.length; j++)
+					w.putByte(name[j]);
+			}
+
+			w.flush();
+
+		} finally {
+			out.close();
+		}
+	}
+
+
+	/**
+	 * Opens a radio-map file with the default cache-size.
+	 *
+	 * @param file Compiled radio-map
+	 * @return Radio-map over the mapped file
+	 * @throws IOException if the file can't be read or has a wrong format
+	 */
+	public static RadioMap open(File file) throws IOException {
+		return open(file, Filter.CACHE_SIZE);
+	}
+
+
+	/**
+	 * Opens a radio-map file. The file is mapped read-only and must not be
+	 * changed, while the map is used.
+	 *
+	 * @param file Compiled radio-map
+	 * @param cache_size Number of interpolated profiles, which are cached
+	 * @return Radio-map over the mapped file
+	 * @throws IOException if the file can't be read or has a wrong format
+	 */
+	public static RadioMap open(File file, int cache_size) throws IOException {
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer buf;
+
+		try {
+			// positions of a buffer are int-values
+			if (raf.length() > Integer.MAX_VALUE)
+				throw new IOException(file + ": file is larger than 2 GB");
+
+			// mapping stays valid after the file is closed
+			buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();
+		}
+
+		buf.order(ByteOrder.LITTLE_ENDIAN);
+
+		if ((buf.limit() < HEADER_INTS * 4) || (buf.getInt(0) != MAGIC))
+			throw new IOException(file + ": not a radio-map file");
+		if (buf.getInt(4) != VERSION)
+			throw new IOException(file + ": unsupported version " + buf.getInt(4));
+
+		int n = buf.getInt(8);
+		int e = buf.getInt(12);
+		int m = buf.getInt(16);
+
+		int[] border = new int[4];
+		for (int i=0; i<4; i++)
+			border[i] = buf.getInt(20 + 4 * i);
+
+		int[] grid = new int[5];
+		for (int i=0; i<5; i++)
+			grid[i] = buf.getInt(36 + 4 * i);
+
+		// a broken header must not overflow the sizes below
+		if ((n < 0) || (e < 0) || (m < 0) || (grid[2] <= 0) || (grid[3] < 0) || (grid[4] < 0))
+			throw new IOException(file + ": invalid header");
+
+		long cells = (long) grid[3] * grid[4];
+
+		// sections in order of the file
+		long pos = HEADER_INTS * 4;
+		long size = pos + 4L * ((long) n + n + ((long) n + 1) + e + (cells + 1) + n) + (((long) e + 3) & ~3L);
+		if (size > buf.limit())
+			throw new IOException(file + ": file is truncated");
+
+		IntBuffer xs = ints(buf, pos, n);
+		pos += 4L * n;
+		IntBuffer ys = ints(buf, pos, n);
+		pos += 4L * n;
+		IntBuffer start = ints(buf, pos, n + 1);
+		pos += 4L * (n + 1);
+		IntBuffer ids = ints(buf, pos, e);
+		pos += 4L * e;
+		IntBuffer cell_start = ints(buf, pos, (int) cells + 1);
+		pos += 4L * (cells + 1);
+		IntBuffer cell_items = ints(buf, pos, n);
+		pos += 4L * n;
+		ByteBuffer rssi = bytes(buf, pos, e);
+		pos += (e + 3) & ~3;
+
+		// references between the sections must stay inside them
+		checkRange(file, "measure-start", start, 0, e);
+		checkOrder(file, "measure-start", start);
+		checkRange(file, "hotspot-id", ids, 0, m - 1);
+		checkRange(file, "cell-start", cell_start, 0, n);
+		checkOrder(file, "cell-start", cell_start);
+		checkRange(file, "cell-item", cell_items, 0, n - 1);
+
+		// hotspot-names; ids are given by the order
+		BssidDictionary dict = new BssidDictionary();
+
+		for (int i=0; i<m; i++){
+
+			if (pos + 2 > buf.limit())
+				throw new IOException(file + ": file is truncated");
+
+			int length = buf.getShort((int) pos) & 0xffff;
+			pos += 2;
+
+			if (pos + length > buf.limit())
+				throw new IOException(file + ": file is truncated");
+
+			byte[] name = new byte[length];
+			for (int j=0; j<length; j++)
+				name[j] = buf.get((int) pos + j);
+			pos += length;
+
+			if (dict.intern(new String(name, "UTF-8")) != i)
+				throw new IOException(file + ": hotspot " + i + " is not unique");
+		}
+
+		FingerprintTable table = new FingerprintTable(xs, ys, start, ids, rssi);
+		SpatialIndex index = new SpatialIndex(xs, ys, grid, cell_start, cell_items);
+
+		return new RadioMap(table, index, dict, border, cache_size);
+	}
+
+
+	/**
+	 * Checks, that all values of a section are inside a range.
+	 *
+	 * @throws IOException if a value is outside
+	 */
+	private static void checkRange(File file, String section, IntBuffer values, int min, int max) throws IOException {
+
+		for (int i=0; i<values.limit(); i++)
+			if ((values.get(i) < min) || (values.get(i) > max))
+				throw new IOException(file + ": " + section + " " + i + " out of range: " + values.get(i));
+	}
+
+
+	/**
+	 * Checks, that the offsets of a section don't decrease.
+	 *
+	 * @throws IOException if an offset is smaller than its predecessor
+	 */
+	private static void checkOrder(File file, String section, IntBuffer offsets) throws IOException {
+
+		for (int i=1; i<offsets.limit(); i++)
+			if (offsets.get(i) < offsets.get(i - 1))
+				throw new IOException(file + ": " + section + " " + i + " decreases");
+	}
+
+
+	/**
+	 * Creates an int-view of a section.
+	 */
+	private static IntBuffer ints(ByteBuffer buf, long pos, int count){
+		return bytes(buf, pos, 4 * count).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+	}
+
+
+	/**
+	 * Creates a byte-view of a section.
+	 */
+	private static ByteBuffer bytes(ByteBuffer buf, long pos, int count){
+
+		ByteBuffer dup = buf.duplicate();
+		dup.position((int) pos);
+		dup.limit((int) pos + count);
+
+		return dup.slice();
+	}
+
+
+	/**
+	 * Buffered little-endian output into a channel.
+	 */
+	private static class Writer {
+
+		private final FileChannel channel;
+		private final ByteBuffer buf = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+		Writer(FileChannel channel){
+			this.channel = channel;
+		}
+
+		void putInt(int v) throws IOException {
+			ensure(4);
+			buf.putInt(v);
+		}
+
+		void putShort(short v) throws IOException {
+			ensure(2);
+			buf.putShort(v);
+		}
+
+		void putByte(byte v) throws IOException {
+			ensure(1);
+			buf.put(v);
+		}
+
+		void putInts(IntBuffer src) throws IOException {
+			for (int i=0; i<src.limit(); i++)
+				putInt(src.get(i));
+		}
+
+		void flush() throws IOException {
+
+			buf.flip();
+			while (buf.hasRemaining())
+				channel.write(buf);
+			buf.clear();
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (buf.remaining() < bytes)
+				flush();
+		}
+	}
+}
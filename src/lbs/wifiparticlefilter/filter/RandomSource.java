@@ -0,0 +1,29 @@
+package lbs.wifiparticlefilter.filter;
+
+
+/**
+ * Source of random numbers for the filter. A source is used by one thread;
+ * independent streams for other threads or filters are created by split().
+ *
+ * @version 1.0
+ */
+public interface RandomSource {
+
+
+	/**
+	 * Gives back the next random number.
+	 *
+	 * @return Uniform random number in [0, 1)
+	 */
+	double nextDouble();
+
+
+	/**
+	 * Creates a new source, whose numbers are independent of this source. 
+	 * The new source is derived from this source, so a seeded source gives
+	 * the same split sources again.
+	 *
+	 * @return New random source
+	 */
+	RandomSource split();
+}
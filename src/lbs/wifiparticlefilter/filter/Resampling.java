@@ -0,0 +1,26 @@
+package lbs.wifiparticlefilter.filter;
+
+
+/**
+ * Strategies of the filter to create the particles of the next step.
+ *
+ * @version 1.0
+ */
+public enum Resampling {
+
+	
+	/**
+	 * Particles with more weight than the average are kept, all other 
+	 * particles are replaced by new particles on pseudo-random points near 
+	 * the mean position of the kept particles. Each new particle needs an 
+	 * interpolation.
+	 */
+	MEAN_THRESHOLD,
+
+	/**
+	 * Systematic (low-variance) resampling. Particles are drawn with one 
+	 * random offset and equal steps over the cumulative weights, so probable
+	 * particles are duplicated and their interpolated profiles are reused.
+	 */
+	SYSTEMATIC
+}
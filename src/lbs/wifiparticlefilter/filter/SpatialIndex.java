@@ -0,0 +1,358 @@
+package lbs.wifiparticlefilter.filter;
+
+
+import java.nio.IntBuffer;
+import java.util.List;
+
+import lbs.wifiparticlefilter.data.Particle;
+import lbs.wifiparticlefilter.data.Point;
+
+
+/**
+ * Uniform grid over all measured points of the database. The grid answers
+ * the question "nearest point in each quadrant" by searching outwards from
+ * the cell of the particle, so only the cells near the particle are visited
+ * instead of the whole database.
+ * <p>
+ * The grid is stored in buffers, so a prebuilt grid can be used directly
+ * from a memory-mapped file.
+ *
+ * @version 1.1
+ */
+public class SpatialIndex {
+
+
+	// escape-number, if there is no neighbor in a quadrant
+	public static final int NONE = Integer.MAX_VALUE;
+	// average number of points per cell
+	private static final int POINTS_PER_CELL = 2;
+
+	// coordinates of the points; index is the index in the database-list
+	private final IntBuffer xs;
+	private final IntBuffer ys;
+	// origin of the grid
+	private final int min_x;
+	private final int min_y;
+	// edge length of a cell
+	private final int cell;
+	// number of columns & rows
+	private final int cols;
+	private final int rows;
+	// first entry of each cell in cell_items; length is cols * rows + 1
+	private final IntBuffer cell_start;
+	// database-indices sorted by cell
+	private final IntBuffer cell_items;
+
+
+	/**
+	 * C'tor; builds the grid over all points of the list.
+	 *
+	 * @param list Particle-list with measurements from database
+	 */
+	public SpatialIndex(List<Particle> list){
+		this(coordinates(list, true), coordinates(list, false));
+	}
+
+
+	/**
+	 * C'tor; builds the grid over points given by their coordinates.
+	 *
+	 * @param xs x-coordinates of the points
+	 * @param ys y-coordinates of the points
+	 */
+	public SpatialIndex(IntBuffer xs, IntBuffer ys){
+
+		int n = xs.limit();
+
+		this.xs = xs;
+		this.ys = ys;
+
+		int xmin = Integer.MAX_VALUE;
+		int xmax = Integer.MIN_VALUE;
+		int ymin = Integer.MAX_VALUE;
+		int ymax = Integer.MIN_VALUE;
+
+		// calc dilation
+		for (int i=0; i<n; i++){
+
+			int x = xs.get(i);
+			int y = ys.get(i);
+
+			if (x < xmin)
+				xmin = x;
+			if (x > xmax)
+				xmax = x;
+			if (y < ymin)
+				ymin = y;
+			if (y > ymax)
+				ymax = y;
+		}
+
+		// empty database; one empty cell
+		if (n == 0){
+			xmin = xmax = ymin = ymax = 0;
+		}
+
+		long width = (long) xmax - xmin + 1;
+		long height = (long) ymax - ymin + 1;
+
+		// edge length so that a cell contains a few points on average
+		double area = (double) width * height * POINTS_PER_CELL / Math.max(n, 1);
+		int c = (int) Math.ceil(Math.sqrt(area));
+
+		min_x = xmin;
+		min_y = ymin;
+		cell = Math.max(c, 1);
+		cols = (int) ((width + cell - 1) / cell);
+		rows = (int) ((height + cell - 1) / cell);
+
+		// count points per cell
+		int[] starts = new int[cols * rows + 1];
+		for (int i=0; i<n; i++)
+			starts[cellOf(xs.get(i), ys.get(i)) + 1]++;
+
+		// prefix-sum gives first entry of each cell
+		for (int i=0; i<cols * rows; i++)
+			starts[i + 1] += starts[i];
+
+		// sort indices into their cells
+		int[] items = new int[n];
+		int[] fill = new int[cols * rows];
+		for (int i=0; i<n; i++){
+
+			int k = cellOf(xs.get(i), ys.get(i));
+			items[starts[k] + fill[k]] = i;
+			fill[k]++;
+		}
+
+		cell_start = IntBuffer.wrap(starts);
+		cell_items = IntBuffer.wrap(items);
+	}
+
+
+	/**
+	 * C'tor; uses a prebuilt grid. Buffers are used from index 0 and must
+	 * not be changed.
+	 *
+	 * @param xs x-coordinates of the points
+	 * @param ys y-coordinates of the points
+	 * @param grid Origin, cell-size & dimension; [min_x min_y cell cols rows]
+	 * @param cell_start First entry of each cell; length is cols * rows + 1
+	 * @param cell_items Point-indices sorted by cell
+	 */
+	public SpatialIndex(IntBuffer xs, IntBuffer ys, int[] grid, IntBuffer cell_start, IntBuffer cell_items){
+
+		this.xs = xs;
+		this.ys = ys;
+		min_x = grid[0];
+		min_y = grid[1];
+		cell = grid[2];
+		cols = grid[3];
+		rows = grid[4];
+		this.cell_start = cell_start;
+		this.cell_items = cell_items;
+	}
+
+
+	/**
+	 * Gives back the database-indices of the nearest points in all four
+	 * quadrants around the point. Quadrants are defined like
+	 * {@link Point#quad1st(Point)} to {@link Point#quad4th(Point)}. If a
+	 * quadrant is empty, {@link #NONE} will be returned for it.
+	 *
+	 * @param p Point, whose neighbors we are looking for
+	 * @return Array with indices of the nearest points; [q1 q2 q3 q4]
+	 */
+	public int[] getNearestPoints(Point p){
+
+		int[] nearest = new int[4];
+
+		nearest[0] = nearestInQuadrant(p.getX(), p.getY(), 1, 1);
+		nearest[1] = nearestInQuadrant(p.getX(), p.getY(), -1, 1);
+		nearest[2] = nearestInQuadrant(p.getX(), p.getY(), -1, -1);
+		nearest[3] = nearestInQuadrant(p.getX(), p.getY(), 1, -1);
+
+		return nearest;
+	}
+
+
+	/**
+	 * Gives back the number of points in the index.
+	 *
+	 * @return Number of points
+	 */
+	public int size(){
+		return xs.limit();
+	}
+
+
+	/**
+	 * Gets the parameters of the grid; used to write the grid into a file.
+	 *
+	 * @return Origin, cell-size & dimension; [min_x min_y cell cols rows]
+	 */
+	int[] getGrid(){
+		return new int[]{min_x, min_y, cell, cols, rows};
+	}
+
+
+	/**
+	 * Gets the buffers of the grid; used to write the grid into a file.
+	 *
+	 * @return Buffers; [cell_start cell_items]
+	 */
+	IntBuffer[] getCellBuffers(){
+		return new IntBuffer[]{cell_start.duplicate(), cell_items.duplicate()};
+	}
+
+
+	/**
+	 * Searches the nearest point in one quadrant. Cells are visited ring by
+	 * ring, starting at the cell of the point; the search stops, if no point
+	 * of the next ring can be nearer than the best point so far.
+	 *
+	 * @param x x-coordinate of the point
+	 * @param y y-coordinate of the point
+	 * @param sx direction of the quadrant in x; 1 or -1
+	 * @param sy direction of the quadrant in y; 1 or -1
+	 * @return Index of the nearest point or NONE
+	 */
+	private int nearestInQuadrant(int x, int y, int sx, int sy){
+
+		// cell of the point; may be outside the grid
+		int cx = floorDiv(x - min_x, cell);
+		int cy = floorDiv(y - min_y, cell);
+
+		// range of ring-offsets inside the grid in x- & y-direction
+		int i_lo = (sx > 0) ? Math.max(0, -cx) : Math.max(0, cx - (cols - 1));
+		int i_hi = (sx > 0) ? cols - 1 - cx : cx;
+		int j_lo = (sy > 0) ? Math.max(0, -cy) : Math.max(0, cy - (rows - 1));
+		int j_hi = (sy > 0) ? rows - 1 - cy : cy;
+
+		// quadrant lies outside the grid
+		if ((i_hi < i_lo) || (j_hi < j_lo))
+			return NONE;
+
+		int best = NONE;
+		long best_dist = Long.MAX_VALUE;
+
+		int r_max = Math.max(i_hi, j_hi);
+
+		for (int r=Math.max(i_lo, j_lo); r<=r_max; r++){
+
+			// nearest possible distance of a point in this ring
+			if (r > 0){
+				long bound = (long) (r - 1) * cell;
+				if (best_dist < bound * bound)
+					break;
+			}
+
+			// column i = r, all rows up to r
+			if (r <= i_hi){
+				for (int j=j_lo; j<=Math.min(r, j_hi); j++){
+
+					int k = (cy + sy * j) * cols + (cx + sx * r);
+
+					for (int e=cell_start.get(k); e<cell_start.get(k + 1); e++){
+
+						int idx = cell_items.get(e);
+						long dist = distance(x, y, idx, sx, sy);
+
+						// point lies in another quadrant
+						if (dist == Long.MAX_VALUE)
+							continue;
+
+						if ((dist < best_dist) || (dist == best_dist && idx < best)){
+							best_dist = dist;
+							best = idx;
+						}
+					}
+				}
+			}
+
+			// row j = r, all columns below r
+			if (r <= j_hi){
+				for (int i=i_lo; i<=Math.min(r - 1, i_hi); i++){
+
+					int k = (cy + sy * r) * cols + (cx + sx * i);
+
+					for (int e=cell_start.get(k); e<cell_start.get(k + 1); e++){
+
+						int idx = cell_items.get(e);
+						long dist = distance(x, y, idx, sx, sy);
+
+						// point lies in another quadrant
+						if (dist == Long.MAX_VALUE)
+							continue;
+
+						if ((dist < best_dist) || (dist == best_dist && idx < best)){
+							best_dist = dist;
+							best = idx;
+						}
+					}
+				}
+			}
+		}
+
+		return best;
+	}
+
+
+	/**
+	 * Calculates the squared distance to a point from the database, if the
+	 * point lies in the quadrant.
+	 *
+	 * @return Squared distance or Long.MAX_VALUE, if point is not in quadrant
+	 */
+	private long distance(int x, int y, int idx, int sx, int sy){
+
+		long dx = (long) xs.get(idx) - x;
+		long dy = (long) ys.get(idx) - y;
+
+		// point lies in another quadrant
+		if ((dx * sx < 0) || (dy * sy < 0))
+			return Long.MAX_VALUE;
+
+		return dx * dx + dy * dy;
+	}
+
+
+	/**
+	 * Gives back the cell of a point inside the grid.
+	 *
+	 * @return Index of the cell
+	 */
+	private int cellOf(int x, int y){
+		return ((y - min_y) / cell) * cols + (x - min_x) / cell;
+	}
+
+
+	/**
+	 * Copies the x- or y-coordinates of all points of a list.
+	 */
+	private static IntBuffer coordinates(List<Particle> list, boolean x){
+
+		int[] c = new int[list.size()];
+
+		for (int i=0; i<c.length; i++){
+			Point p = list.get(i).getPoint();
+			c[i] = x ? p.getX() : p.getY();
+		}
+
+		return IntBuffer.wrap(c);
+	}
+
+
+	/**
+	 * Division which rounds towards negative infinity.
+	 */
+	private static int floorDiv(int a, int b){
+
+		int q = a / b;
+
+		if ((a % b != 0) && (a < 0))
+			q--;
+
+		return q;
+	}
+}
@@ -0,0 +1,125 @@
+package lbs.wifiparticlefilter.filter;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Random source after the SplitMix64-algorithm, the generator behind
+ * java.util.SplittableRandom. The state is one long-value and not shared,
+ * so each filter or thread can use its own source without locking. With a
+ * fixed seed, the numbers are the same in each run.
+ *
+ * @version 1.0
+ */
+public class SplitMixRandom implements RandomSource {
+
+
+	// odd increment of the golden ratio
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	// seeds for sources without an explicit seed
+	private static final AtomicLong SEEDER = new AtomicLong(mix64(System.currentTimeMillis()) ^ mix64(System.nanoTime()));
+
+	// state of the generator
+	private long seed;
+	// increment of the state; always odd
+	private final long gamma;
+
+
+	/**
+	 * C'tor; the seed is different for each source.
+	 */
+	public SplitMixRandom(){
+		this(SEEDER.getAndAdd(2 * GOLDEN_GAMMA), GOLDEN_GAMMA);
+	}
+
+
+	/**
+	 * C'tor; sources with the same seed give the same numbers.
+	 *
+	 * @param seed Initial seed
+	 */
+	public SplitMixRandom(long seed){
+		this(seed, GOLDEN_GAMMA);
+	}
+
+
+	/**
+	 * C'tor
+	 *
+	 * @param seed Initial seed
+	 * @param gamma Increment of the state; must be odd
+	 */
+	private SplitMixRandom(long seed, long gamma){
+
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+
+
+	/**
+	 * Gives back the next random number.
+	 *
+	 * @return Uniform random number in [0, 1)
+	 */
+	public double nextDouble(){
+
+		// upper 53 bits
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+
+	/**
+	 * Gives back the next random long-value.
+	 *
+	 * @return Uniform random long-value
+	 */
+	public long nextLong(){
+
+		seed = seed + gamma;
+
+		return mix64(seed);
+	}
+
+
+	/**
+	 * Creates a new source with own seed and increment.
+	 *
+	 * @return New random source
+	 */
+	public RandomSource split(){
+
+		long s = nextLong();
+		seed = seed + gamma;
+
+		return new SplitMixRandom(s, mixGamma(seed));
+	}
+
+
+	/**
+	 * Mixes the bits of a state.
+	 */
+	private static long mix64(long z){
+
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+
+		return z ^ (z >>> 31);
+	}
+
+
+	/**
+	 * Creates an odd increment with enough changing bits.
+	 */
+	private static long mixGamma(long z){
+
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+
+		// too few bit-changes between neighbors
+		int n = Long.bitCount(z ^ (z >>> 1));
+
+		return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+}
@@ -0,0 +1,54 @@
+package lbs.wifiparticlefilter.metrics;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Lock-free counter, e.g. for processed steps or dropped scans.
+ *
+ * @version 1.0
+ */
+public class Counter {
+
+
+	// actual value
+	private final AtomicLong value = new AtomicLong();
+
+
+	/**
+	 * Adds one.
+	 */
+	public void increment(){
+		value.incrementAndGet();
+	}
+
+
+	/**
+	 * Adds a value.
+	 *
+	 * @param delta Value to add
+	 */
+	public void add(long delta){
+		value.addAndGet(delta);
+	}
+
+
+	/**
+	 * Gets the actual value.
+	 *
+	 * @return Value
+	 */
+	public long get(){
+		return value.get();
+	}
+
+
+	/**
+	 * Sets the value to zero. Values, which are added at the same time, may
+	 * be lost.
+	 */
+	public void reset(){
+		value.set(0);
+	}
+}
@@ -0,0 +1,119 @@
+package lbs.wifiparticlefilter.metrics;
+
+
+/**
+ * Metrics of the filter-steps. The metrics are looked up once in the
+ * registry, so many filters can share one instance and record at the same
+ * time without locks. Times are in nanoseconds, the other histograms hold
+ * values per step.
+ *
+ * @version 1.1
+ */
+public class FilterMetrics {
+
+
+	// names in the registry
+	public static final String SCAN = "scan.acquire.ns";
+	public static final String MEASURE = "filter.measure.ns";
+	public static final String ESTIMATE = "filter.estimate.ns";
+	public static final String PROPAGATE = "filter.propagate.ns";
+	public static final String INTERPOLATIONS = "filter.interpolations";
+	public static final String REPLACED = "filter.replaced";
+	public static final String SCAN_HOTSPOTS_WEIGHTED = "filter.scan_hotspots_weighted";
+	public static final String ESS = "filter.ess";
+	public static final String STEPS = "filter.steps";
+	public static final String SCANS = "scan.count";
+
+	// time from the request of a scan to the results
+	private final LatencyHistogram scan;
+	// time of the stages of a step
+	private final LatencyHistogram measure;
+	private final LatencyHistogram estimate;
+	private final LatencyHistogram propagate;
+	// profiles taken from the radio-map per step
+	private final LatencyHistogram interpolations;
+	// particles, which were not kept by the resampling
+	private final LatencyHistogram replaced;
+	// hotspots of the scan, which were weighted, times the particles; the
+	// hotspots of the particle-profiles, which the merge-join passes, aren't counted
+	private final LatencyHistogram scan_hotspots_weighted;
+	// effective sample size after the weighting
+	private final LatencyHistogram ess;
+	// totals
+	private final Counter steps;
+	private final Counter scans;
+
+
+	/**
+	 * C'tor; creates the metrics in the registry.
+	 *
+	 * @param registry Registry for the metrics
+	 */
+	public FilterMetrics(MetricsRegistry registry){
+
+		scan = registry.histogram(SCAN);
+		measure = registry.histogram(MEASURE);
+		estimate = registry.histogram(ESTIMATE);
+		propagate = registry.histogram(PROPAGATE);
+		interpolations = registry.histogram(INTERPOLATIONS);
+		replaced = registry.histogram(REPLACED);
+		scan_hotspots_weighted = registry.histogram(SCAN_HOTSPOTS_WEIGHTED);
+		ess = registry.histogram(ESS);
+		steps = registry.counter(STEPS);
+		scans = registry.counter(SCANS);
+	}
+
+
+	/**
+	 * Records the acquisition of a scan.
+	 *
+	 * @param nanos Time from the request to the results
+	 */
+	public void recordScan(long nanos){
+
+		scan.record(nanos);
+		scans.increment();
+	}
+
+
+	/**
+	 * Records the encoding of a measurement.
+	 *
+	 * @param nanos Time of the stage
+	 */
+	public void recordMeasure(long nanos){
+		measure.record(nanos);
+	}
+
+
+	/**
+	 * Records the weighting of the particles.
+	 *
+	 * @param nanos Time of the stage
+	 * @param weighted Hotspots of the scan, which were weighted, times the
+	 * number of particles; only the changed hotspots of an incremental step
+	 * @param sample_size Effective sample size of the weights
+	 */
+	public void recordEstimate(long nanos, long weighted, double sample_size){
+
+		estimate.record(nanos);
+		scan_hotspots_weighted.record(weighted);
+		ess.record(Math.round(sample_size));
+	}
+
+
+	/**
+	 * Records the resampling; ends a step.
+	 *
+	 * @param nanos Time of the stage
+	 * @param replaced_particles Number of particles, which were not kept
+	 * @param interpolated Number of interpolated profiles since the last step
+	 */
+	public void recordPropagate(long nanos, long replaced_particles, long interpolated){
+
+		propagate.record(nanos);
+		replaced.record(replaced_particles);
+		interpolations.record(interpolated);
+		steps.increment();
+	}
+}
@@ -0,0 +1,115 @@
+package lbs.wifiparticlefilter.metrics;
+
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * Exports the metrics as one json-object per export, e.g. for a collector
+ * on a server:
+ * <pre>{"time":..,"counters":{"name":value,..},
+ * "histograms":{"name":{"count":..,"mean":..,"min":..,"p50":..,"p90":..,"p99":..,"max":..},..}}</pre>
+ *
+ * @version 1.0
+ */
+public class JsonExporter implements MetricsExporter {
+
+
+	// target of the objects
+	private final PrintStream out;
+
+
+	/**
+	 * C'tor
+	 *
+	 * @param out Target of the objects; one line per export
+	 */
+	public JsonExporter(PrintStream out){
+		this.out = out;
+	}
+
+
+	/**
+	 * Prints the metrics as one line.
+	 *
+	 * @param registry Registry with the metrics
+	 */
+	public void export(MetricsRegistry registry){
+
+		out.println(format(registry));
+		out.flush();
+	}
+
+
+	/**
+	 * Formats all metrics as json-object.
+	 *
+	 * @param registry Registry with the metrics
+	 * @return Json-object
+	 */
+	public static String format(MetricsRegistry registry){
+
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("{\"time\":").append(System.currentTimeMillis());
+
+		// counters
+		sb.append(",\"counters\":{");
+		boolean first = true;
+		for (Map.Entry<String,Long> e : registry.getCounters().entrySet()){
+
+			if (!first)
+				sb.append(',');
+			first = false;
+
+			appendString(sb, e.getKey());
+			sb.append(':').append(e.getValue());
+		}
+
+		// histograms
+		sb.append("},\"histograms\":{");
+		first = true;
+		for (Map.Entry<String,LatencyHistogram> e : registry.getHistograms().entrySet()){
+
+			if (!first)
+				sb.append(',');
+			first = false;
+
+			LatencyHistogram h = e.getValue();
+
+			appendString(sb, e.getKey());
+			sb.append(String.format(Locale.US, ":{\"count\":%d,\"mean\":%.1f,\"min\":%d,\"p50\":%d,\"p90\":%d,\"p99\":%d,\"max\":%d}",
+					h.getCount(), h.getMean(), h.getMin(), h.getPercentile(0.5),
+					h.getPercentile(0.9), h.getPercentile(0.99), h.getMax()));
+		}
+
+		sb.append("}}");
+
+		return sb.toString();
+	}
+
+
+	/**
+	 * Appends a quoted json-string.
+	 */
+	private static void appendString(StringBuilder sb, String s){
+
+		sb.append('"');
+
+		for (int i=0; i<s.length(); i++){
+
+			char c = s.charAt(i);
+
+			if ((c == '"') || (c == '\\'))
+				sb.append('\\').append(c);
+			else if (c < 0x20)
+				sb.append(String.format("\\u%04x", (int) c));
+			else
+				sb.append(c);
+		}
+
+		sb.append('"');
+	}
+}
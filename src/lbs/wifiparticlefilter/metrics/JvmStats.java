@@ -0,0 +1,155 @@
+package lbs.wifiparticlefilter.metrics;
+
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+
+/**
+ * Reads allocation- and gc-counters of the virtual machine. The management
+ * beans are loaded by reflection, because they don't exist on Android; there
+ * all values are -1.
+ *
+ * @version 1.0
+ */
+public class JvmStats {
+
+
+	// escape-number, if a counter is not available
+	public static final long UNAVAILABLE = -1;
+
+	// thread-bean and its method for allocated bytes; null if not available
+	private final Object thread_bean;
+	private final Method allocated_bytes;
+	// gc-beans and their methods; null if not available
+	private final List<?> gc_beans;
+	private final Method gc_count;
+	private final Method gc_time;
+
+
+	/**
+	 * C'tor; looks for the management beans.
+	 */
+	public JvmStats(){
+
+		Object tb = null;
+		Method ab = null;
+		List<?> gb = null;
+		Method gc = null;
+		Method gt = null;
+
+		try {
+
+			Class<?> factory = Class.forName("java.lang.management.ManagementFactory");
+
+			// allocated bytes per thread; only in the extended thread-bean
+			try {
+				Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+				Object bean = factory.getMethod("getThreadMXBean").invoke(null);
+
+				if (type.isInstance(bean)){
+					ab = type.getMethod("getThreadAllocatedBytes", long.class);
+					tb = bean;
+				}
+			} catch (Exception e){
+				ab = null;
+				tb = null;
+			}
+
+			// collections & time of all collectors
+			Class<?> type = Class.forName("java.lang.management.GarbageCollectorMXBean");
+			gb = (List<?>) factory.getMethod("getGarbageCollectorMXBeans").invoke(null);
+			gc = type.getMethod("getCollectionCount");
+			gt = type.getMethod("getCollectionTime");
+
+		} catch (Exception e){
+
+			// no management beans; e.g. on Android
+			gb = null;
+		}
+
+		thread_bean = tb;
+		allocated_bytes = ab;
+		gc_beans = gb;
+		gc_count = gc;
+		gc_time = gt;
+	}
+
+
+	/**
+	 * Gets the bytes, which the calling thread has allocated so far.
+	 *
+	 * @return Allocated bytes or UNAVAILABLE
+	 */
+	public long getAllocatedBytes(){
+
+		if (allocated_bytes == null)
+			return UNAVAILABLE;
+
+		try {
+			return ((Long) allocated_bytes.invoke(thread_bean, Thread.currentThread().getId())).longValue();
+		} catch (Exception e){
+			return UNAVAILABLE;
+		}
+	}
+
+
+	/**
+	 * Gets the number of garbage-collections of all collectors so far.
+	 *
+	 * @return Number of collections or UNAVAILABLE
+	 */
+	public long getGcCount(){
+		return sumGc(gc_count);
+	}
+
+
+	/**
+	 * Gets the time of all garbage-collections so far.
+	 *
+	 * @return Accumulated time in milliseconds or UNAVAILABLE
+	 */
+	public long getGcTime(){
+		return sumGc(gc_time);
+	}
+
+
+	/**
+	 * Gets the used heap-memory.
+	 *
+	 * @return Used memory in bytes
+	 */
+	public long getUsedMemory(){
+
+		Runtime rt = Runtime.getRuntime();
+
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+
+	/**
+	 * Sums a counter over all gc-beans.
+	 */
+	private long sumGc(Method method){
+
+		if (gc_beans == null)
+			return UNAVAILABLE;
+
+		long sum = 0;
+
+		try {
+			for (int i=0; i<gc_beans.size(); i++){
+
+				long v = ((Long) method.invoke(gc_beans.get(i))).longValue();
+
+				// collector doesn't count
+				if (v > 0)
+					sum = sum + v;
+			}
+		} catch (Exception e){
+			return UNAVAILABLE;
+		}
+
+		return sum;
+	}
+}
@@ -0,0 +1,216 @@
+package lbs.wifiparticlefilter.metrics;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Lock-free histogram for latencies in nanoseconds. Buckets are linear
+ * within each power of two, so the relative error of a percentile is below
+ * 1/32 for the whole range of long-values. Recording needs no allocation
+ * and can be done by many threads at once.
+ *
+ * @version 1.0
+ */
+public class LatencyHistogram {
+
+
+	// bits of the linear part; 32 buckets per power of two
+	private static final int SUB_BITS = 5;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	// number of buckets for all positive long-values
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+	// number of values per bucket
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	// number & sum of all values
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	// largest & smallest value
+	private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+
+	/**
+	 * Records a value. Negative values are recorded as zero.
+	 *
+	 * @param nanos Latency in nanoseconds
+	 */
+	public void record(long nanos){
+
+		long v = Math.max(nanos, 0);
+
+		counts.incrementAndGet(bucketOf(v));
+		count.incrementAndGet();
+		sum.addAndGet(v);
+
+		// update extremes; retry, if another thread was faster
+		long m;
+		while (v > (m = max.get()) && !max.compareAndSet(m, v));
+		while (v < (m = min.get()) && !min.compareAndSet(m, v));
+	}
+
+
+	/**
+	 * Adds all values of another histogram.
+	 *
+	 * @param other Histogram with values
+	 */
+	public void add(LatencyHistogram other){
+
+		for (int i=0; i<BUCKETS; i++){
+			long c = other.counts.get(i);
+			if (c != 0)
+				counts.addAndGet(i, c);
+		}
+
+		count.addAndGet(other.count.get());
+		sum.addAndGet(other.sum.get());
+
+		long m;
+		long v = other.max.get();
+		while (v > (m = max.get()) && !max.compareAndSet(m, v));
+		v = other.min.get();
+		while (v < (m = min.get()) && !min.compareAndSet(m, v));
+	}
+
+
+	/**
+	 * Removes all values. Values, which are recorded at the same time, may
+	 * be lost.
+	 */
+	public void reset(){
+
+		for (int i=0; i<BUCKETS; i++)
+			counts.set(i, 0);
+
+		count.set(0);
+		sum.set(0);
+		max.set(Long.MIN_VALUE);
+		min.set(Long.MAX_VALUE);
+	}
+
+
+	/**
+	 * Gets the value, which is not exceeded by a fraction of all values. The
+	 * upper bound of the bucket is returned, so the percentile is never
+	 * underestimated.
+	 *
+	 * @param fraction Fraction between 0 and 1; e.g. 0.99 for p99
+	 * @return Percentile in nanoseconds or 0, if there are no values
+	 */
+	public long getPercentile(double fraction){
+
+		// total of the buckets; count may be ahead while recording
+		long total = 0;
+		for (int i=0; i<BUCKETS; i++)
+			total = total + counts.get(i);
+
+		if (total == 0)
+			return 0;
+
+		// rank of the value; at least the first value
+		long rank = Math.max(1, (long) Math.ceil(fraction * total));
+		long seen = 0;
+
+		for (int i=0; i<BUCKETS; i++){
+
+			seen = seen + counts.get(i);
+
+			if (seen >= rank)
+				return Math.min(upperBound(i), getMax());
+		}
+
+		return getMax();
+	}
+
+
+	/**
+	 * Gets the number of values.
+	 *
+	 * @return Number of values
+	 */
+	public long getCount(){
+		return count.get();
+	}
+
+
+	/**
+	 * Gets the mean of all values.
+	 *
+	 * @return Mean in nanoseconds or 0, if there are no values
+	 */
+	public double getMean(){
+
+		long n = count.get();
+
+		return (n > 0) ? (double) sum.get() / n : 0;
+	}
+
+
+	/**
+	 * Gets the largest value.
+	 *
+	 * @return Maximum in nanoseconds or 0, if there are no values
+	 */
+	public long getMax(){
+
+		long m = max.get();
+
+		return (m == Long.MIN_VALUE) ? 0 : m;
+	}
+
+
+	/**
+	 * Gets the smallest value.
+	 *
+	 * @return Minimum in nanoseconds or 0, if there are no values
+	 */
+	public long getMin(){
+
+		long m = min.get();
+
+		return (m == Long.MAX_VALUE) ? 0 : m;
+	}
+
+
+	/**
+	 * Gives back the bucket of a value.
+	 *
+	 * @param v Positive value
+	 * @return Index of the bucket
+	 */
+	static int bucketOf(long v){
+
+		// small values have their own bucket
+		if (v < SUB_COUNT)
+			return (int) v;
+
+		// position of the highest bit; at least SUB_BITS
+		int e = 63 - Long.numberOfLeadingZeros(v);
+		int m = (int) (v >>> (e - SUB_BITS)) & (SUB_COUNT - 1);
+
+		return (e - SUB_BITS + 1) * SUB_COUNT + m;
+	}
+
+
+	/**
+	 * Gives back the largest value of a bucket.
+	 *
+	 * @param bucket Index of the bucket
+	 * @return Upper bound
+	 */
+	static long upperBound(int bucket){
+
+		if (bucket < SUB_COUNT)
+			return bucket;
+
+		int e = bucket / SUB_COUNT + SUB_BITS - 1;
+		long m = bucket % SUB_COUNT;
+		long lower = (SUB_COUNT + m) << (e - SUB_BITS);
+
+		// highest bucket ends at Long.MAX_VALUE
+		return lower + ((1L << (e - SUB_BITS)) - 1);
+	}
+}
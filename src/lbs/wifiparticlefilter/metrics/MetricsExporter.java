@@ -0,0 +1,18 @@
+package lbs.wifiparticlefilter.metrics;
+
+
+/**
+ * Writes the metrics of a registry somewhere, e.g. to a log or a file.
+ *
+ * @version 1.0
+ */
+public interface MetricsExporter {
+
+
+	/**
+	 * Exports the actual values of all metrics.
+	 *
+	 * @param registry Registry with the metrics
+	 */
+	void export(MetricsRegistry registry);
+}
@@ -0,0 +1,135 @@
+package lbs.wifiparticlefilter.metrics;
+
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Named counters and histograms of one process. Metrics are created on the
+ * first request and live as long as the registry; the recording classes
+ * look them up once and keep them, so recording needs no lookup and no
+ * lock.
+ *
+ * @version 1.0
+ */
+public class MetricsRegistry {
+
+
+	// metrics by name
+	private final ConcurrentMap<String,Counter> counters = new ConcurrentHashMap<String,Counter>();
+	private final ConcurrentMap<String,LatencyHistogram> histograms = new ConcurrentHashMap<String,LatencyHistogram>();
+
+
+	/**
+	 * Gets a counter; a new counter is created, if the name is unknown.
+	 *
+	 * @param name Name of the counter
+	 * @return Counter
+	 */
+	public Counter counter(String name){
+
+		Counter c = counters.get(name);
+
+		if (c == null){
+
+			Counter fresh = new Counter();
+
+			// another thread may have created the counter in the meantime
+			c = counters.putIfAbsent(name, fresh);
+			if (c == null)
+				c = fresh;
+		}
+
+		return c;
+	}
+
+
+	/**
+	 * Gets a histogram; a new histogram is created, if the name is unknown.
+	 *
+	 * @param name Name of the histogram
+	 * @return Histogram
+	 */
+	public LatencyHistogram histogram(String name){
+
+		LatencyHistogram h = histograms.get(name);
+
+		if (h == null){
+
+			LatencyHistogram fresh = new LatencyHistogram();
+
+			// another thread may have created the histogram in the meantime
+			h = histograms.putIfAbsent(name, fresh);
+			if (h == null)
+				h = fresh;
+		}
+
+		return h;
+	}
+
+
+	/**
+	 * Adds a histogram, which is recorded by another class, e.g. the latency
+	 * of a scan-pipeline. A histogram with the same name is replaced.
+	 *
+	 * @param name Name of the histogram
+	 * @param histogram Histogram
+	 */
+	public void register(String name, LatencyHistogram histogram){
+		histograms.put(name, histogram);
+	}
+
+
+	/**
+	 * Gets the values of all counters, sorted by name.
+	 *
+	 * @return Values by name
+	 */
+	public SortedMap<String,Long> getCounters(){
+
+		SortedMap<String,Long> values = new TreeMap<String,Long>();
+
+		for (Map.Entry<String,Counter> e : counters.entrySet())
+			values.put(e.getKey(), e.getValue().get());
+
+		return values;
+	}
+
+
+	/**
+	 * Gets all histograms, sorted by name. The histograms are not copied and
+	 * keep recording.
+	 *
+	 * @return Histograms by name
+	 */
+	public SortedMap<String,LatencyHistogram> getHistograms(){
+		return new TreeMap<String,LatencyHistogram>(histograms);
+	}
+
+
+	/**
+	 * Exports all metrics.
+	 *
+	 * @param exporter Exporter, e.g. for text or json
+	 */
+	public void export(MetricsExporter exporter){
+		exporter.export(this);
+	}
+
+
+	/**
+	 * Sets all metrics to zero, e.g. at the start of a measurement.
+	 */
+	public void reset(){
+
+		for (Counter c : counters.values())
+			c.reset();
+
+		for (LatencyHistogram h : histograms.values())
+			h.reset();
+	}
+}
@@ -0,0 +1,74 @@
+package lbs.wifiparticlefilter.metrics;
+
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * Exports the metrics as readable text with one line per metric:
+ * <pre>name value
+ *name count=.. mean=.. p50=.. p90=.. p99=.. max=..</pre>
+ *
+ * @version 1.0
+ */
+public class TextExporter implements MetricsExporter {
+
+
+	// target of the lines
+	private final PrintStream out;
+
+
+	/**
+	 * C'tor
+	 *
+	 * @param out Target of the lines, e.g. System.out
+	 */
+	public TextExporter(PrintStream out){
+		this.out = out;
+	}
+
+
+	/**
+	 * Prints one line per metric.
+	 *
+	 * @param registry Registry with the metrics
+	 */
+	public void export(MetricsRegistry registry){
+
+		for (String line : format(registry))
+			out.println(line);
+
+		out.flush();
+	}
+
+
+	/**
+	 * Formats all metrics; counters first, then histograms, each sorted by
+	 * name.
+	 *
+	 * @param registry Registry with the metrics
+	 * @return One line per metric
+	 */
+	public static List<String> format(MetricsRegistry registry){
+
+		List<String> lines = new ArrayList<String>();
+
+		for (Map.Entry<String,Long> e : registry.getCounters().entrySet())
+			lines.add(e.getKey() + " " + e.getValue());
+
+		for (Map.Entry<String,LatencyHistogram> e : registry.getHistograms().entrySet()){
+
+			LatencyHistogram h = e.getValue();
+
+			lines.add(String.format(Locale.US, "%s count=%d mean=%.1f p50=%d p90=%d p99=%d max=%d",
+					e.getKey(), h.getCount(), h.getMean(), h.getPercentile(0.5),
+					h.getPercentile(0.9), h.getPercentile(0.99), h.getMax()));
+		}
+
+		return lines;
+	}
+}
@@ -0,0 +1,183 @@
+package lbs.wifiparticlefilter.tools;
+
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import lbs.wifiparticlefilter.data.Point;
+import lbs.wifiparticlefilter.engine.FilterEngine;
+import lbs.wifiparticlefilter.filter.Filter;
+import lbs.wifiparticlefilter.filter.RadioMap;
+
+
+/**
+ * Command-line tool, which runs the filter over recorded scans without the
+ * Android-activities. Each device gets its own filter; devices are
+ * processed in parallel on all cores.
+ * <p>
+ * Usage:
+ * <pre>BatchPositioning radiomap.csv scans.csv estimates.csv [particles] [threads] [seed]</pre>
+ * The estimates are written as <code>timestamp,device,x,y</code>, grouped
+ * by device in the order of the scan-log. The radio-map may be a csv-file or
+ * a file compiled by {@link RadioMapTool}.
+ *
+ * @version 1.1
+ */
+public class BatchPositioning {
+
+
+	// default number of particles per device
+	public static final int DEFAULT_PARTICLES = 100;
+
+
+	/**
+	 * Runs the tool.
+	 *
+	 * @param args Command-line arguments
+	 * @throws Exception if a file can't be read or written
+	 */
+	public static void main(String[] args) throws Exception {
+
+		if (args.length < 3){
+			System.err.println("usage: BatchPositioning radiomap.csv scans.csv estimates.csv [particles] [threads] [seed]");
+			System.exit(1);
+		}
+
+		int particles = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_PARTICLES;
+		int threads = (args.length > 4) ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+		Long seed = (args.length > 5) ? Long.valueOf(args[5]) : null;
+
+		long start = System.nanoTime();
+
+		// profile-cache sized like in the engine; one device per thread at a time
+		RadioMap map = RadioMapTool.load(new File(args[0])).withCache(FilterEngine.PROFILES_PER_PARTICLE * particles * threads,
+				FilterEngine.SEGMENTS_PER_THREAD * threads);
+		Map<String,List<ScanLog.Scan>> devices = ScanLog.read(new File(args[1]));
+
+		long loaded = System.nanoTime();
+
+		Writer out = new BufferedWriter(new FileWriter(args[2]));
+		int scans = 0;
+
+		try {
+			scans = run(map, devices, particles, threads, seed, out);
+		} finally {
+			out.close();
+		}
+
+		long end = System.nanoTime();
+
+		System.err.println("points: " + map.size() + ", devices: " + devices.size() + ", scans: " + scans);
+		System.err.println("load: " + (loaded - start) / 1000000 + " ms, filter: " + (end - loaded) / 1000000 + " ms, "
+				+ Math.round(scans / ((end - loaded) / 1e9)) + " scans/s");
+	}
+
+
+	/**
+	 * Runs one filter per device and writes the estimates.
+	 *
+	 * @param map Radio-map for all devices
+	 * @param devices Scans by device-id
+	 * @param particles Number of particles per device
+	 * @param threads Number of threads
+	 * @param seed Seed for reproducible runs or null
+	 * @param out Writer for the estimates
+	 * @return Number of processed scans
+	 * @throws IOException if the estimates can't be written
+	 * @throws InterruptedException if the thread was interrupted
+	 */
+	public static int run(RadioMap map, Map<String,List<ScanLog.Scan>> devices, int particles,
+			int threads, Long seed, Writer out) throws IOException, InterruptedException {
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<String>> results = new ArrayList<Future<String>>();
+
+		try {
+
+			for (Map.Entry<String,List<ScanLog.Scan>> e : devices.entrySet())
+				results.add(executor.submit(new DeviceTask(map, e.getKey(), e.getValue(), particles, seed)));
+
+			// write in order of the devices; later devices may be finished already
+			for (int i=0; i<results.size(); i++){
+				try {
+					out.write(results.get(i).get());
+				} catch (ExecutionException e){
+					throw new IllegalStateException("device failed", e.getCause());
+				}
+			}
+
+		} finally {
+			executor.shutdownNow();
+		}
+
+		int scans = 0;
+		for (List<ScanLog.Scan> list : devices.values())
+			scans = scans + list.size();
+
+		return scans;
+	}
+
+
+	/**
+	 * Runs the filter of one device over all its scans.
+	 */
+	private static class DeviceTask implements Callable<String> {
+
+		private final RadioMap map;
+		private final String device;
+		private final List<ScanLog.Scan> scans;
+		private final int particles;
+		private final Long seed;
+
+		DeviceTask(RadioMap map, String device, List<ScanLog.Scan> scans, int particles, Long seed){
+
+			this.map = map;
+			this.device = device;
+			this.scans = scans;
+			this.particles = particles;
+			this.seed = seed;
+		}
+
+		public String call(){
+
+			Filter filter = new Filter(particles, map);
+
+			// same device & seed give the same estimates in each run
+			if (seed != null)
+				filter.setSeed(seed.longValue() ^ device.hashCode());
+
+			filter.initFilter();
+
+			StringBuilder sb = new StringBuilder();
+
+			for (int i=0; i<scans.size(); i++){
+
+				ScanLog.Scan scan = scans.get(i);
+
+				filter.setCurrentMeasure(scan.getMeasures());
+				filter.estimate();
+
+				// estimate by the weights of this scan
+				Point p = filter.getEstimate();
+
+				filter.propagate();
+
+				sb.append(scan.getTimestamp()).append(',').append(device).append(',')
+					.append(p.getX()).append(',').append(p.getY()).append('\n');
+			}
+
+			return sb.toString();
+		}
+	}
+}
@@ -0,0 +1,471 @@
+package lbs.wifiparticlefilter.tools;
+
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lbs.wifiparticlefilter.data.Measure;
+import lbs.wifiparticlefilter.data.Particle;
+import lbs.wifiparticlefilter.data.Point;
+import lbs.wifiparticlefilter.filter.Filter;
+import lbs.wifiparticlefilter.filter.InterpolateParticle;
+import lbs.wifiparticlefilter.filter.RadioMap;
+import lbs.wifiparticlefilter.filter.SplitMixRandom;
+import lbs.wifiparticlefilter.metrics.JvmStats;
+
+
+/**
+ * Micro-benchmarks for the filter-package. Each benchmark runs warmup- and
+ * measurement-iterations over synthetic data and reports operations per
+ * second and allocated bytes per operation. Data and filters are seeded, so
+ * two runs measure the same work.
+ * <p>
+ * Usage:
+ * <pre>FilterBenchmark [--bench name,...] [--points n,...] [--aps n,...]
+ *     [--particles n,...] [--scan n,...] [--warmup n] [--iterations n]
+ *     [--time ms] [--seed n]</pre>
+ * Benchmarks are interpolate, estimate, estimate-batch, propagate, init and
+ * group; estimate-batch weights with the likelihood-table. Each
+ * benchmark runs for all combinations of the parameters it depends on.
+ *
+ * @version 1.1
+ */
+public class FilterBenchmark {
+
+
+	// all benchmarks
+	public static final String[] BENCHMARKS = {"interpolate", "estimate", "estimate-batch", "propagate", "init", "group"};
+
+	// number of different scans per run
+	private static final int SCANS = 64;
+
+	// parameters
+	private int[] points = {100, 1000};
+	private int[] aps = {10, 40};
+	private int[] particles = {100, 1000};
+	private int[] scan_sizes = {10, 30};
+	private int warmup = 5;
+	private int iterations = 5;
+	private long time_ms = 1000;
+	private long seed = 42;
+
+	// allocation-counter of the thread
+	private final JvmStats jvm = new JvmStats();
+	// bytes, which reading the counter allocates
+	private long alloc_overhead = 0;
+	// results are written here, so the jit can't remove the work
+	private long sink = 0;
+
+
+	/**
+	 * One benchmark with fixed parameters. Only op is measured.
+	 */
+	private interface Bench {
+
+		/** Prepares the next operation; not measured. */
+		void setup();
+
+		/** Runs one operation. */
+		long op();
+	}
+
+
+	/**
+	 * Runs the benchmarks.
+	 *
+	 * @param args Command-line arguments
+	 */
+	public static void main(String[] args){
+
+		FilterBenchmark fb = new FilterBenchmark();
+		String[] names = BENCHMARKS;
+
+		for (int i=0; i + 1<args.length; i+=2){
+
+			String key = args[i];
+			String value = args[i + 1];
+
+			if (key.equals("--bench"))
+				names = value.split(",");
+			else if (key.equals("--points"))
+				fb.points = parseList(value);
+			else if (key.equals("--aps"))
+				fb.aps = parseList(value);
+			else if (key.equals("--particles"))
+				fb.particles = parseList(value);
+			else if (key.equals("--scan"))
+				fb.scan_sizes = parseList(value);
+			else if (key.equals("--warmup"))
+				fb.warmup = Integer.parseInt(value);
+			else if (key.equals("--iterations"))
+				fb.iterations = Integer.parseInt(value);
+			else if (key.equals("--time"))
+				fb.time_ms = Long.parseLong(value);
+			else if (key.equals("--seed"))
+				fb.seed = Long.parseLong(value);
+			else
+				throw new IllegalArgumentException("unknown option: " + key);
+		}
+
+		fb.run(names, System.out);
+	}
+
+
+	/**
+	 * Runs benchmarks for all combinations of their parameters.
+	 *
+	 * @param names Names of the benchmarks
+	 * @param out Output of the results
+	 */
+	public void run(String[] names, PrintStream out){
+
+		calibrate();
+
+		out.println("# benchmark points aps particles scan ops_per_s error_pct alloc_per_op");
+
+		for (int b=0; b<names.length; b++){
+
+			String name = names[b];
+
+			for (int p=0; p<points.length; p++)
+				for (int a=0; a<aps.length; a++){
+
+					// benchmarks without filter
+					if (name.equals("interpolate") || name.equals("group")){
+						measure(out, name, points[p], aps[a], 0, 0);
+						continue;
+					}
+
+					for (int n=0; n<particles.length; n++){
+
+						// only estimate depends on the scan
+						if (!name.startsWith("estimate")){
+							measure(out, name, points[p], aps[a], particles[n], 0);
+							continue;
+						}
+
+						for (int s=0; s<scan_sizes.length; s++)
+							measure(out, name, points[p], aps[a], particles[n], scan_sizes[s]);
+					}
+				}
+		}
+
+		// keeps the results alive
+		if (sink == 42)
+			out.println("#");
+	}
+
+
+	/**
+	 * Measures one benchmark with fixed parameters and writes the result.
+	 */
+	private void measure(PrintStream out, String name, int num_points, int num_aps, int num_part, int scan){
+
+		Bench bench = create(name, num_points, num_aps, num_part, scan);
+
+		// warmup; results are dropped
+		for (int i=0; i<warmup; i++)
+			iteration(bench, new long[2]);
+
+		double[] rates = new double[iterations];
+		long ops = 0;
+		long alloc = 0;
+
+		for (int i=0; i<iterations; i++){
+
+			long[] res = new long[2];
+			rates[i] = iteration(bench, res);
+			ops = ops + res[0];
+			alloc = alloc + res[1];
+		}
+
+		// mean & standard-deviation of the iterations
+		double mean = 0;
+		for (int i=0; i<rates.length; i++)
+			mean = mean + rates[i];
+		mean = mean / rates.length;
+
+		double var = 0;
+		for (int i=0; i<rates.length; i++)
+			var = var + (rates[i] - mean) * (rates[i] - mean);
+		double err = (rates.length > 1) ? Math.sqrt(var / (rates.length - 1)) / mean * 100 : 0;
+
+		// counter is exact only to some bytes; small negative values are zero
+		boolean known = jvm.getAllocatedBytes() != JvmStats.UNAVAILABLE;
+		String alloc_op = known ? String.valueOf(Math.max(0, alloc / ops)) : "-";
+
+		out.println(name + " " + num_points + " " + num_aps + " " + (num_part > 0 ? String.valueOf(num_part) : "-") + " "
+				+ (scan > 0 ? String.valueOf(scan) : "-") + " " + Math.round(mean) + " "
+				+ Math.round(err * 10) / 10.0 + " " + alloc_op);
+	}
+
+
+	/**
+	 * Runs operations for the iteration-time.
+	 *
+	 * @param bench Benchmark
+	 * @param res Gets number of operations & allocated bytes
+	 * @return Operations per second
+	 */
+	private double iteration(Bench bench, long[] res){
+
+		long ops = 0;
+		long nanos = 0;
+		long alloc = 0;
+		long limit = time_ms * 1000000L;
+
+		while (nanos < limit){
+
+			bench.setup();
+
+			long a0 = jvm.getAllocatedBytes();
+			long t0 = System.nanoTime();
+			sink += bench.op();
+			long t1 = System.nanoTime();
+			long a1 = jvm.getAllocatedBytes();
+
+			nanos = nanos + (t1 - t0);
+			alloc = alloc + (a1 - a0 - alloc_overhead);
+			ops++;
+		}
+
+		res[0] = ops;
+		res[1] = alloc;
+
+		return ops / (nanos / 1e9);
+	}
+
+
+	/**
+	 * Measures the bytes, which reading the allocation-counter allocates.
+	 */
+	private void calibrate(){
+
+		long min = Long.MAX_VALUE;
+
+		for (int i=0; i<10000; i++){
+			long a0 = jvm.getAllocatedBytes();
+			long a1 = jvm.getAllocatedBytes();
+			min = Math.min(min, a1 - a0);
+		}
+
+		alloc_overhead = Math.max(0, min);
+	}
+
+
+	/**
+	 * Creates a benchmark with fixed parameters.
+	 */
+	private Bench create(String name, int num_points, int num_aps, int num_part, int scan){
+
+		final SplitMixRandom random = new SplitMixRandom(seed);
+		final List<Particle> db = createDatabase(num_points, num_aps, random);
+
+		if (name.equals("group")){
+
+			// rows like they come from the database
+			final int rows = db.size() * num_aps;
+			final int[] xs = new int[rows];
+			final int[] ys = new int[rows];
+			final int[] rssi = new int[rows];
+			final String[] bssid = new String[rows];
+
+			int r = 0;
+			for (int i=0; i<db.size(); i++)
+				for (int j=0; j<db.get(i).getMeasure().size(); j++){
+					xs[r] = db.get(i).getX();
+					ys[r] = db.get(i).getY();
+					rssi[r] = db.get(i).getMeasure().get(j).getRssi();
+					bssid[r] = db.get(i).getMeasure().get(j).getBSSID();
+					r++;
+				}
+
+			final int n = r;
+
+			return new Bench() {
+				public void setup(){
+				}
+				public long op(){
+					return group(xs, ys, rssi, bssid, n).size();
+				}
+			};
+		}
+
+		final RadioMap map = new RadioMap(db);
+		final int[] border = map.getBorder();
+
+		if (name.equals("interpolate")){
+
+			return new Bench() {
+				Particle part;
+				public void setup(){
+					part = new Particle(randomPoint(border, random));
+				}
+				public long op(){
+					InterpolateParticle ip = new InterpolateParticle(part, map.getDatabase(), map.getIndex());
+					return ip.interpolatedParticle().getMeasure().size();
+				}
+			};
+		}
+
+		final Filter filter = new Filter(num_part, map);
+		filter.setSeed(seed);
+		filter.initFilter();
+
+		// scans at random positions
+		final List<List<Measure>> scans = new ArrayList<List<Measure>>();
+		for (int i=0; i<SCANS; i++)
+			scans.add(createScan(map, Math.max(scan, 1), random));
+
+		// same work as estimate; weights from the likelihood-table
+		if (name.equals("estimate-batch"))
+			filter.setBatchLikelihood(true);
+
+		if (name.startsWith("estimate")){
+
+			return new Bench() {
+				int k = 0;
+				public void setup(){
+					filter.setCurrentMeasure(scans.get(k++ % SCANS));
+				}
+				public long op(){
+					filter.estimate();
+					return filter.getParticleStore().size();
+				}
+			};
+		}
+
+		if (name.equals("propagate")){
+
+			return new Bench() {
+				int k = 0;
+				public void setup(){
+					filter.setCurrentMeasure(scans.get(k++ % SCANS));
+					filter.estimate();
+				}
+				public long op(){
+					filter.propagate();
+					return filter.getParticleStore().size();
+				}
+			};
+		}
+
+		if (name.equals("init")){
+
+			return new Bench() {
+				public void setup(){
+				}
+				public long op(){
+					filter.initFilter();
+					return filter.getParticleStore().size();
+				}
+			};
+		}
+
+		throw new IllegalArgumentException("unknown benchmark: " + name);
+	}
+
+
+	/**
+	 * Groups measurement-rows by position, like DatabaseHandler.getData does
+	 * it with the rows of the cursor.
+	 */
+	static List<Particle> group(int[] xs, int[] ys, int[] rssi, String[] bssid, int rows){
+
+		List<Particle> list = new ArrayList<Particle>();
+		HashMap<Point, ArrayList<Measure>> measurements = new HashMap<Point, ArrayList<Measure>>();
+
+		for (int i=0; i<rows; i++){
+
+			Point point = new Point(xs[i], ys[i]);
+
+			if (!measurements.containsKey(point))
+				measurements.put(point, new ArrayList<Measure>());
+			measurements.get(point).add(new Measure(bssid[i], rssi[i]));
+		}
+
+		for (Map.Entry<Point, ArrayList<Measure>> entry : measurements.entrySet())
+			list.add(new Particle(entry.getKey(), entry.getValue()));
+
+		return list;
+	}
+
+
+	/**
+	 * Creates a database with points on a square grid. Each point measures
+	 * some hotspots out of twice as many.
+	 */
+	private static List<Particle> createDatabase(int num_points, int num_aps, SplitMixRandom random){
+
+		List<Particle> db = new ArrayList<Particle>();
+		int side = (int) Math.ceil(Math.sqrt(num_points));
+
+		for (int i=0; i<num_points; i++){
+
+			List<Measure> mlist = new ArrayList<Measure>();
+			int offset = (int) (random.nextDouble() * num_aps);
+
+			for (int j=0; j<num_aps; j++)
+				mlist.add(new Measure(bssid((offset + j) % (2 * num_aps)), -30 - (int) (random.nextDouble() * 60)));
+
+			db.add(new Particle(new Point((i % side) * 5, (i / side) * 5), mlist));
+		}
+
+		return db;
+	}
+
+
+	/**
+	 * Creates a scan with hotspots of the database.
+	 */
+	private static List<Measure> createScan(RadioMap map, int size, SplitMixRandom random){
+
+		List<Measure> scan = new ArrayList<Measure>();
+		int n = map.getDictionary().size();
+
+		for (int j=0; j<size; j++){
+			String name = map.getDictionary().getBssid((int) (random.nextDouble() * n));
+			scan.add(new Measure(name, -30 - (int) (random.nextDouble() * 60)));
+		}
+
+		return scan;
+	}
+
+
+	/**
+	 * Creates a random point inside the border.
+	 */
+	private static Point randomPoint(int[] border, SplitMixRandom random){
+
+		int x = border[0] + (int) (random.nextDouble() * (border[1] - border[0] + 1));
+		int y = border[2] + (int) (random.nextDouble() * (border[3] - border[2] + 1));
+
+		return new Point(x, y);
+	}
+
+
+	/**
+	 * Creates the name of a hotspot.
+	 */
+	private static String bssid(int i){
+		return "00:00:00:00:" + (i / 100) + ":" + (i % 100);
+	}
+
+
+	/**
+	 * Parses a comma-separated list of numbers.
+	 */
+	private static int[] parseList(String value){
+
+		String[] parts = value.split(",");
+		int[] list = new int[parts.length];
+
+		for (int i=0; i<parts.length; i++)
+			list[i] = Integer.parseInt(parts[i].trim());
+
+		return list;
+	}
+}
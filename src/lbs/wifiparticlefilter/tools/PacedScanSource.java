@@ -0,0 +1,142 @@
+package lbs.wifiparticlefilter.tools;
+
+
+import lbs.wifiparticlefilter.engine.ScanListener;
+import lbs.wifiparticlefilter.engine.ScanSource;
+
+
+/**
+ * Scan-source on a plain jvm, which delivers scans from its own thread. The
+ * gaps between the timestamps of the scans are kept, divided by a speed
+ * factor; with speed 0 the scans are delivered as fast as possible.
+ *
+ * @version 1.0
+ */
+public abstract class PacedScanSource implements ScanSource, Runnable {
+
+
+	// factor for the replay-speed; 0 for no pause
+	private final double speed;
+	// delivering thread; null if not started
+	private volatile Thread thread = null;
+	// receiver of the scans
+	private volatile ScanListener listener = null;
+	// number of delivered scans
+	private volatile long delivered = 0;
+
+
+	/**
+	 * C'tor.
+	 *
+	 * @param speed Factor for the replay-speed, e.g. 2 for twice as fast; 0 for no pause
+	 */
+	protected PacedScanSource(double speed){
+
+		if (speed < 0)
+			throw new IllegalArgumentException("speed < 0");
+
+		this.speed = speed;
+	}
+
+
+	/**
+	 * Gets the next scan.
+	 *
+	 * @return Scan or null at the end
+	 */
+	protected abstract ScanLog.Scan next();
+
+
+	/**
+	 * Starts the delivering thread.
+	 *
+	 * @param listener Receiver of the scans
+	 */
+	public synchronized void start(ScanListener listener){
+
+		if (thread != null)
+			throw new IllegalStateException("source is running");
+
+		this.listener = listener;
+		thread = new Thread(this, getClass().getSimpleName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+
+	/**
+	 * Stops the delivering thread. Doesn't wait for the thread.
+	 */
+	public synchronized void stop(){
+
+		Thread t = thread;
+		thread = null;
+
+		if (t != null)
+			t.interrupt();
+	}
+
+
+	/**
+	 * Waits for the end of the delivering thread, e.g. the end of the scans.
+	 *
+	 * @param ms Maximal waiting time in ms; 0 for no limit
+	 * @throws InterruptedException if the waiting thread is interrupted
+	 */
+	public void join(long ms) throws InterruptedException {
+
+		Thread t = thread;
+
+		if (t != null)
+			t.join(ms);
+	}
+
+
+	/**
+	 * Delivers the scans. Called by the delivering thread.
+	 */
+	public void run(){
+
+		long start = System.nanoTime();
+		long first = 0;
+		boolean started = false;
+
+		try {
+
+			ScanLog.Scan scan;
+			while (thread == Thread.currentThread() && (scan = next()) != null){
+
+				if (!started){
+					first = scan.getTimestamp();
+					started = true;
+				}
+
+				// wait for the time of the scan, relative to the first one
+				if (speed > 0){
+
+					long due = start + (long) ((scan.getTimestamp() - first) * 1e6 / speed);
+					long wait = due - System.nanoTime();
+
+					if (wait > 0)
+						Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+				}
+
+				listener.onScan(scan.getTimestamp(), scan.getMeasures());
+				delivered++;
+			}
+
+		} catch (InterruptedException e){
+			// stopped
+		}
+	}
+
+
+	/**
+	 * Gets the number of delivered scans.
+	 *
+	 * @return Number of scans
+	 */
+	public long getDelivered(){
+		return delivered;
+	}
+}
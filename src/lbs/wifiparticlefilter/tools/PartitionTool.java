@@ -0,0 +1,176 @@
+package lbs.wifiparticlefilter.tools;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lbs.wifiparticlefilter.data.Measure;
+import lbs.wifiparticlefilter.data.Particle;
+import lbs.wifiparticlefilter.filter.Partition;
+import lbs.wifiparticlefilter.filter.PartitionedRadioMap;
+import lbs.wifiparticlefilter.filter.RadioMap;
+import lbs.wifiparticlefilter.filter.RadioMapFile;
+
+
+/**
+ * Command-line tool, which splits a csv radio-map into square tiles. Each
+ * tile is compiled into its own file; a manifest for
+ * {@link PartitionedRadioMap} lists all tiles. Points near a tile are also
+ * written into it by the overlap, so filters at a border find neighbors.
+ * <p>
+ * Usage:
+ * <pre>PartitionTool radiomap.csv outdir tile_size [overlap]</pre>
+ *
+ * @version 1.2
+ */
+public class PartitionTool {
+
+
+	// name of the manifest in the output-directory
+	public static final String MANIFEST = "manifest.csv";
+
+
+	/**
+	 * Runs the tool.
+	 *
+	 * @param args Command-line arguments
+	 * @throws IOException if a file can't be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 3){
+			System.err.println("usage: PartitionTool radiomap.csv outdir tile_size [overlap]");
+			System.exit(1);
+		}
+
+		File dir = new File(args[1]);
+		int tile = Integer.parseInt(args[2]);
+		int overlap = (args.length > 3) ? Integer.parseInt(args[3]) : 0;
+
+		if (tile <= 0 || overlap < 0){
+			System.err.println("tile_size must be positive and overlap not negative");
+			System.exit(1);
+		}
+
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException(dir + ": can't create directory");
+
+		List<Partition> partitions = split(RadioMapCsv.read(new File(args[0])), dir, tile, overlap);
+		PartitionedRadioMap.writeManifest(partitions, new File(dir, MANIFEST));
+
+		long bytes = 0;
+		for (int i=0; i<partitions.size(); i++)
+			bytes += new File(dir, partitions.get(i).getFile().getPath()).length();
+
+		System.err.println("partitions: " + partitions.size() + ", bytes: " + bytes);
+	}
+
+
+	/**
+	 * Splits particles into tiles and writes one compiled radio-map per tile.
+	 * Files of the partitions are relative to the directory.
+	 *
+	 * @param list Particle-list with measurements from database
+	 * @param dir Output-directory
+	 * @param tile Side-length of the tiles
+	 * @param overlap Margin around each tile, which is added to its map
+	 * @return Partitions of all tiles with at least one point
+	 * @throws IOException if a file can't be written
+	 */
+	public static List<Partition> split(List<Particle> list, File dir, int tile, int overlap) throws IOException {
+
+		List<Partition> partitions = new ArrayList<Partition>();
+
+		if (list.isEmpty())
+			return partitions;
+
+		// dilation of all points
+		int[] border = {Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE};
+		for (int i=0; i<list.size(); i++){
+			border[0] = Math.min(border[0], list.get(i).getX());
+			border[1] = Math.max(border[1], list.get(i).getX());
+			border[2] = Math.min(border[2], list.get(i).getY());
+			border[3] = Math.max(border[3], list.get(i).getY());
+		}
+
+		int cols = (border[1] - border[0]) / tile + 1;
+		int rows = (border[3] - border[2]) / tile + 1;
+
+		// points of each tile with margin, in order of the list; null for none
+		List<List<Particle>> buckets = new ArrayList<List<Particle>>(rows * cols);
+		for (int t=0; t<rows * cols; t++)
+			buckets.add(null);
+		boolean[] inside = new boolean[rows * cols];
+
+		// one pass; each point goes into all tiles, whose margin contains it
+		for (int i=0; i<list.size(); i++){
+
+			Particle p = list.get(i);
+			int dx = p.getX() - border[0];
+			int dy = p.getY() - border[2];
+
+			// tile c covers dx from c * tile - overlap to (c + 1) * tile - 1 + overlap
+			int c_min = Math.max(0, dx - overlap) / tile;
+			int c_max = Math.min(cols - 1, (dx + overlap) / tile);
+			int r_min = Math.max(0, dy - overlap) / tile;
+			int r_max = Math.min(rows - 1, (dy + overlap) / tile);
+
+			for (int r=r_min; r<=r_max; r++){
+				for (int c=c_min; c<=c_max; c++){
+
+					List<Particle> part = buckets.get(r * cols + c);
+					if (part == null){
+						part = new ArrayList<Particle>();
+						buckets.set(r * cols + c, part);
+					}
+					part.add(p);
+				}
+			}
+
+			inside[(dy / tile) * cols + dx / tile] = true;
+		}
+
+		for (int r=0; r<rows; r++){
+			for (int c=0; c<cols; c++){
+
+				// tiles, which only have points of the margin, are left out
+				if (!inside[r * cols + c])
+					continue;
+
+				// tile without margin
+				int[] b = {border[0] + c * tile, border[0] + (c + 1) * tile - 1,
+						border[2] + r * tile, border[2] + (r + 1) * tile - 1};
+
+				List<Particle> part = buckets.get(r * cols + c);
+				Map<String,Integer> peaks = new HashMap<String,Integer>();
+
+				// strongest signal of each hotspot in the tile; points of the margin
+				// belong to the peaks of their own tile, so no hotspot gets two homes
+				for (int i=0; i<part.size(); i++){
+
+					Particle p = part.get(i);
+
+					if (p.getX() < b[0] || p.getX() > b[1] || p.getY() < b[2] || p.getY() > b[3])
+						continue;
+
+					for (Measure m : p.getMeasure()){
+						Integer peak = peaks.get(m.getBSSID());
+						if ((peak == null) || (m.getRssi() > peak))
+							peaks.put(m.getBSSID(), m.getRssi());
+					}
+				}
+
+				String name = "tile_" + c + "_" + r + RadioMapTool.EXTENSION;
+				RadioMapFile.write(new RadioMap(part), new File(dir, name));
+
+				partitions.add(new Partition(c + "_" + r, new File(name), b, peaks));
+			}
+		}
+
+		return partitions;
+	}
+}
@@ -0,0 +1,172 @@
+package lbs.wifiparticlefilter.tools;
+
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import lbs.wifiparticlefilter.data.Measure;
+import lbs.wifiparticlefilter.engine.ScanListener;
+import lbs.wifiparticlefilter.engine.ScanPipeline;
+import lbs.wifiparticlefilter.filter.Filter;
+import lbs.wifiparticlefilter.filter.RadioMap;
+
+
+/**
+ * Command-line check of the {@link ScanPipeline} on a plain jvm. A paced
+ * scan-source feeds the pipeline, whose consumer runs a filter, optionally
+ * slowed down, so the pipeline has to drop scans. At the end, each received
+ * scan must be counted once: processed, failed, dropped from the full
+ * queue, coalesced or dropped as stale.
+ * <p>
+ * Usage:
+ * <pre>PipelineCheck [radiomap.csv trace.csv] [--device id] [--speed f]
+ *     [--interval ms] [--scans n] [--step ms] [--queue n] [--max-age ms]
+ *     [--coalescing true|false] [--particles n]</pre>
+ * With a radio-map and a trace, the scans of one device are replayed by a
+ * {@link ReplayScanSource}; otherwise a {@link SyntheticScanSource} walks
+ * over a synthetic map. The exit-code is 1, if the counters don't add up.
+ *
+ * @version 1.0
+ */
+public class PipelineCheck {
+
+
+	// maximal time to wait for the consumer after the last scan
+	private static final long DRAIN_MS = 10000;
+
+
+	/**
+	 * Runs the check.
+	 *
+	 * @param args Command-line arguments
+	 * @throws Exception if a file can't be read
+	 */
+	public static void main(String[] args) throws Exception {
+
+		String device = null;
+		double speed = 1;
+		long interval = 20;
+		long count = 500;
+		int queue = 4;
+		long max_age = 50;
+		boolean coalescing = true;
+		int particles = BatchPositioning.DEFAULT_PARTICLES;
+		long step = 0;
+
+		// files are given before the options
+		int first = (args.length >= 2 && !args[0].startsWith("--")) ? 2 : 0;
+
+		for (int i=first; i + 1<args.length; i+=2){
+
+			String key = args[i];
+			String value = args[i + 1];
+
+			if (key.equals("--device"))
+				device = value;
+			else if (key.equals("--speed"))
+				speed = Double.parseDouble(value);
+			else if (key.equals("--interval"))
+				interval = Long.parseLong(value);
+			else if (key.equals("--scans"))
+				count = Long.parseLong(value);
+			else if (key.equals("--step"))
+				step = Long.parseLong(value);
+			else if (key.equals("--queue"))
+				queue = Integer.parseInt(value);
+			else if (key.equals("--max-age"))
+				max_age = Long.parseLong(value);
+			else if (key.equals("--coalescing"))
+				coalescing = Boolean.parseBoolean(value);
+			else if (key.equals("--particles"))
+				particles = Integer.parseInt(value);
+			else
+				throw new IllegalArgumentException("unknown option: " + key);
+		}
+
+		RadioMap map;
+		PacedScanSource source;
+
+		if (first == 2){
+
+			map = RadioMapTool.load(new File(args[0]));
+			Map<String,List<ScanLog.Scan>> trace = ScanLog.read(new File(args[1]));
+
+			if (device == null && !trace.isEmpty())
+				device = trace.keySet().iterator().next();
+			if (!trace.containsKey(device))
+				throw new IllegalArgumentException("unknown device: " + device);
+
+			source = new ReplayScanSource(trace.get(device), speed);
+
+		} else {
+
+			SyntheticRadioMap synthetic = new SyntheticRadioMap(100, 100, 40, 1L);
+			map = new RadioMap(synthetic.createMap(5, 2L));
+			source = new SyntheticScanSource(new SyntheticWalker(synthetic, "synthetic", 1, 3L), interval, count, speed);
+		}
+
+		final Filter filter = new Filter(particles, map);
+		final long step_ms = step;
+		filter.initFilter();
+
+		ScanPipeline pipeline = new ScanPipeline(new ScanListener() {
+			public void onScan(long timestamp, List<Measure> measure){
+
+				filter.setCurrentMeasure(measure);
+				filter.estimate();
+				filter.propagate();
+
+				// slow filter; the pipeline has to drop scans
+				if (step_ms > 0){
+					try {
+						Thread.sleep(step_ms);
+					} catch (InterruptedException e){
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		}, queue);
+
+		pipeline.setMaxAge(max_age);
+		pipeline.setCoalescing(coalescing);
+		pipeline.start();
+
+		source.start(pipeline);
+		source.join(0);
+
+		// wait, until the consumer has taken and counted all scans
+		long deadline = System.currentTimeMillis() + DRAIN_MS;
+		while (accounted(pipeline) < pipeline.getReceived() && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+
+		pipeline.stop();
+		boolean ended = pipeline.join(DRAIN_MS);
+
+		long received = pipeline.getReceived();
+		long accounted = accounted(pipeline);
+
+		System.out.println("delivered: " + source.getDelivered() + ", received: " + received
+				+ ", processed: " + pipeline.getProcessed() + ", errors: " + pipeline.getErrors()
+				+ ", dropped_full: " + pipeline.getDroppedFull() + ", coalesced: " + pipeline.getCoalesced()
+				+ ", dropped_stale: " + pipeline.getDroppedStale());
+		System.out.println("latency p50: " + pipeline.getLatency().getPercentile(0.5) / 1000 + " us, p99: "
+				+ pipeline.getLatency().getPercentile(0.99) / 1000 + " us, max: "
+				+ pipeline.getLatency().getMax() / 1000 + " us");
+
+		boolean ok = ended && (received == source.getDelivered()) && (accounted == received);
+		System.out.println(ok ? "ok" : "FAILED: " + accounted + " of " + received + " scans accounted, consumer ended: " + ended);
+
+		if (!ok)
+			System.exit(1);
+	}
+
+
+	/**
+	 * Sums the scans, which have left the queue.
+	 */
+	private static long accounted(ScanPipeline pipeline){
+		return pipeline.getProcessed() + pipeline.getErrors() + pipeline.getDroppedFull()
+				+ pipeline.getCoalesced() + pipeline.getDroppedStale();
+	}
+}
@@ -0,0 +1,99 @@
+package lbs.wifiparticlefilter.tools;
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lbs.wifiparticlefilter.data.Measure;
+import lbs.wifiparticlefilter.data.Particle;
+import lbs.wifiparticlefilter.data.Point;
+
+
+/**
+ * Reads a radio-map from a csv-file with one measure per line:
+ * <pre>x,y,bssid,rssi</pre>
+ * All measures of a position are grouped into one particle, like the
+ * database does it. Empty lines, lines starting with '#' and a header-line
+ * are skipped.
+ *
+ * @version 1.0
+ */
+public class RadioMapCsv {
+
+
+	/**
+	 * Reads all measures of a file.
+	 *
+	 * @param file Csv-file of the radio-map
+	 * @return Particle-list with measurements; in order of first appearance
+	 * @throws IOException if the file can't be read or a line is malformed
+	 */
+	public static List<Particle> read(File file) throws IOException {
+
+		List<Particle> list = new ArrayList<Particle>();
+		// measure-list by packed position
+		Map<Long,List<Measure>> points = new HashMap<Long,List<Measure>>();
+
+		BufferedReader in = new BufferedReader(new FileReader(file));
+
+		try {
+
+			String line;
+			int number = 0;
+
+			while ((line = in.readLine()) != null){
+
+				number++;
+				line = line.trim();
+
+				if ((line.length() == 0) || line.startsWith("#"))
+					continue;
+
+				String[] cols = line.split(",");
+
+				if (cols.length != 4)
+					throw new IOException(file + ":" + number + ": expected x,y,bssid,rssi");
+
+				int x;
+				int y;
+				int rssi;
+
+				try {
+					x = Integer.parseInt(cols[0].trim());
+					y = Integer.parseInt(cols[1].trim());
+					rssi = Integer.parseInt(cols[3].trim());
+				} catch (NumberFormatException e){
+
+					// first line may name the columns
+					if (number == 1)
+						continue;
+
+					throw new IOException(file + ":" + number + ": " + e.getMessage());
+				}
+
+				Long key = Point.pack(x, y);
+				List<Measure> mlist = points.get(key);
+
+				// new position
+				if (mlist == null){
+					mlist = new ArrayList<Measure>();
+					points.put(key, mlist);
+					list.add(new Particle(new Point(x, y), mlist));
+				}
+
+				mlist.add(new Measure(cols[2].trim(), rssi));
+			}
+
+		} finally {
+			in.close();
+		}
+
+		return list;
+	}
+}
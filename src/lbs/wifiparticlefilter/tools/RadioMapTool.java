@@ -0,0 +1,73 @@
+package lbs.wifiparticlefilter.tools;
+
+
+import java.io.File;
+import java.io.IOException;
+
+import lbs.wifiparticlefilter.filter.RadioMap;
+import lbs.wifiparticlefilter.filter.RadioMapFile;
+
+
+/**
+ * Command-line tool, which compiles a csv radio-map into the binary format
+ * of {@link RadioMapFile}.
+ * <p>
+ * Usage:
+ * <pre>RadioMapTool radiomap.csv radiomap.wprm</pre>
+ *
+ * @version 1.0
+ */
+public class RadioMapTool {
+
+
+	// file-extension of compiled radio-maps
+	public static final String EXTENSION = ".wprm";
+
+
+	/**
+	 * Runs the tool.
+	 *
+	 * @param args Command-line arguments
+	 * @throws IOException if a file can't be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 2){
+			System.err.println("usage: RadioMapTool radiomap.csv radiomap" + EXTENSION);
+			System.exit(1);
+		}
+
+		long start = System.nanoTime();
+		RadioMap map = new RadioMap(RadioMapCsv.read(new File(args[0])));
+
+		long compiled = System.nanoTime();
+		RadioMapFile.write(map, new File(args[1]));
+
+		long written = System.nanoTime();
+		RadioMapFile.open(new File(args[1]));
+
+		long end = System.nanoTime();
+
+		System.err.println("points: " + map.size() + ", entries: " + map.getTable().entries()
+				+ ", hotspots: " + map.getDictionary().size());
+		System.err.println("read csv: " + (compiled - start) / 1000000 + " ms, write: " + (written - compiled) / 1000000
+				+ " ms, open: " + (end - written) / 1000000 + " ms");
+	}
+
+
+	/**
+	 * Loads a radio-map. Files with the extension of compiled radio-maps are
+	 * mapped, all other files are read as csv.
+	 *
+	 * @param file Radio-map file
+	 * @return Radio-map
+	 * @throws IOException if the file can't be read
+	 */
+	public static RadioMap load(File file) throws IOException {
+
+		if (file.getName().endsWith(EXTENSION))
+			return RadioMapFile.open(file);
+
+		return new RadioMap(RadioMapCsv.read(file));
+	}
+}
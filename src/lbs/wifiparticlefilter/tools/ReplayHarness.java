@@ -0,0 +1,392 @@
+package lbs.wifiparticlefilter.tools;
+
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import lbs.wifiparticlefilter.data.Point;
+import lbs.wifiparticlefilter.engine.FilterEngine;
+import lbs.wifiparticlefilter.filter.Filter;
+import lbs.wifiparticlefilter.filter.RadioMap;
+import lbs.wifiparticlefilter.metrics.JvmStats;
+import lbs.wifiparticlefilter.metrics.LatencyHistogram;
+
+
+/**
+ * Soak-test, which replays a scan-trace through the whole filter-pipeline:
+ * scan, estimate, position-estimate and propagate. Scans of all devices are
+ * replayed in order of their timestamps, each device with its own filter.
+ * The trace is repeated until the duration is over, so long runs reveal
+ * leaks and slow degradation.
+ * <p>
+ * Usage:
+ * <pre>ReplayHarness radiomap.csv trace.csv [--particles n] [--rate scans/s]
+ *     [--duration s] [--report s] [--seed n]</pre>
+ * Without rate, scans are replayed as fast as possible. With rate, the
+ * latency is measured from the planned start of each step, so steps which
+ * wait behind a slow step count as slow as well. If the trace has true
+ * positions, the positioning error is reported. The radio-map may be a
+ * csv-file or a file compiled by {@link RadioMapTool}.
+ *
+ * @version 1.1
+ */
+public class ReplayHarness {
+
+
+	// filter of each device
+	private final Map<String,Filter> filters = new HashMap<String,Filter>();
+	// devices & scans in replay-order
+	private final List<String> devices = new ArrayList<String>();
+	private final List<ScanLog.Scan> scans = new ArrayList<ScanLog.Scan>();
+	// scans per second; 0 for full speed
+	private final double rate;
+	// output of the reports
+	private final PrintStream out;
+	// allocation & gc
+	private final JvmStats jvm = new JvmStats();
+	// time of each step; for the interval and for the whole run
+	private final LatencyHistogram interval_service = new LatencyHistogram();
+	private final LatencyHistogram total_service = new LatencyHistogram();
+	// time from planned start to end of each step; only with rate
+	private final LatencyHistogram interval_latency = new LatencyHistogram();
+	private final LatencyHistogram total_latency = new LatencyHistogram();
+	// positioning-error; interval & whole run
+	private final ErrorStats interval_error = new ErrorStats();
+	private final ErrorStats total_error = new ErrorStats();
+	// start of the run
+	private long run_start;
+
+
+	/**
+	 * C'tor; creates and initializes one filter per device.
+	 *
+	 * @param map Radio-map for all devices
+	 * @param trace Scans by device-id
+	 * @param particles Number of particles per device
+	 * @param seed Seed for reproducible runs or null
+	 * @param rate Scans per second; 0 for full speed
+	 * @param out Output of the reports
+	 */
+	public ReplayHarness(RadioMap map, Map<String,List<ScanLog.Scan>> trace, int particles,
+			Long seed, double rate, PrintStream out){
+
+		this.rate = rate;
+		this.out = out;
+
+		for (Map.Entry<String,List<ScanLog.Scan>> e : trace.entrySet()){
+
+			Filter filter = new Filter(particles, map);
+			if (seed != null)
+				filter.setSeed(seed.longValue() ^ e.getKey().hashCode());
+			filter.initFilter();
+
+			filters.put(e.getKey(), filter);
+
+			for (int i=0; i<e.getValue().size(); i++){
+				devices.add(e.getKey());
+				scans.add(e.getValue().get(i));
+			}
+		}
+
+		// order of the timestamps; stable, so scans of a device keep their order
+		Integer[] order = new Integer[scans.size()];
+		for (int i=0; i<order.length; i++)
+			order[i] = i;
+
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b){
+				long ta = scans.get(a).getTimestamp();
+				long tb = scans.get(b).getTimestamp();
+				return (ta < tb) ? -1 : ((ta == tb) ? 0 : 1);
+			}
+		});
+
+		List<String> d = new ArrayList<String>(devices);
+		List<ScanLog.Scan> s = new ArrayList<ScanLog.Scan>(scans);
+		for (int i=0; i<order.length; i++){
+			devices.set(i, d.get(order[i]));
+			scans.set(i, s.get(order[i]));
+		}
+	}
+
+
+	/**
+	 * Replays the trace. A report is written after each interval and at the
+	 * end.
+	 *
+	 * @param duration_s Duration in seconds; 0 for one run through the trace
+	 * @param report_s Seconds between two reports
+	 */
+	public void run(double duration_s, double report_s){
+
+		if (scans.isEmpty())
+			return;
+
+		long start = System.nanoTime();
+		run_start = start;
+		long end = start + (long) (duration_s * 1e9);
+		long report_ns = (long) (report_s * 1e9);
+		long period = (rate > 0) ? (long) (1e9 / rate) : 0;
+
+		// counters at begin of run & interval
+		Snapshot first = new Snapshot(start, 0);
+		Snapshot last = first;
+
+		out.println("# time_s steps steps_per_s p50_us p99_us p999_us max_us lat_p99_us lat_max_us "
+				+ "alloc_per_step alloc_mb_per_s gc_count gc_ms heap_mb err_mean err_rmse err_max");
+
+		long steps = 0;
+		boolean done = false;
+
+		while (!done){
+
+			for (int i=0; i<scans.size(); i++){
+
+				// planned start of this step
+				long planned = (period > 0) ? start + steps * period : System.nanoTime();
+
+				// wait for the planned start
+				if (period > 0){
+					long wait;
+					while ((wait = planned - System.nanoTime()) > 0)
+						LockSupport.parkNanos(wait);
+				}
+
+				long begin = System.nanoTime();
+				step(devices.get(i), scans.get(i));
+				long now = System.nanoTime();
+
+				steps++;
+
+				interval_service.record(now - begin);
+				if (period > 0)
+					interval_latency.record(now - planned);
+
+				// end of interval
+				if (now - last.time >= report_ns){
+					Snapshot snap = new Snapshot(now, steps);
+					report(last, snap, interval_service, interval_latency, interval_error);
+					flush();
+					last = snap;
+				}
+
+				// end of run; without duration after one run through the trace
+				if ((duration_s > 0) ? (now >= end) : (i == scans.size() - 1)){
+					done = true;
+					break;
+				}
+			}
+		}
+
+		// remaining interval
+		Snapshot snap = new Snapshot(System.nanoTime(), steps);
+		if (interval_service.getCount() > 0){
+			report(last, snap, interval_service, interval_latency, interval_error);
+			flush();
+		}
+
+		out.println("# total");
+		report(first, snap, total_service, total_latency, total_error);
+	}
+
+
+	/**
+	 * Runs one step of a device.
+	 */
+	private void step(String device, ScanLog.Scan scan){
+
+		Filter filter = filters.get(device);
+
+		filter.setCurrentMeasure(scan.getMeasures());
+		filter.estimate();
+		Point p = filter.getEstimate();
+		filter.propagate();
+
+		// positioning-error
+		if ((scan.getTruth() != null) && (p != null)){
+			double dx = p.getX() - scan.getTruth().getX();
+			double dy = p.getY() - scan.getTruth().getY();
+			interval_error.add(Math.sqrt(dx * dx + dy * dy));
+		}
+	}
+
+
+	/**
+	 * Adds the values of the interval to the whole run and resets them.
+	 */
+	private void flush(){
+
+		total_service.add(interval_service);
+		total_latency.add(interval_latency);
+		total_error.add(interval_error);
+
+		interval_service.reset();
+		interval_latency.reset();
+		interval_error.reset();
+	}
+
+
+	/**
+	 * Writes one report-line.
+	 */
+	private void report(Snapshot from, Snapshot to, LatencyHistogram service, LatencyHistogram latency, ErrorStats error){
+
+		double seconds = (to.time - from.time) / 1e9;
+		long steps = to.steps - from.steps;
+
+		long alloc = (to.allocated >= 0 && from.allocated >= 0) ? to.allocated - from.allocated : -1;
+		long gc_count = (to.gc_count >= 0) ? to.gc_count - from.gc_count : -1;
+		long gc_time = (to.gc_time >= 0) ? to.gc_time - from.gc_time : -1;
+
+		StringBuilder sb = new StringBuilder();
+
+		sb.append(format((to.time - run_start) / 1e9)).append(' ');
+		sb.append(steps).append(' ');
+		sb.append(format(steps / seconds)).append(' ');
+		sb.append(service.getPercentile(0.5) / 1000).append(' ');
+		sb.append(service.getPercentile(0.99) / 1000).append(' ');
+		sb.append(service.getPercentile(0.999) / 1000).append(' ');
+		sb.append(service.getMax() / 1000).append(' ');
+		sb.append((rate > 0) ? String.valueOf(latency.getPercentile(0.99) / 1000) : "-").append(' ');
+		sb.append((rate > 0) ? String.valueOf(latency.getMax() / 1000) : "-").append(' ');
+		sb.append((alloc >= 0 && steps > 0) ? String.valueOf(alloc / steps) : "-").append(' ');
+		sb.append((alloc >= 0) ? format(alloc / seconds / 1e6) : "-").append(' ');
+		sb.append((gc_count >= 0) ? String.valueOf(gc_count) : "-").append(' ');
+		sb.append((gc_time >= 0) ? String.valueOf(gc_time) : "-").append(' ');
+		sb.append(format(to.heap / 1e6)).append(' ');
+
+		if (error.count > 0){
+			sb.append(format(error.sum / error.count)).append(' ');
+			sb.append(format(Math.sqrt(error.sum_sq / error.count))).append(' ');
+			sb.append(format(error.max));
+		} else {
+			sb.append("- - -");
+		}
+
+		out.println(sb);
+	}
+
+
+	/**
+	 * Formats a value with two decimals.
+	 */
+	private static String format(double v){
+		return String.valueOf(Math.round(v * 100) / 100.0);
+	}
+
+
+	/**
+	 * Counters at one moment.
+	 */
+	private class Snapshot {
+
+		final long time;
+		final long steps;
+		final long allocated;
+		final long gc_count;
+		final long gc_time;
+		final long heap;
+
+		Snapshot(long time, long steps){
+
+			this.time = time;
+			this.steps = steps;
+			allocated = jvm.getAllocatedBytes();
+			gc_count = jvm.getGcCount();
+			gc_time = jvm.getGcTime();
+			heap = jvm.getUsedMemory();
+		}
+	}
+
+
+	/**
+	 * Mean, rms & maximum of the positioning-error.
+	 */
+	private static class ErrorStats {
+
+		long count;
+		double sum;
+		double sum_sq;
+		double max;
+
+		void add(double e){
+			count++;
+			sum = sum + e;
+			sum_sq = sum_sq + e * e;
+			max = Math.max(max, e);
+		}
+
+		void add(ErrorStats other){
+			count = count + other.count;
+			sum = sum + other.sum;
+			sum_sq = sum_sq + other.sum_sq;
+			max = Math.max(max, other.max);
+		}
+
+		void reset(){
+			count = 0;
+			sum = 0;
+			sum_sq = 0;
+			max = 0;
+		}
+	}
+
+
+	/**
+	 * Runs the harness.
+	 *
+	 * @param args Command-line arguments
+	 * @throws Exception if a file can't be read
+	 */
+	public static void main(String[] args) throws Exception {
+
+		if (args.length < 2){
+			System.err.println("usage: ReplayHarness radiomap.csv trace.csv [--particles n] [--rate scans/s] "
+					+ "[--duration s] [--report s] [--seed n]");
+			System.exit(1);
+		}
+
+		int particles = BatchPositioning.DEFAULT_PARTICLES;
+		double rate = 0;
+		double duration = 0;
+		double report = 10;
+		Long seed = null;
+
+		for (int i=2; i + 1<args.length; i+=2){
+
+			String key = args[i];
+			String value = args[i + 1];
+
+			if (key.equals("--particles"))
+				particles = Integer.parseInt(value);
+			else if (key.equals("--rate"))
+				rate = Double.parseDouble(value);
+			else if (key.equals("--duration"))
+				duration = Double.parseDouble(value);
+			else if (key.equals("--report"))
+				report = Double.parseDouble(value);
+			else if (key.equals("--seed"))
+				seed = Long.valueOf(value);
+			else
+				throw new IllegalArgumentException("unknown option: " + key);
+		}
+
+		Map<String,List<ScanLog.Scan>> trace = ScanLog.read(new File(args[1]));
+
+		// profile-cache sized like in the engine; the steps of all devices
+		// alternate on one thread, so each device counts like a thread
+		int devices = Math.max(1, trace.size());
+		RadioMap map = RadioMapTool.load(new File(args[0])).withCache(FilterEngine.PROFILES_PER_PARTICLE * particles * devices,
+				FilterEngine.SEGMENTS_PER_THREAD);
+
+		ReplayHarness harness = new ReplayHarness(map, trace, particles, seed, rate, System.out);
+		harness.run(duration, report);
+	}
+}
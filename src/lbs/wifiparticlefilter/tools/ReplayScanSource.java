@@ -0,0 +1,37 @@
+package lbs.wifiparticlefilter.tools;
+
+
+import java.util.Iterator;
+import java.util.List;
+
+
+/**
+ * Replays the recorded scans of one device, e.g. from a {@link ScanLog}.
+ *
+ * @version 1.0
+ */
+public class ReplayScanSource extends PacedScanSource {
+
+
+	// scans, which aren't delivered yet
+	private final Iterator<ScanLog.Scan> scans;
+
+
+	/**
+	 * C'tor.
+	 *
+	 * @param scans Scans of the device, ordered by time
+	 * @param speed Factor for the replay-speed; 0 for no pause
+	 */
+	public ReplayScanSource(List<ScanLog.Scan> scans, double speed){
+
+		super(speed);
+		this.scans = scans.iterator();
+	}
+
+
+	@Override
+	protected ScanLog.Scan next(){
+		return scans.hasNext() ? scans.next() : null;
+	}
+}
@@ -0,0 +1,167 @@
+package lbs.wifiparticlefilter.tools;
+
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lbs.wifiparticlefilter.data.Measure;
+import lbs.wifiparticlefilter.data.Point;
+
+
+/**
+ * Reads recorded scans of many devices from a csv-file with one measure per
+ * line:
+ * <pre>timestamp,device,bssid,rssi[,x,y]</pre>
+ * Lines of different devices may be interleaved. Measures of one device with
+ * the same timestamp form one scan. The optional columns x and y give the
+ * true position of the device for evaluation. Empty lines, lines starting
+ * with '#' and a header-line are skipped.
+ *
+ * @version 1.1
+ */
+public class ScanLog {
+
+
+	/**
+	 * One scan of a device.
+	 */
+	public static class Scan {
+
+		// time of the scan
+		private final long timestamp;
+		// measures of the scan
+		private final List<Measure> measures = new ArrayList<Measure>();
+		// true position; null if unknown
+		private final Point truth;
+
+		/**
+		 * C'tor
+		 *
+		 * @param timestamp Time of the scan
+		 */
+		public Scan(long timestamp){
+			this(timestamp, null);
+		}
+
+		/**
+		 * C'tor
+		 *
+		 * @param timestamp Time of the scan
+		 * @param truth True position or null
+		 */
+		public Scan(long timestamp, Point truth){
+			this.timestamp = timestamp;
+			this.truth = truth;
+		}
+
+		/**
+		 * Gets the time of the scan.
+		 *
+		 * @return Timestamp as written in the log
+		 */
+		public long getTimestamp(){
+			return timestamp;
+		}
+
+		/**
+		 * Gets the measures of the scan.
+		 *
+		 * @return Measure-list
+		 */
+		public List<Measure> getMeasures(){
+			return measures;
+		}
+
+		/**
+		 * Gets the true position of the device.
+		 *
+		 * @return Position or null, if unknown
+		 */
+		public Point getTruth(){
+			return truth;
+		}
+	}
+
+
+	/**
+	 * Reads all scans of a file.
+	 *
+	 * @param file Csv-file with scans
+	 * @return Scans by device-id; devices and scans in order of the file
+	 * @throws IOException if the file can't be read or a line is malformed
+	 */
+	public static Map<String,List<Scan>> read(File file) throws IOException {
+
+		Map<String,List<Scan>> devices = new LinkedHashMap<String,List<Scan>>();
+
+		BufferedReader in = new BufferedReader(new FileReader(file));
+
+		try {
+
+			String line;
+			int number = 0;
+
+			while ((line = in.readLine()) != null){
+
+				number++;
+				line = line.trim();
+
+				if ((line.length() == 0) || line.startsWith("#"))
+					continue;
+
+				String[] cols = line.split(",");
+
+				if ((cols.length != 4) && (cols.length != 6))
+					throw new IOException(file + ":" + number + ": expected timestamp,device,bssid,rssi[,x,y]");
+
+				long timestamp;
+				int rssi;
+				Point truth = null;
+
+				try {
+					timestamp = Long.parseLong(cols[0].trim());
+					rssi = Integer.parseInt(cols[3].trim());
+
+					if (cols.length == 6)
+						truth = new Point(Integer.parseInt(cols[4].trim()), Integer.parseInt(cols[5].trim()));
+				} catch (NumberFormatException e){
+
+					// first line may name the columns
+					if (number == 1)
+						continue;
+
+					throw new IOException(file + ":" + number + ": " + e.getMessage());
+				}
+
+				String device = cols[1].trim();
+				List<Scan> scans = devices.get(device);
+
+				if (scans == null){
+					scans = new ArrayList<Scan>();
+					devices.put(device, scans);
+				}
+
+				// measure belongs to the last scan of the device or starts a new one
+				Scan last = scans.isEmpty() ? null : scans.get(scans.size() - 1);
+
+				if ((last == null) || (last.getTimestamp() != timestamp)){
+					last = new Scan(timestamp, truth);
+					scans.add(last);
+				}
+
+				last.getMeasures().add(new Measure(cols[2].trim(), rssi));
+			}
+
+		} finally {
+			in.close();
+		}
+
+		return devices;
+	}
+}
@@ -0,0 +1,108 @@
+package lbs.wifiparticlefilter.tools;
+
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import lbs.wifiparticlefilter.data.Measure;
+import lbs.wifiparticlefilter.data.Particle;
+import lbs.wifiparticlefilter.data.Point;
+import lbs.wifiparticlefilter.dbmanagement.JdbcFingerprintStore;
+
+
+/**
+ * Compares single-row inserts with transactional bulk inserts of survey
+ * points on a plain sqlite file. The sqlite jdbc driver must be on the
+ * classpath.
+ * <p>
+ * Usage:
+ * <pre>StoreBenchmark database.db [points] [aps]</pre>
+ *
+ * @version 1.0
+ */
+public class StoreBenchmark {
+
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args Command-line arguments
+	 * @throws SQLException if the database can't be opened
+	 */
+	public static void main(String[] args) throws SQLException {
+
+		if (args.length < 1){
+			System.err.println("usage: StoreBenchmark database.db [points] [aps]");
+			System.exit(1);
+		}
+
+		int points = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+		int aps = (args.length > 2) ? Integer.parseInt(args[2]) : 30;
+
+		// survey points on a line; every point sees all hotspots
+		List<Particle> list = new ArrayList<Particle>(points);
+		for (int i=0; i<points; i++){
+
+			List<Measure> mlist = new ArrayList<Measure>(aps);
+			for (int j=0; j<aps; j++)
+				mlist.add(new Measure(String.format("02:00:00:00:%02x:%02x", j >> 8, j & 0xff), -40 - (i + j) % 60));
+
+			list.add(new Particle(new Point(i, 0), mlist));
+		}
+
+		JdbcFingerprintStore store = new JdbcFingerprintStore(new File(args[0]));
+
+		try {
+
+			// one transaction per row, like the old scanning
+			store.resetTable();
+			long start = System.nanoTime();
+
+			for (int i=0; i<list.size(); i++)
+				for (Measure m : list.get(i).getMeasure())
+					store.insert(list.get(i).getX(), list.get(i).getY(), m.getRssi(), m.getBSSID());
+
+			long single = System.nanoTime() - start;
+
+			// one transaction per survey point
+			store.resetTable();
+			start = System.nanoTime();
+
+			for (int i=0; i<list.size(); i++)
+				store.insertAll(list.subList(i, i + 1));
+
+			long per_point = System.nanoTime() - start;
+
+			// one transaction for all points
+			store.resetTable();
+			start = System.nanoTime();
+
+			int rows = store.insertAll(list);
+
+			long bulk = System.nanoTime() - start;
+
+			// rows must be read back completely
+			int read = 0;
+			for (Particle p : store.getData())
+				read = read + p.getMeasure().size();
+
+			System.out.println("rows: " + rows + ", read: " + read);
+			print("single rows", single, rows);
+			print("per point", per_point, rows);
+			print("all points", bulk, rows);
+
+		} finally {
+			store.close();
+		}
+	}
+
+
+	/**
+	 * Prints the time and the rate of one insert-method.
+	 */
+	private static void print(String name, long nanos, int rows){
+		System.out.println(String.format("%-12s %10.1f ms %12.0f rows/s", name, nanos / 1e6, rows / (nanos / 1e9)));
+	}
+}
@@ -0,0 +1,154 @@
+package lbs.wifiparticlefilter.tools;
+
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import lbs.wifiparticlefilter.data.Measure;
+
+
+/**
+ * Command-line tool, which writes a synthetic radio-map and a scan-trace of
+ * synthetic walkers. The files can be read by {@link BatchPositioning} and
+ * {@link ReplayHarness}; the trace contains the true positions.
+ * <p>
+ * Usage:
+ * <pre>SyntheticData radiomap.csv trace.csv [--width n] [--height n]
+ *     [--spacing n] [--aps n] [--max-aps n] [--noise dB] [--exponent n]
+ *     [--devices n] [--steps n] [--speed n] [--interval ms] [--seed n]</pre>
+ *
+ * @version 1.0
+ */
+public class SyntheticData {
+
+
+	/**
+	 * Runs the tool.
+	 *
+	 * @param args Command-line arguments
+	 * @throws IOException if a file can't be written
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 2){
+			System.err.println("usage: SyntheticData radiomap.csv trace.csv [--width n] [--height n] [--spacing n] "
+					+ "[--aps n] [--max-aps n] [--noise dB] [--exponent n] [--devices n] [--steps n] "
+					+ "[--speed n] [--interval ms] [--seed n]");
+			System.exit(1);
+		}
+
+		int width = 100;
+		int height = 100;
+		int spacing = 5;
+		int aps = 50;
+		int max_aps = 30;
+		double noise = 4.0;
+		double exponent = 3.0;
+		int devices = 10;
+		int steps = 100;
+		double speed = 1.0;
+		long interval = 1000;
+		long seed = 42;
+
+		for (int i=2; i + 1<args.length; i+=2){
+
+			String key = args[i];
+			String value = args[i + 1];
+
+			if (key.equals("--width"))
+				width = Integer.parseInt(value);
+			else if (key.equals("--height"))
+				height = Integer.parseInt(value);
+			else if (key.equals("--spacing"))
+				spacing = Integer.parseInt(value);
+			else if (key.equals("--aps"))
+				aps = Integer.parseInt(value);
+			else if (key.equals("--max-aps"))
+				max_aps = Integer.parseInt(value);
+			else if (key.equals("--noise"))
+				noise = Double.parseDouble(value);
+			else if (key.equals("--exponent"))
+				exponent = Double.parseDouble(value);
+			else if (key.equals("--devices"))
+				devices = Integer.parseInt(value);
+			else if (key.equals("--steps"))
+				steps = Integer.parseInt(value);
+			else if (key.equals("--speed"))
+				speed = Double.parseDouble(value);
+			else if (key.equals("--interval"))
+				interval = Long.parseLong(value);
+			else if (key.equals("--seed"))
+				seed = Long.parseLong(value);
+			else
+				throw new IllegalArgumentException("unknown option: " + key);
+		}
+
+		SyntheticRadioMap map = new SyntheticRadioMap(width, height, aps, seed);
+		map.setModel(-40, exponent, noise, -95);
+		map.setMaxAps(max_aps);
+
+		long start = System.nanoTime();
+
+		Writer out = new BufferedWriter(new FileWriter(args[0]), 1 << 16);
+		long points;
+		try {
+			points = map.writeMap(spacing, seed + 1, out);
+		} finally {
+			out.close();
+		}
+
+		out = new BufferedWriter(new FileWriter(args[1]), 1 << 16);
+		try {
+			writeTrace(map, devices, steps, speed, interval, seed + 2, out);
+		} finally {
+			out.close();
+		}
+
+		System.err.println("points: " + points + ", devices: " + devices + ", scans: " + (long) devices * steps
+				+ ", " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+
+
+	/**
+	 * Writes the scans of synthetic walkers as csv-lines
+	 * <code>timestamp,device,bssid,rssi,x,y</code>. All walkers scan at the
+	 * same times, so the devices are interleaved.
+	 *
+	 * @param map Radio-map for the scans
+	 * @param devices Number of walkers
+	 * @param steps Number of scans per walker
+	 * @param speed Distance per step
+	 * @param interval Time between two scans
+	 * @param seed Seed for the walkers
+	 * @param out Writer for the lines
+	 * @throws IOException if the lines can't be written
+	 */
+	public static void writeTrace(SyntheticRadioMap map, int devices, int steps, double speed,
+			long interval, long seed, Writer out) throws IOException {
+
+		SyntheticWalker[] walkers = new SyntheticWalker[devices];
+		for (int d=0; d<devices; d++)
+			walkers[d] = new SyntheticWalker(map, "walker" + d, speed, seed + d);
+
+		out.write("timestamp,device,bssid,rssi,x,y\n");
+
+		for (int s=0; s<steps; s++){
+
+			long timestamp = s * interval;
+
+			for (int d=0; d<devices; d++){
+
+				ScanLog.Scan scan = walkers[d].step(timestamp);
+				List<Measure> mlist = scan.getMeasures();
+				String truth = scan.getTruth().getX() + "," + scan.getTruth().getY();
+
+				for (int i=0; i<mlist.size(); i++)
+					out.write(timestamp + "," + walkers[d].getDevice() + "," + mlist.get(i).getBSSID() + ","
+							+ mlist.get(i).getRssi() + "," + truth + "\n");
+			}
+		}
+	}
+}
@@ -0,0 +1,367 @@
+package lbs.wifiparticlefilter.tools;
+
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import lbs.wifiparticlefilter.data.Measure;
+import lbs.wifiparticlefilter.data.Particle;
+import lbs.wifiparticlefilter.data.Point;
+import lbs.wifiparticlefilter.filter.RandomSource;
+import lbs.wifiparticlefilter.filter.SplitMixRandom;
+
+
+/**
+ * Generator for synthetic radio-maps. Hotspots are placed randomly in a
+ * rectangular venue; the signal-strength follows the log-distance
+ * path-loss model
+ * <pre>rssi = tx_power - 10 * exponent * log10(distance) + noise</pre>
+ * with gaussian noise. Hotspots below the sensitivity are not measured, and
+ * each measurement keeps only the strongest hotspots, like a real scan.
+ * <p>
+ * The same generator creates the fingerprints of the map and the scans of
+ * synthetic walkers, so a filter can be tested against the true position.
+ *
+ * @version 1.0
+ */
+public class SyntheticRadioMap {
+
+
+	// signal-strength at 1 unit distance in dBm
+	private double tx_power = -40;
+	// path-loss exponent; 2 in free space, 3 to 4 indoors
+	private double exponent = 3.0;
+	// standard-deviation of the noise in dB; noise is cut at 3 sigma
+	private double noise = 4.0;
+	// weakest signal, which is measured
+	private int sensitivity = -95;
+	// maximal number of hotspots per measurement
+	private int max_aps = 30;
+
+	// dilation of the venue
+	private final int width;
+	private final int height;
+	// hotspot-positions & names
+	private final double[] ap_x;
+	private final double[] ap_y;
+	private final String[] ap_names;
+
+	// grid over the hotspots; cell-size is the maximal range
+	private double range;
+	private int cols;
+	private int rows;
+	private int[] cell_start;
+	private int[] cell_items;
+
+
+	/**
+	 * C'tor; places the hotspots.
+	 *
+	 * @param width Width of the venue
+	 * @param height Height of the venue
+	 * @param aps Number of hotspots
+	 * @param seed Seed for the hotspot-positions
+	 */
+	public SyntheticRadioMap(int width, int height, int aps, long seed){
+
+		this.width = width;
+		this.height = height;
+
+		RandomSource random = new SplitMixRandom(seed);
+
+		ap_x = new double[aps];
+		ap_y = new double[aps];
+		ap_names = new String[aps];
+
+		for (int i=0; i<aps; i++){
+			ap_x[i] = random.nextDouble() * width;
+			ap_y[i] = random.nextDouble() * height;
+			ap_names[i] = bssid(i);
+		}
+
+		buildGrid();
+	}
+
+
+	/**
+	 * Sets the parameters of the path-loss model.
+	 *
+	 * @param tx_power Signal-strength at 1 unit distance in dBm
+	 * @param exponent Path-loss exponent
+	 * @param noise Standard-deviation of the noise in dB
+	 * @param sensitivity Weakest signal, which is measured, in dBm
+	 */
+	public void setModel(double tx_power, double exponent, double noise, int sensitivity){
+
+		this.tx_power = tx_power;
+		this.exponent = exponent;
+		this.noise = noise;
+		this.sensitivity = sensitivity;
+
+		// range depends on the model
+		buildGrid();
+	}
+
+
+	/**
+	 * Sets the maximal number of hotspots per measurement.
+	 *
+	 * @param max_aps Number of strongest hotspots, which are kept
+	 */
+	public void setMaxAps(int max_aps){
+		this.max_aps = max_aps;
+	}
+
+
+	/**
+	 * Creates the fingerprints of a regular grid over the venue.
+	 *
+	 * @param spacing Distance between two grid-points
+	 * @param seed Seed for the noise
+	 * @return Particle-list like the database gives it
+	 */
+	public List<Particle> createMap(int spacing, long seed){
+
+		RandomSource random = new SplitMixRandom(seed);
+		List<Particle> list = new ArrayList<Particle>();
+
+		for (int x=0; x<=width; x+=spacing)
+			for (int y=0; y<=height; y+=spacing)
+				list.add(new Particle(new Point(x, y), measure(x, y, random)));
+
+		return list;
+	}
+
+
+	/**
+	 * Writes the fingerprints of a regular grid over the venue as csv-lines
+	 * <code>x,y,bssid,rssi</code>. The map isn't kept in memory, so very large
+	 * maps can be written.
+	 *
+	 * @param spacing Distance between two grid-points
+	 * @param seed Seed for the noise
+	 * @param out Writer for the lines
+	 * @return Number of fingerprints
+	 * @throws IOException if the lines can't be written
+	 */
+	public long writeMap(int spacing, long seed, Writer out) throws IOException {
+
+		RandomSource random = new SplitMixRandom(seed);
+		long count = 0;
+
+		out.write("x,y,bssid,rssi\n");
+
+		for (int x=0; x<=width; x+=spacing)
+			for (int y=0; y<=height; y+=spacing){
+
+				List<Measure> mlist = measure(x, y, random);
+
+				for (int i=0; i<mlist.size(); i++)
+					out.write(x + "," + y + "," + mlist.get(i).getBSSID() + "," + mlist.get(i).getRssi() + "\n");
+
+				count++;
+			}
+
+		return count;
+	}
+
+
+	/**
+	 * Measures all hotspots, which can be received at a position.
+	 *
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @param random Source for the noise
+	 * @return Measure-list with the strongest hotspots
+	 */
+	public List<Measure> measure(double x, double y, RandomSource random){
+
+		// candidates from the cells around the position
+		int cx = Math.min(Math.max((int) (x / range), 0), cols - 1);
+		int cy = Math.min(Math.max((int) (y / range), 0), rows - 1);
+
+		int n = 0;
+		int[] ids = new int[16];
+		int[] rssi = new int[16];
+
+		for (int j=Math.max(cy - 1, 0); j<=Math.min(cy + 1, rows - 1); j++)
+			for (int i=Math.max(cx - 1, 0); i<=Math.min(cx + 1, cols - 1); i++){
+
+				int k = j * cols + i;
+
+				for (int e=cell_start[k]; e<cell_start[k + 1]; e++){
+
+					int ap = cell_items[e];
+					int level = signal(ap, x, y, random);
+
+					// too weak to be measured
+					if (level < sensitivity)
+						continue;
+
+					if (n == ids.length){
+						int[] larger = new int[2 * n];
+						System.arraycopy(ids, 0, larger, 0, n);
+						ids = larger;
+						larger = new int[2 * n];
+						System.arraycopy(rssi, 0, larger, 0, n);
+						rssi = larger;
+					}
+
+					ids[n] = ap;
+					rssi[n] = level;
+					n++;
+				}
+			}
+
+		// strongest first; insertion-sort, lists are short
+		for (int i=1; i<n; i++){
+
+			int id = ids[i];
+			int level = rssi[i];
+			int j = i - 1;
+
+			while ((j >= 0) && (rssi[j] < level)){
+				ids[j + 1] = ids[j];
+				rssi[j + 1] = rssi[j];
+				j--;
+			}
+
+			ids[j + 1] = id;
+			rssi[j + 1] = level;
+		}
+
+		int m = Math.min(n, max_aps);
+		List<Measure> mlist = new ArrayList<Measure>(m);
+
+		for (int i=0; i<m; i++)
+			mlist.add(new Measure(ap_names[ids[i]], rssi[i]));
+
+		return mlist;
+	}
+
+
+	/**
+	 * Gets the width of the venue.
+	 *
+	 * @return Width
+	 */
+	public int getWidth(){
+		return width;
+	}
+
+
+	/**
+	 * Gets the height of the venue.
+	 *
+	 * @return Height
+	 */
+	public int getHeight(){
+		return height;
+	}
+
+
+	/**
+	 * Gets the number of hotspots.
+	 *
+	 * @return Number of hotspots
+	 */
+	public int getApCount(){
+		return ap_x.length;
+	}
+
+
+	/**
+	 * Calculates the signal-strength of a hotspot at a position.
+	 */
+	private int signal(int ap, double x, double y, RandomSource random){
+
+		double dx = ap_x[ap] - x;
+		double dy = ap_y[ap] - y;
+		double d = Math.max(Math.sqrt(dx * dx + dy * dy), 1.0);
+
+		// noise is cut, so no hotspot is heard beyond the range
+		double g = Math.max(-3, Math.min(3, gaussian(random)));
+
+		return (int) Math.round(tx_power - 10 * exponent * Math.log10(d) + noise * g);
+	}
+
+
+	/**
+	 * Builds the grid over the hotspots. A hotspot can only be received in
+	 * its own and the neighboring cells.
+	 */
+	private void buildGrid(){
+
+		// distance, where even the strongest noise drops below sensitivity
+		range = Math.pow(10, (tx_power + 3 * noise - sensitivity) / (10 * exponent));
+		range = Math.max(range, 1.0);
+
+		cols = Math.max((int) Math.ceil(width / range), 1);
+		rows = Math.max((int) Math.ceil(height / range), 1);
+
+		// count hotspots per cell
+		cell_start = new int[cols * rows + 1];
+		for (int i=0; i<ap_x.length; i++)
+			cell_start[cellOf(i) + 1]++;
+
+		// prefix-sum gives first entry of each cell
+		for (int i=0; i<cols * rows; i++)
+			cell_start[i + 1] += cell_start[i];
+
+		// sort hotspots into their cells
+		cell_items = new int[ap_x.length];
+		int[] fill = new int[cols * rows];
+		for (int i=0; i<ap_x.length; i++){
+
+			int k = cellOf(i);
+			cell_items[cell_start[k] + fill[k]] = i;
+			fill[k]++;
+		}
+	}
+
+
+	/**
+	 * Gives back the cell of a hotspot.
+	 */
+	private int cellOf(int ap){
+
+		int cx = Math.min((int) (ap_x[ap] / range), cols - 1);
+		int cy = Math.min((int) (ap_y[ap] / range), rows - 1);
+
+		return cy * cols + cx;
+	}
+
+
+	/**
+	 * Draws a standard-normal number by the Box-Muller-method.
+	 */
+	private static double gaussian(RandomSource random){
+
+		// u1 must not be zero for the logarithm
+		double u1 = 1.0 - random.nextDouble();
+		double u2 = random.nextDouble();
+
+		return Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+	}
+
+
+	/**
+	 * Creates the BSSID of a hotspot; locally administered MAC-address.
+	 */
+	private static String bssid(int i){
+
+		StringBuilder sb = new StringBuilder("02:00");
+
+		for (int shift=24; shift>=0; shift-=8){
+			int b = (i >>> shift) & 0xff;
+			sb.append(':');
+			if (b < 16)
+				sb.append('0');
+			sb.append(Integer.toHexString(b));
+		}
+
+		return sb.toString();
+	}
+}
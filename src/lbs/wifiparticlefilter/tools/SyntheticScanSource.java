@@ -0,0 +1,47 @@
+package lbs.wifiparticlefilter.tools;
+
+
+/**
+ * Scans of a synthetic walker with a fixed interval.
+ *
+ * @version 1.0
+ */
+public class SyntheticScanSource extends PacedScanSource {
+
+
+	// walking device
+	private final SyntheticWalker walker;
+	// time between two scans in ms
+	private final long interval;
+	// number of scans; -1 for no end
+	private final long count;
+	// number of generated scans
+	private long steps = 0;
+
+
+	/**
+	 * C'tor.
+	 *
+	 * @param walker Walking device
+	 * @param interval Time between two scans in ms
+	 * @param count Number of scans; -1 for no end
+	 * @param speed Factor for the replay-speed; 0 for no pause
+	 */
+	public SyntheticScanSource(SyntheticWalker walker, long interval, long count, double speed){
+
+		super(speed);
+		this.walker = walker;
+		this.interval = interval;
+		this.count = count;
+	}
+
+
+	@Override
+	protected ScanLog.Scan next(){
+
+		if (count >= 0 && steps >= count)
+			return null;
+
+		return walker.step(interval * steps++);
+	}
+}
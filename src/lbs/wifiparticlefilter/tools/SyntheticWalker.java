@@ -0,0 +1,117 @@
+package lbs.wifiparticlefilter.tools;
+
+
+import lbs.wifiparticlefilter.data.Point;
+import lbs.wifiparticlefilter.filter.RandomSource;
+import lbs.wifiparticlefilter.filter.SplitMixRandom;
+
+
+/**
+ * Synthetic device, which walks through the venue of a synthetic radio-map
+ * and scans at each step. The walker heads for a random waypoint with a
+ * fixed speed and picks the next waypoint, when it arrives. Each scan knows
+ * the true position of the walker.
+ *
+ * @version 1.0
+ */
+public class SyntheticWalker {
+
+
+	// radio-map for the scans
+	private final SyntheticRadioMap map;
+	// id of the device
+	private final String device;
+	// distance per step
+	private final double speed;
+	// random numbers for waypoints & noise
+	private final RandomSource random;
+	// actual position & waypoint
+	private double x;
+	private double y;
+	private double target_x;
+	private double target_y;
+
+
+	/**
+	 * C'tor; the walker starts at a random position.
+	 *
+	 * @param map Radio-map for the scans
+	 * @param device Id of the device
+	 * @param speed Distance per step
+	 * @param seed Seed for the walk
+	 */
+	public SyntheticWalker(SyntheticRadioMap map, String device, double speed, long seed){
+
+		this.map = map;
+		this.device = device;
+		this.speed = speed;
+		this.random = new SplitMixRandom(seed);
+
+		x = random.nextDouble() * map.getWidth();
+		y = random.nextDouble() * map.getHeight();
+
+		nextWaypoint();
+	}
+
+
+	/**
+	 * Moves one step and scans at the new position.
+	 *
+	 * @param timestamp Time of the scan
+	 * @return Scan with the true position
+	 */
+	public ScanLog.Scan step(long timestamp){
+
+		double dx = target_x - x;
+		double dy = target_y - y;
+		double d = Math.sqrt(dx * dx + dy * dy);
+
+		if (d <= speed){
+
+			// waypoint reached
+			x = target_x;
+			y = target_y;
+			nextWaypoint();
+
+		} else {
+
+			x = x + dx / d * speed;
+			y = y + dy / d * speed;
+		}
+
+		ScanLog.Scan scan = new ScanLog.Scan(timestamp, getPosition());
+		scan.getMeasures().addAll(map.measure(x, y, random));
+
+		return scan;
+	}
+
+
+	/**
+	 * Gets the id of the device.
+	 *
+	 * @return Device-id
+	 */
+	public String getDevice(){
+		return device;
+	}
+
+
+	/**
+	 * Gets the actual position, rounded to the grid of the filter.
+	 *
+	 * @return True position
+	 */
+	public Point getPosition(){
+		return new Point((int) Math.round(x), (int) Math.round(y));
+	}
+
+
+	/**
+	 * Picks a random waypoint in the venue.
+	 */
+	private void nextWaypoint(){
+
+		target_x = random.nextDouble() * map.getWidth();
+		target_y = random.nextDouble() * map.getHeight();
+	}
+}